@@ -0,0 +1,513 @@
+package com.jhsullivan.pushpull.game_logic;
+
+
+import java.util.Arrays;
+
+
+/**
+ * A set of grid cells packed into the bits of an array of longs, one bit per cell.
+ * <p>
+ * Cells are numbered in normal English reading order, i.e. the cell at (x, y) has the index
+ * y * width + x.  A 10x10 board fits into two longs; larger boards simply use more words.  The
+ * main utility of this class is that whole groups of cells can be shifted one step in a
+ * direction, masked against each other, or grown into their neighbors using a handful of word
+ * operations, rather than visiting each cell individually.  Shifts never wrap around from one
+ * row into the next; bits that would leave the board are dropped.
+ * <p>
+ * Each BitBoard keeps track of the range of words that may have bits set, and every word outside
+ * of that range is zero.  Operations only visit the words in range, so a small group of cells on
+ * a large board costs about as much as it would on a small board.
+ */
+public class BitBoard {
+
+    private static final Vector2D.Direction[] DIRECTIONS = Vector2D.Direction.values();
+
+    private final int width;
+    private final int height;
+    private final long[] words;
+    private final long[] firstColumn;
+    private final long[] lastColumn;
+    private final long lastWordMask;
+
+    //Words at or after low and before high may have bits set; all other words are zero.
+    private int low = 0;
+    private int high = 0;
+
+
+    /**
+     * Constructor for an empty BitBoard covering a grid of the specified size.
+     *
+     * @param width     The number of columns in the grid.
+     * @param height    The number of rows in the grid.
+     */
+    public BitBoard(int width, int height) {
+        this.width = width;
+        this.height = height;
+        int size = width * height;
+        int wordCount = Math.max(1, (size + 63) >>> 6);
+        this.words = new long[wordCount];
+        this.firstColumn = new long[wordCount];
+        this.lastColumn = new long[wordCount];
+        for (int y = 0; y < height; y++) {
+            int first = y * width;
+            int last = first + width - 1;
+            firstColumn[first >>> 6] |= 1L << first;
+            lastColumn[last >>> 6] |= 1L << last;
+        }
+        int spare = (wordCount << 6) - size;
+        this.lastWordMask = spare == 0 ? -1L : -1L >>> spare;
+    }
+
+    /**
+     * Copy constructor.  The new BitBoard shares the (immutable) edge masks of the original.
+     *
+     * @param other     The BitBoard to copy.
+     */
+    public BitBoard(BitBoard other) {
+        this.width = other.width;
+        this.height = other.height;
+        this.words = other.words.clone();
+        this.firstColumn = other.firstColumn;
+        this.lastColumn = other.lastColumn;
+        this.lastWordMask = other.lastWordMask;
+        this.low = other.low;
+        this.high = other.high;
+    }
+
+    /**
+     * @return  Returns the number of columns in the grid covered by this BitBoard.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return  Returns the number of rows in the grid covered by this BitBoard.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return  Returns the number of longs used to store the bits.
+     */
+    public int getWordCount() {
+        return words.length;
+    }
+
+    /**
+     * @param index     The index of the word to get.
+     * @return          Returns the word at the given index.
+     */
+    public long getWord(int index) {
+        return words[index];
+    }
+
+    /**
+     * @param cell  The index of the cell to check.
+     * @return      Returns whether the bit for the given cell is set.
+     */
+    public boolean get(int cell) {
+        return (words[cell >>> 6] & (1L << cell)) != 0;
+    }
+
+    /**
+     * Sets the bit for the given cell.
+     *
+     * @param cell  The index of the cell to set.
+     */
+    public void set(int cell) {
+        int index = cell >>> 6;
+        words[index] |= 1L << cell;
+        extend(index, index + 1);
+    }
+
+    /**
+     * Clears the bit for the given cell.
+     *
+     * @param cell  The index of the cell to clear.
+     */
+    public void clear(int cell) {
+        words[cell >>> 6] &= ~(1L << cell);
+    }
+
+    /**
+     * Clears every bit in this BitBoard.
+     */
+    public void clearAll() {
+        if (low < high) {
+            Arrays.fill(words, low, high, 0L);
+        }
+        low = 0;
+        high = 0;
+    }
+
+    /**
+     * @return  Returns whether no bits are set.
+     */
+    public boolean isEmpty() {
+        for (int i = low; i < high; i++) {
+            if (words[i] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return  Returns the number of set bits.
+     */
+    public int count() {
+        int count = 0;
+        for (int i = low; i < high; i++) {
+            count += Long.bitCount(words[i]);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the index of the first set bit at or after the given cell, or -1 if there is none.
+     *
+     * @param from  The cell from which to start looking.
+     * @return      Returns the index of the next set bit, or -1.
+     */
+    public int nextSetBit(int from) {
+        int index = from >>> 6;
+        long word;
+        if (index < low) {
+            index = low;
+            word = index < high ? words[index] : 0;
+        }
+        else {
+            word = index < high ? words[index] & (-1L << from) : 0;
+        }
+        while (index < high) {
+            if (word != 0) {
+                return (index << 6) + Long.numberOfTrailingZeros(word);
+            }
+            index += 1;
+            if (index == high) {
+                return -1;
+            }
+            word = words[index];
+        }
+        return -1;
+    }
+
+    /**
+     * Makes this BitBoard a copy of the specified one, which must cover a grid of the same size.
+     *
+     * @param other     The BitBoard to copy.
+     */
+    public void copyFrom(BitBoard other) {
+        clearAll();
+        if (other.low < other.high) {
+            System.arraycopy(other.words, other.low, words, other.low, other.high - other.low);
+        }
+        low = other.low;
+        high = other.high;
+    }
+
+    /**
+     * Sets every bit that is set in the specified BitBoard.
+     *
+     * @param other     The BitBoard to combine with this one.
+     */
+    public void or(BitBoard other) {
+        for (int i = other.low; i < other.high; i++) {
+            words[i] |= other.words[i];
+        }
+        extend(other.low, other.high);
+    }
+
+    /**
+     * Clears every bit that is not set in the specified BitBoard.
+     *
+     * @param other     The BitBoard to combine with this one.
+     */
+    public void and(BitBoard other) {
+        for (int i = low; i < high; i++) {
+            words[i] &= other.words[i];
+        }
+    }
+
+    /**
+     * Clears every bit that is set in the specified BitBoard.
+     *
+     * @param other     The BitBoard whose bits should be cleared from this one.
+     */
+    public void andNot(BitBoard other) {
+        int end = Math.min(high, other.high);
+        for (int i = Math.max(low, other.low); i < end; i++) {
+            words[i] &= ~other.words[i];
+        }
+    }
+
+    /**
+     * @param other     The BitBoard to check against.
+     * @return          Returns whether any bit is set in both this and the specified BitBoard.
+     */
+    public boolean intersects(BitBoard other) {
+        int end = Math.min(high, other.high);
+        for (int i = Math.max(low, other.low); i < end; i++) {
+            if ((words[i] & other.words[i]) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param other     The BitBoard to check against.
+     * @param excluded  Bits to ignore in the other BitBoard.
+     * @return          Returns whether any bit is set in both this and the specified BitBoard,
+     *                  and not set in the excluded BitBoard.
+     */
+    public boolean intersectsExcluding(BitBoard other, BitBoard excluded) {
+        int end = Math.min(high, other.high);
+        for (int i = Math.max(low, other.low); i < end; i++) {
+            if ((words[i] & other.words[i] & ~excluded.words[i]) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param other     The BitBoard to check against.
+     * @return          Returns whether every bit set in this BitBoard is also set in the other.
+     */
+    public boolean isSubsetOf(BitBoard other) {
+        for (int i = low; i < high; i++) {
+            if ((words[i] & ~other.words[i]) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns whether every set bit could be shifted one step in the specified direction without
+     * leaving the board, i.e. whether no bits lie on the leading edge for that direction.
+     *
+     * @param direction     The direction of the shift.
+     * @return              Returns whether the shift would keep every bit on the board.
+     */
+    public boolean canShift(Vector2D.Direction direction) {
+        switch (direction) {
+            case LEFT:
+                return !intersectsWords(firstColumn);
+            case RIGHT:
+                return !intersectsWords(lastColumn);
+            case UP:
+                int first = nextSetBit(0);
+                return first == -1 || first >= width;
+            case DOWN:
+                int lastRow = width * (height - 1);
+                return nextSetBit(lastRow) == -1;
+        }
+        return false;
+    }
+
+    /**
+     * Shifts every set bit one cell in the specified direction.  Bits that would leave the board
+     * (including bits that would wrap into the next or previous row) are dropped.
+     *
+     * @param direction     The direction of the shift.
+     */
+    public void shift(Vector2D.Direction direction) {
+        switch (direction) {
+            case LEFT:
+                andNotWords(firstColumn);
+                shiftDown(1);
+                break;
+            case RIGHT:
+                andNotWords(lastColumn);
+                shiftUp(1);
+                break;
+            case UP:
+                shiftDown(width);
+                break;
+            case DOWN:
+                shiftUp(width);
+                break;
+        }
+    }
+
+    /**
+     * Sets this BitBoard to a copy of the specified one, shifted one cell in the specified
+     * direction.
+     *
+     * @param source        The BitBoard to copy and shift.
+     * @param direction     The direction of the shift.
+     */
+    public void setShifted(BitBoard source, Vector2D.Direction direction) {
+        copyFrom(source);
+        shift(direction);
+    }
+
+    /**
+     * Grows the set bits into every edge-adjacent cell that is set in the specified mask, but
+     * not in the excluded mask.  Uses the provided scratch BitBoard for intermediate results.
+     *
+     * @param within    The cells that the set may grow into.
+     * @param excluded  The cells that the set may not grow into.
+     * @param scratch   A BitBoard of the same size, whose contents are overwritten.
+     * @return          Returns whether any new bits were set.
+     */
+    public boolean grow(BitBoard within, BitBoard excluded, BitBoard scratch) {
+        boolean grew = false;
+        for (Vector2D.Direction direction : DIRECTIONS) {
+            scratch.setShifted(this, direction);
+            for (int i = scratch.low; i < scratch.high; i++) {
+                long added = scratch.words[i] & within.words[i] & ~excluded.words[i] & ~words[i];
+                if (added != 0) {
+                    words[i] |= added;
+                    extend(i, i + 1);
+                    grew = true;
+                }
+            }
+        }
+        return grew;
+    }
+
+    /**
+     * Compares whether this BitBoard equals another, defined by whether they cover the same
+     * grid size and have the same bits set.
+     *
+     * @param other     The object to compare this to.
+     * @return          Returns whether this BitBoard is equal to another.
+     */
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof BitBoard)) {
+            return false;
+        }
+        BitBoard board = (BitBoard) other;
+        return board.width == width && board.height == height
+                && Arrays.equals(board.words, words);
+    }
+
+    /**
+     * @return  Returns a hashcode based on the set bits.
+     */
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(words);
+    }
+
+    /**
+     * @return  Returns a string showing the grid, with '#' for set bits and '.' otherwise.
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                builder.append(get(y * width + x) ? '#' : '.');
+            }
+            builder.append('\n');
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Widens the range of words that may have bits set.
+     *
+     * @param from  The first word to include.
+     * @param to    The word after the last word to include.
+     */
+    private void extend(int from, int to) {
+        if (from >= to) {
+            return;
+        }
+        if (low >= high) {
+            low = from;
+            high = to;
+        }
+        else {
+            low = Math.min(low, from);
+            high = Math.max(high, to);
+        }
+    }
+
+    /**
+     * @param mask  Word masks to check against.
+     * @return      Returns whether any set bit is also set in the mask.
+     */
+    private boolean intersectsWords(long[] mask) {
+        for (int i = low; i < high; i++) {
+            if ((words[i] & mask[i]) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Clears every bit that is set in the mask.
+     *
+     * @param mask  Word masks of the bits to clear.
+     */
+    private void andNotWords(long[] mask) {
+        for (int i = low; i < high; i++) {
+            words[i] &= ~mask[i];
+        }
+    }
+
+    /**
+     * Moves every bit to a higher cell index, dropping bits that go past the last cell.
+     *
+     * @param distance  The number of cells to move each bit.
+     */
+    private void shiftUp(int distance) {
+        if (low >= high) {
+            return;
+        }
+        int wordShift = distance >>> 6;
+        int bitShift = distance & 63;
+        int newHigh = Math.min(words.length, high + wordShift + (bitShift != 0 ? 1 : 0));
+        for (int i = newHigh - 1; i >= low; i--) {
+            int source = i - wordShift;
+            long word = 0;
+            if (source >= low) {
+                word = words[source] << bitShift;
+                if (bitShift != 0 && source > low) {
+                    word |= words[source - 1] >>> (64 - bitShift);
+                }
+            }
+            words[i] = word;
+        }
+        words[words.length - 1] &= lastWordMask;
+        low = Math.min(low + wordShift, newHigh);
+        high = newHigh;
+    }
+
+    /**
+     * Moves every bit to a lower cell index, dropping bits that go below cell zero.
+     *
+     * @param distance  The number of cells to move each bit.
+     */
+    private void shiftDown(int distance) {
+        if (low >= high) {
+            return;
+        }
+        int wordShift = distance >>> 6;
+        int bitShift = distance & 63;
+        int newLow = Math.max(0, low - wordShift - (bitShift != 0 ? 1 : 0));
+        for (int i = newLow; i < high; i++) {
+            int source = i + wordShift;
+            long word = 0;
+            if (source < high) {
+                word = words[source] >>> bitShift;
+                if (bitShift != 0 && source + 1 < high) {
+                    word |= words[source + 1] << (64 - bitShift);
+                }
+            }
+            words[i] = word;
+        }
+        high = Math.max(high - wordShift, newLow);
+        low = newLow;
+    }
+
+}
@@ -0,0 +1,364 @@
+package com.jhsullivan.pushpull.game_logic;
+
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A level in a compact binary form, which loads without any of the text of its layout being
+ * read.
+ * <p>
+ * The .csv layouts stay the form in which levels are written and edited.  {@link #main(String[])}
+ * compiles them, and is meant to run as part of the build over the level assets, with one
+ * compiled level per layout.  Every position of the layout becomes a one byte cell code, which
+ * holds what each of its two characters spawns (see {@link Level#spawnAction(char)}) in its low
+ * and high four bits.  Blocks, walls, targets and empty space are given by their codes alone, while
+ * the characters of players, transformers and clusters (i.e. their types and cluster IDs) are
+ * kept in a separate list in reading order.  A level is then built straight from the codes.
+ * <p>
+ * The format is:  a magic number, the version, the width and height, a flag for whether the
+ * level has a message, the cell codes in reading order, the number of kept characters followed by
+ * the characters, and the message if there is one.
+ * <p>
+ * The layout of a compiled level is put back together in a fixed form:  rows of comma separated
+ * positions on separate lines, then the message on a line starting with '>'.  The shipped levels
+ * are written in that form, so a compiled level has the same layout as the .csv it came from, and
+ * e.g. its hint table still matches.
+ */
+public class CompiledLevel {
+
+
+    //The extension of compiled level files.
+    public static final String EXTENSION = ".ppl";
+
+    private static final int MAGIC = 0x50504C56;
+    private static final int VERSION = 1;
+    private static final int FLAG_MESSAGE = 1;
+
+    private final int width;
+    private final int height;
+    private final byte[] cellCodes;
+    private final byte[] ids;
+    private final String message;
+    private final String layout;
+
+
+    /**
+     * Constructor for a compiled level.
+     *
+     * @param width         The width of the level.
+     * @param height        The height of the level.
+     * @param cellCodes     The code of each cell, in reading order.
+     * @param ids           The characters which the codes do not give, in reading order.
+     * @param message       The message of the level, or null if it has none.
+     * @param layout        The layout the level was compiled from, or null if it was read.
+     */
+    private CompiledLevel(int width, int height, byte[] cellCodes, byte[] ids, String message,
+                          String layout) {
+        this.width = width;
+        this.height = height;
+        this.cellCodes = cellCodes;
+        this.ids = ids;
+        this.message = message;
+        this.layout = layout;
+    }
+
+    /**
+     * Compiles a layout, checking that it loads first.
+     *
+     * @param layout                The layout of the level.
+     * @return                      Returns the compiled level.
+     * @throws LevelLoadException   Throws this exception if the layout is not properly formatted.
+     */
+    public static CompiledLevel compile(String layout) throws LevelLoadException {
+        Level level = new Level(layout);
+        byte[] cellCodes = new byte[level.getWidth() * level.getHeight()];
+        Arrays.fill(cellCodes, (byte) (Level.SPAWN_EMPTY | Level.SPAWN_EMPTY << 4));
+        byte[] ids = new byte[cellCodes.length * 2];
+        int idCount = 0;
+
+        int i = 0;
+        while (i < layout.length() && Character.isWhitespace(layout.charAt(i))) {
+            i += 1;
+        }
+        if (i < layout.length() && layout.charAt(i) == '[') {
+            i = layout.indexOf(']', i) + 1;
+        }
+
+        int half = 0;
+        for (; i < layout.length() && layout.charAt(i) != '>'; i++) {
+            char id = layout.charAt(i);
+            int action = Level.spawnAction(id);
+            if (action == Level.SPAWN_SEPARATOR) {
+                continue;
+            }
+            int shift = 4 * (half % 2);
+            cellCodes[half / 2] = (byte) ((cellCodes[half / 2] & ~(0xF << shift))
+                                            | action << shift);
+            if (Level.SPAWN_IDS[action] == 0) {
+                ids[idCount++] = (byte) id;
+            }
+            half += 1;
+        }
+
+        String message = i < layout.length() ? level.getMessage() : null;
+        return new CompiledLevel(level.getWidth(), level.getHeight(), cellCodes,
+                                 Arrays.copyOf(ids, idCount), message, layout);
+    }
+
+    /**
+     * Reads a compiled level.
+     *
+     * @param in            The stream to read from, which is not closed.
+     * @return              Returns the compiled level.
+     * @throws IOException  Throws this exception if the stream cannot be read or does not hold a
+     *                      compiled level.
+     */
+    public static CompiledLevel read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+        if (data.readInt() != MAGIC || data.readUnsignedByte() != VERSION) {
+            throw new IOException("Not a compiled level.");
+        }
+        int width = data.readUnsignedShort();
+        int height = data.readUnsignedShort();
+        if (width < 1 || height < 1
+                || width > Level.MAX_GRID_LENGTH || height > Level.MAX_GRID_LENGTH) {
+            throw new IOException("Compiled level size " + width + "x" + height
+                                    + " is not allowed.");
+        }
+        int flags = data.readUnsignedByte();
+
+        byte[] cellCodes = new byte[width * height];
+        data.readFully(cellCodes);
+        int idCount = data.readUnsignedShort();
+        if (idCount > cellCodes.length * 2) {
+            throw new IOException("Compiled level has too many IDs.");
+        }
+        byte[] ids = new byte[idCount];
+        data.readFully(ids);
+        String message = (flags & FLAG_MESSAGE) != 0 ? data.readUTF() : null;
+        return new CompiledLevel(width, height, cellCodes, ids, message, null);
+    }
+
+    /**
+     * Writes the compiled level.
+     *
+     * @param out           The stream to write to, which is flushed but not closed.
+     * @throws IOException  Throws this exception if the stream cannot be written to.
+     */
+    public void write(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(MAGIC);
+        data.writeByte(VERSION);
+        data.writeShort(width);
+        data.writeShort(height);
+        data.writeByte(message != null ? FLAG_MESSAGE : 0);
+        data.write(cellCodes);
+        data.writeShort(ids.length);
+        data.write(ids);
+        if (message != null) {
+            data.writeUTF(message);
+        }
+        data.flush();
+    }
+
+    /**
+     * Builds a new level from the compiled level.
+     *
+     * @return                      Returns the level, at its start.
+     * @throws LevelLoadException   Throws this exception if the compiled level is not valid.
+     */
+    public Level createLevel() throws LevelLoadException {
+        return new Level(this);
+    }
+
+    /**
+     * Puts the layout of the compiled level back together, in the fixed form described above.
+     *
+     * @return      Returns the layout.
+     */
+    public String toLayout() {
+        StringBuilder layout = new StringBuilder(cellCodes.length * 3 + 1
+                                                    + (message == null ? 0 : message.length()));
+        int nextId = 0;
+        for (int cell = 0; cell < cellCodes.length; cell++) {
+            if (cell > 0) {
+                layout.append(cell % width == 0 ? '\n' : ',');
+            }
+            for (int shift = 0; shift < 8; shift += 4) {
+                int action = (cellCodes[cell] >>> shift) & 0xF;
+                char id = action < Level.SPAWN_IDS.length ? Level.SPAWN_IDS[action] : 0;
+                layout.append(id != 0 ? id : (char) (ids[nextId++] & 0xFF));
+            }
+        }
+        if (message != null) {
+            layout.append("\n>").append(message);
+        }
+        return layout.toString();
+    }
+
+    /**
+     * @return  Returns a rough count of the bytes of memory the compiled level holds, including
+     *          the layout it was compiled from, if it keeps it.
+     */
+    public int estimateBytes() {
+        int bytes = 64 + cellCodes.length + ids.length;
+        if (message != null) {
+            bytes += 40 + 2 * message.length();
+        }
+        if (layout != null) {
+            bytes += 40 + 2 * layout.length();
+        }
+        return bytes;
+    }
+
+    /**
+     * @return  Returns the layout the level was compiled from, or, if it was read, its layout put
+     *          back together; see {@link #toLayout()}.
+     */
+    String getLayout() {
+        return layout != null ? layout : toLayout();
+    }
+
+    /**
+     * @return  Returns the width of the level.
+     */
+    int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return  Returns the height of the level.
+     */
+    int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return  Returns the code of each cell, in reading order.
+     */
+    byte[] getCellCodes() {
+        return cellCodes;
+    }
+
+    /**
+     * @return  Returns the characters of the layout which the cell codes do not give.
+     */
+    byte[] getIds() {
+        return ids;
+    }
+
+    /**
+     * @return  Returns the message of the level, or null if it has none.
+     */
+    String getMessage() {
+        return message;
+    }
+
+    /**
+     * Reads a level layout in the same way for every caller, i.e. line by line, skipping empty
+     * lines.
+     *
+     * @param in            The stream of the layout, which is closed afterward.
+     * @return              Returns the layout of the level.
+     * @throws IOException  Throws this exception if the stream cannot be read.
+     */
+    public static String readLayout(InputStream in) throws IOException {
+        BufferedReader br = new BufferedReader(new InputStreamReader(in));
+        try {
+            StringBuilder layoutBuilder = new StringBuilder();
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                if (layoutBuilder.length() > 0) {
+                    layoutBuilder.append('\n');
+                }
+                layoutBuilder.append(line);
+            }
+            return layoutBuilder.toString();
+        }
+        finally {
+            br.close();
+        }
+    }
+
+    /**
+     * Compiles every level file given into the output directory, under the same name with the
+     * compiled extension.  A directory stands for all of the .csv files in it.  Exits with a
+     * status of 1 if any level fails to compile.  A level whose layout is not in the fixed form
+     * is still compiled, but is noted, since its layout will not be the same once compiled.
+     *
+     * @param args          The output directory, followed by the level files and directories.
+     * @throws IOException  Throws this exception if a file cannot be read or written.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: CompiledLevel <output directory> <level files>...");
+            System.exit(1);
+        }
+        File outputDirectory = new File(args[0]);
+        if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+            throw new IOException("Cannot create " + outputDirectory);
+        }
+
+        List<File> files = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            File file = new File(args[i]);
+            File[] children = file.listFiles();
+            if (children == null) {
+                files.add(file);
+                continue;
+            }
+            Arrays.sort(children);
+            for (File child : children) {
+                if (child.getName().endsWith(".csv")) {
+                    files.add(child);
+                }
+            }
+        }
+
+        boolean failed = false;
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(".csv")) {
+                name = name.substring(0, name.length() - ".csv".length());
+            }
+            try {
+                String layout = readLayout(new FileInputStream(file));
+                CompiledLevel compiled = compile(layout);
+                File outputFile = new File(outputDirectory, name + EXTENSION);
+                OutputStream out = new FileOutputStream(outputFile);
+                try {
+                    compiled.write(out);
+                }
+                finally {
+                    out.close();
+                }
+                System.out.println(file.getName() + ": " + outputFile.length() + " bytes"
+                        + (compiled.toLayout().equals(layout) ? "" : ", layout not in fixed form"));
+            }
+            catch (LevelLoadException e) {
+                failed = true;
+                System.out.println(file.getName() + ": " + e.getMessage());
+            }
+        }
+        if (failed) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package com.jhsullivan.pushpull.game_logic;
+
+
+import com.jhsullivan.pushpull.game_objects.GameObject;
+import com.jhsullivan.pushpull.game_objects.Wall;
+
+
+/**
+ * Keeps track of which game objects are attached to each other, i.e. the groups of blocks,
+ * clusters and players that a GRABALL player would move together.
+ * <p>
+ * Cells holding anything other than a wall are grouped into components with a union-find
+ * structure, and the cells of each component are also linked into a circular list so that a
+ * whole component can be read without searching the grid.  Union-find cannot split a component,
+ * so when a member of a component moves, the component is only marked dirty; the Level searches
+ * the grid for a dirty component's group instead.  Once the input is over, {@link #refresh}
+ * rebuilds just the dirty components and the cells that changed, leaving every other component
+ * as it was.
+ */
+class ConnectivityIndex {
+
+    private final GameObject[] cells;
+    private final int width;
+    private final int height;
+
+    private final int[] parents;
+    private final int[] sizes;
+    private final int[] nexts;
+    private final int[] dirtyStamps;
+
+    //Roots of the components marked dirty during the current input.
+    private final int[] dirtyRoots;
+    private int dirtyCount = 0;
+
+    //Scratch space for refresh, holding each affected cell once.
+    private final int[] affected;
+    private final int[] affectedStamps;
+    private int affectedStamp = 0;
+
+
+    /**
+     * Constructor for a ConnectivityIndex over the specified cells.  The index starts out with
+     * every cell on its own; call {@link #rebuild()} once the cells are filled.
+     *
+     * @param cells     The Level's cells, indexed in normal English reading order.
+     * @param width     The number of columns in the grid.
+     * @param height    The number of rows in the grid.
+     */
+    ConnectivityIndex(GameObject[] cells, int width, int height) {
+        this.cells = cells;
+        this.width = width;
+        this.height = height;
+        int cellCount = width * height;
+        parents = new int[cellCount];
+        sizes = new int[cellCount];
+        nexts = new int[cellCount];
+        dirtyStamps = new int[cellCount];
+        dirtyRoots = new int[cellCount];
+        affected = new int[cellCount];
+        affectedStamps = new int[cellCount];
+        for (int cell = 0; cell < cellCount; cell++) {
+            isolate(cell);
+        }
+    }
+
+    /**
+     * Rebuilds every component from scratch, e.g. after loading or undoing.
+     */
+    void rebuild() {
+        for (int cell = 0; cell < cells.length; cell++) {
+            isolate(cell);
+            dirtyStamps[cell] = 0;
+        }
+        dirtyCount = 0;
+        for (int cell = 0; cell < cells.length; cell++) {
+            if (!isAttachable(cell)) {
+                continue;
+            }
+            if (cell % width < width - 1 && isAttachable(cell + 1)) {
+                union(cell, cell + 1);
+            }
+            if (cell + width < cells.length && isAttachable(cell + width)) {
+                union(cell, cell + width);
+            }
+        }
+    }
+
+    /**
+     * Marks the component that a cell belonged to at the start of the input as dirty, since the
+     * object on that cell is moving away.
+     *
+     * @param cell      The index of the cell being left.
+     * @param stamp     The number of the current input.
+     */
+    void markMoved(int cell, int stamp) {
+        int root = find(cell);
+        if (dirtyStamps[root] != stamp) {
+            dirtyStamps[root] = stamp;
+            dirtyRoots[dirtyCount] = root;
+            dirtyCount += 1;
+        }
+    }
+
+    /**
+     * @param cell      The index of a cell that has not changed during the current input.
+     * @param stamp     The number of the current input.
+     * @return          Returns whether none of the cell's component has moved during the
+     *                  current input, i.e. whether the component can be read as it is.
+     */
+    boolean isClean(int cell, int stamp) {
+        return dirtyStamps[find(cell)] != stamp;
+    }
+
+    /**
+     * @param cell  The index of a cell.
+     * @return      Returns the next cell in the same component; following these from any cell
+     *              visits the whole component and comes back to the start.
+     */
+    int next(int cell) {
+        return nexts[cell];
+    }
+
+    /**
+     * Brings the components up to date after an input.  Every cell of a dirty component, and
+     * every cell that changed, is taken apart and attached again to its neighbors.  Components
+     * that nothing moved out of are left as they are, apart from being merged with any newly
+     * attached neighbors.
+     *
+     * @param changedCells  The cells that changed during the input.
+     * @param changedCount  The number of changed cells.
+     */
+    void refresh(int[] changedCells, int changedCount) {
+        affectedStamp += 1;
+        int count = 0;
+        for (int i = 0; i < dirtyCount; i++) {
+            int root = dirtyRoots[i];
+            int cell = root;
+            do {
+                count = addAffected(cell, count);
+                cell = nexts[cell];
+            } while (cell != root);
+        }
+        for (int i = 0; i < changedCount; i++) {
+            count = addAffected(changedCells[i], count);
+        }
+        dirtyCount = 0;
+
+        for (int i = 0; i < count; i++) {
+            isolate(affected[i]);
+        }
+        for (int i = 0; i < count; i++) {
+            int cell = affected[i];
+            if (!isAttachable(cell)) {
+                continue;
+            }
+            int x = cell % width;
+            int y = cell / width;
+            if (x > 0 && isAttachable(cell - 1)) {
+                union(cell, cell - 1);
+            }
+            if (x < width - 1 && isAttachable(cell + 1)) {
+                union(cell, cell + 1);
+            }
+            if (y > 0 && isAttachable(cell - width)) {
+                union(cell, cell - width);
+            }
+            if (y < height - 1 && isAttachable(cell + width)) {
+                union(cell, cell + width);
+            }
+        }
+    }
+
+    /**
+     * Adds a cell to the affected cells, unless it is already there.
+     *
+     * @param cell      The index of the cell to add.
+     * @param count     The number of affected cells so far.
+     * @return          Returns the new number of affected cells.
+     */
+    private int addAffected(int cell, int count) {
+        if (affectedStamps[cell] == affectedStamp) {
+            return count;
+        }
+        affectedStamps[cell] = affectedStamp;
+        affected[count] = cell;
+        return count + 1;
+    }
+
+    /**
+     * @param cell  The index of the cell to check.
+     * @return      Returns whether the cell holds something that can be attached to others.
+     */
+    private boolean isAttachable(int cell) {
+        GameObject occupant = cells[cell];
+        return occupant != null && !(occupant instanceof Wall);
+    }
+
+    /**
+     * Makes a cell a component of its own.
+     *
+     * @param cell  The index of the cell.
+     */
+    private void isolate(int cell) {
+        parents[cell] = cell;
+        sizes[cell] = 1;
+        nexts[cell] = cell;
+    }
+
+    /**
+     * @param cell  The index of a cell.
+     * @return      Returns the root of the cell's component, halving the path on the way.
+     */
+    private int find(int cell) {
+        while (parents[cell] != cell) {
+            parents[cell] = parents[parents[cell]];
+            cell = parents[cell];
+        }
+        return cell;
+    }
+
+    /**
+     * Merges the components of two cells, attaching the smaller to the larger and joining their
+     * lists of cells.
+     *
+     * @param first     The index of a cell in the first component.
+     * @param second    The index of a cell in the second component.
+     */
+    private void union(int first, int second) {
+        int firstRoot = find(first);
+        int secondRoot = find(second);
+        if (firstRoot == secondRoot) {
+            return;
+        }
+        if (sizes[firstRoot] < sizes[secondRoot]) {
+            int swap = firstRoot;
+            firstRoot = secondRoot;
+            secondRoot = swap;
+        }
+        parents[secondRoot] = firstRoot;
+        sizes[firstRoot] += sizes[secondRoot];
+
+        int next = nexts[first];
+        nexts[first] = nexts[second];
+        nexts[second] = next;
+    }
+}
@@ -0,0 +1,371 @@
+package com.jhsullivan.pushpull.game_logic;
+
+
+import com.jhsullivan.pushpull.game_objects.Block;
+import com.jhsullivan.pushpull.game_objects.BlockCluster;
+import com.jhsullivan.pushpull.game_objects.ClusterBody;
+import com.jhsullivan.pushpull.game_objects.GameObject;
+import com.jhsullivan.pushpull.game_objects.Player;
+import com.jhsullivan.pushpull.game_objects.Wall;
+import com.jhsullivan.pushpull.triggers.Target;
+import com.jhsullivan.pushpull.triggers.Transformer;
+import com.jhsullivan.pushpull.triggers.Trigger;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The cells of a level from which a block, or a cluster, can never be brought onto a target,
+ * worked out from the layout alone.
+ * <p>
+ * Whether a block can move one step in a direction depends on the walls around it and on the
+ * types of player that can ever exist in the level, i.e. the types the players start with and
+ * the types of the transformers.  A push player needs room behind the block to push it from, a
+ * pull player needs room beyond the block to back into, and a grab-all player can move anything
+ * it is attached to.  The other game objects are left out, since they can always move out of the
+ * way or be moved along, so the moves considered are a superset of the real ones.  The cells
+ * which cannot reach a target through these moves are dead, so a cell marked dead really is
+ * dead, although some dead cells may go unmarked.  Clusters are treated the same way, as whole
+ * shapes, with their positions given by the origins of their bodies.
+ * <p>
+ * A dead block is not a lost level by itself, since there may be more blocks than targets;
+ * deciding that is left to the caller.
+ * <p>
+ * The analysis only depends on the layout, so it is cached by layout and shared between every
+ * Level loaded from the same layout.  A DeadCells is immutable.
+ */
+public class DeadCells {
+
+
+    private static final int CACHE_SIZE = 32;
+    private static final Vector2D.Direction[] DIRECTIONS = Vector2D.Direction.values();
+
+    //The most recently used analyses, by layout.
+    private static final Map<String, DeadCells> cache =
+            new LinkedHashMap<String, DeadCells>(CACHE_SIZE, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, DeadCells> eldest) {
+                    return size() > CACHE_SIZE;
+                }
+            };
+
+    private final int width;
+    private final BitBoard deadBlockCells;
+    private final Map<Character, BitBoard> deadClusterCells = new HashMap<>();
+
+
+    /**
+     * Returns the analysis of the specified Level, working it out if no Level with the same
+     * layout has been analysed recently.
+     *
+     * @param level     The Level to analyse, in any state.
+     * @return          Returns the dead cells of the Level.
+     */
+    public static DeadCells of(Level level) {
+        String layout = level.getLayout();
+        synchronized (cache) {
+            DeadCells cached = cache.get(layout);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        DeadCells deadCells = new DeadCells(level);
+        synchronized (cache) {
+            cache.put(layout, deadCells);
+        }
+        return deadCells;
+    }
+
+    /**
+     * Constructor which analyses the specified Level.
+     *
+     * @param level     The Level to analyse, in any state.
+     */
+    private DeadCells(Level level) {
+        this.width = level.getWidth();
+        int height = level.getHeight();
+
+        boolean[] walls = new boolean[width * height];
+        boolean hasPlayers = false;
+        boolean[] types = new boolean[Player.Type.values().length];
+        Map<Character, ClusterBody> bodies = new HashMap<>();
+        for (GameObject gameObject : level.getGameObjects()) {
+            Vector2D location = gameObject.getLocation();
+            if (gameObject instanceof Wall) {
+                walls[location.getY() * width + location.getX()] = true;
+            }
+            else if (gameObject instanceof Player) {
+                hasPlayers = true;
+                types[((Player) gameObject).getType().ordinal()] = true;
+            }
+            else if (gameObject instanceof BlockCluster) {
+                BlockCluster cluster = (BlockCluster) gameObject;
+                bodies.put(cluster.getClusterID(), cluster.getBody());
+            }
+        }
+
+        //a transformer only matters once there is a player to step onto it; a target under a
+        //wall is always filled, so it is no goal
+        boolean[] targets = new boolean[width * height];
+        boolean hasTargets = false;
+        for (Trigger trigger : level.getTriggers()) {
+            Vector2D location = trigger.getLocation();
+            int cell = location.getY() * width + location.getX();
+            if (trigger instanceof Transformer && hasPlayers) {
+                types[((Transformer) trigger).getType().ordinal()] = true;
+            }
+            else if (trigger instanceof Target && !walls[cell]) {
+                targets[cell] = true;
+                hasTargets = true;
+            }
+        }
+
+        //without any targets to fill, no cell can be dead
+        if (!hasTargets) {
+            deadBlockCells = new BitBoard(width, height);
+            for (Character clusterID : bodies.keySet()) {
+                deadClusterCells.put(clusterID, new BitBoard(width, height));
+            }
+            return;
+        }
+
+        Shape single = new Shape(new int[][] {{0, 0}}, walls, width, height, types);
+        deadBlockCells = single.findDead(targets);
+        for (Map.Entry<Character, ClusterBody> entry : bodies.entrySet()) {
+            ClusterBody body = entry.getValue();
+            List<BlockCluster> members = body.getMembers();
+            int[][] offsets = new int[members.size()][2];
+            for (int m = 0; m < members.size(); m++) {
+                Vector2D location = members.get(m).getLocation();
+                offsets[m][0] = location.getX() - body.getOriginX();
+                offsets[m][1] = location.getY() - body.getOriginY();
+            }
+            Shape shape = new Shape(offsets, walls, width, height, types);
+            deadClusterCells.put(entry.getKey(), shape.findDead(targets));
+        }
+    }
+
+    /**
+     * @param cell  The index (y * width + x) of a cell.
+     * @return      Returns whether a block on the cell can never be brought onto a target.
+     */
+    public boolean isDeadForBlock(int cell) {
+        return deadBlockCells.get(cell);
+    }
+
+    /**
+     * @param clusterID     The id of a cluster in the level.
+     * @param originCell    The index (y * width + x) of the cell of the origin of its body.
+     * @return              Returns whether the cluster can never bring any of its blocks onto a
+     *                      target from there.
+     */
+    public boolean isDeadForCluster(char clusterID, int originCell) {
+        BitBoard dead = deadClusterCells.get(clusterID);
+        return dead != null && dead.get(originCell);
+    }
+
+    /**
+     * @param gameObject    A game object in a Level with the analysed layout.
+     * @return              Returns whether the game object is a block, or a block of a cluster,
+     *                      which can never be brought onto a target from where it is.
+     */
+    public boolean isDead(GameObject gameObject) {
+        if (gameObject instanceof Block) {
+            Vector2D location = gameObject.getLocation();
+            return isDeadForBlock(location.getY() * width + location.getX());
+        }
+        if (gameObject instanceof BlockCluster) {
+            BlockCluster cluster = (BlockCluster) gameObject;
+            ClusterBody body = cluster.getBody();
+            return isDeadForCluster(cluster.getClusterID(),
+                                    body.getOriginY() * width + body.getOriginX());
+        }
+        return false;
+    }
+
+    /**
+     * @return  Returns a copy of the dead cells for a block.
+     */
+    public BitBoard getDeadBlockCells() {
+        return new BitBoard(deadBlockCells);
+    }
+
+    /**
+     * @param clusterID     The id of a cluster in the level.
+     * @return              Returns a copy of the dead cells for the origin of the cluster's body,
+     *                      or null if the level has no such cluster.
+     */
+    public BitBoard getDeadClusterCells(char clusterID) {
+        BitBoard dead = deadClusterCells.get(clusterID);
+        return dead == null ? null : new BitBoard(dead);
+    }
+
+
+    /**
+     * A shape of one or more blocks which move together, and the moves it can make among the
+     * walls of a level.
+     */
+    private static class Shape {
+
+        private final int[][] offsets;
+        private final boolean[] walls;
+        private final int width;
+        private final int height;
+        private final boolean canPush;
+        private final boolean canPull;
+        private final boolean canGrab;
+
+
+        /**
+         * Constructor for a Shape.
+         *
+         * @param offsets   The offsets (x, y) of the blocks of the shape from its origin, which
+         *                  must include the origin itself.
+         * @param walls     Which cells hold walls.
+         * @param width     The number of columns.
+         * @param height    The number of rows.
+         * @param types     Which types of player can exist in the level, by ordinal.
+         */
+        Shape(int[][] offsets, boolean[] walls, int width, int height, boolean[] types) {
+            this.offsets = offsets;
+            this.walls = walls;
+            this.width = width;
+            this.height = height;
+            this.canPush = types[Player.Type.PUSH.ordinal()];
+            this.canPull = types[Player.Type.PULL.ordinal()];
+            this.canGrab = types[Player.Type.GRABALL.ordinal()];
+        }
+
+        /**
+         * Searches backwards from the positions where the shape covers a target, through every
+         * move that could have led there.
+         *
+         * @param targets   Which cells hold targets to fill.
+         * @return          Returns the origins from which the shape cannot reach a target.
+         */
+        BitBoard findDead(boolean[] targets) {
+            boolean[] live = new boolean[width * height];
+            int[] queue = new int[width * height];
+            int queueEnd = 0;
+            for (int cell = 0; cell < live.length; cell++) {
+                if (fits(cell % width, cell / width) && covers(cell, targets)) {
+                    live[cell] = true;
+                    queue[queueEnd] = cell;
+                    queueEnd += 1;
+                }
+            }
+
+            for (int next = 0; next < queueEnd; next++) {
+                int x = queue[next] % width;
+                int y = queue[next] / width;
+                for (Vector2D.Direction direction : DIRECTIONS) {
+                    Vector2D unit = Vector2D.getDirectionVector(direction);
+                    int fromX = x - unit.getX();
+                    int fromY = y - unit.getY();
+                    if (fromX < 0 || fromY < 0 || fromX >= width || fromY >= height
+                            || live[fromY * width + fromX]) {
+                        continue;
+                    }
+                    if (fits(fromX, fromY) && canMove(fromX, fromY, unit)) {
+                        live[fromY * width + fromX] = true;
+                        queue[queueEnd] = fromY * width + fromX;
+                        queueEnd += 1;
+                    }
+                }
+            }
+
+            BitBoard dead = new BitBoard(width, height);
+            for (int cell = 0; cell < live.length; cell++) {
+                if (!live[cell]) {
+                    dead.set(cell);
+                }
+            }
+            return dead;
+        }
+
+        /**
+         * @param origin    The cell of the origin of the shape.
+         * @param targets   Which cells hold targets to fill.
+         * @return          Returns whether any block of the shape is on a target.
+         */
+        private boolean covers(int origin, boolean[] targets) {
+            for (int[] offset : offsets) {
+                if (targets[origin + offset[1] * width + offset[0]]) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @param x     The x-coordinate of the origin.
+         * @param y     The y-coordinate of the origin.
+         * @return      Returns whether the whole shape is within the grid and off the walls.
+         */
+        private boolean fits(int x, int y) {
+            for (int[] offset : offsets) {
+                if (isBlocked(x + offset[0], y + offset[1])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Works out whether some player could move the shape one step, given that it fits both
+         * before and after the step.
+         *
+         * @param x     The x-coordinate of the origin before the step.
+         * @param y     The y-coordinate of the origin before the step.
+         * @param unit  The step.
+         * @return      Returns whether a player could stand where it needs to for the step.
+         */
+        private boolean canMove(int x, int y, Vector2D unit) {
+            if (canGrab) {
+                return true;
+            }
+            for (int[] offset : offsets) {
+                int memberX = x + offset[0];
+                int memberY = y + offset[1];
+
+                //a push player stands just behind a block at the back of the shape
+                if (canPush && !isMember(offset[0] - unit.getX(), offset[1] - unit.getY())
+                        && !isBlocked(memberX - unit.getX(), memberY - unit.getY())) {
+                    return true;
+                }
+
+                //a pull player stands just ahead of a block at the front, and backs away
+                if (canPull && !isMember(offset[0] + unit.getX(), offset[1] + unit.getY())
+                        && !isBlocked(memberX + 2 * unit.getX(), memberY + 2 * unit.getY())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @param offsetX   An x-offset from the origin.
+         * @param offsetY   A y-offset from the origin.
+         * @return          Returns whether the shape has a block at the offset.
+         */
+        private boolean isMember(int offsetX, int offsetY) {
+            for (int[] offset : offsets) {
+                if (offset[0] == offsetX && offset[1] == offsetY) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @param x     An x-coordinate.
+         * @param y     A y-coordinate.
+         * @return      Returns whether the position is off the grid or holds a wall.
+         */
+        private boolean isBlocked(int x, int y) {
+            return x < 0 || y < 0 || x >= width || y >= height || walls[y * width + x];
+        }
+    }
+}
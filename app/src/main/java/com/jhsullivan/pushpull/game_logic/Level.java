@@ -3,6 +3,7 @@ package com.jhsullivan.pushpull.game_logic;
 
     import com.jhsullivan.pushpull.game_objects.Block;
     import com.jhsullivan.pushpull.game_objects.BlockCluster;
+    import com.jhsullivan.pushpull.game_objects.ClusterBody;
     import com.jhsullivan.pushpull.game_objects.GameObject;
     import com.jhsullivan.pushpull.game_objects.Player;
     import com.jhsullivan.pushpull.game_objects.Wall;
@@ -11,6 +12,7 @@ package com.jhsullivan.pushpull.game_logic;
     import com.jhsullivan.pushpull.triggers.Trigger;
     import com.jhsullivan.pushpull.user_interface.DrawingHelper;
     import java.util.ArrayList;
+    import java.util.Arrays;
     import java.util.Collection;
     import java.util.Collections;
     import java.util.HashMap;
@@ -24,8 +26,8 @@ package com.jhsullivan.pushpull.game_logic;
  * movement, checks win conditions, processes all game events, and allows for specific levels
  * to be loaded using special string sequences.
  * <p>
- * The level is structured as a grid of squares (currently fixed at 10x10, but may change to be
- * variable in the future), with each square potentially holding a trigger, which cannot be moved
+ * The level is structured as a grid of squares (10x10 for the original levels, but any size up
+ * to 256x256 can be loaded), with each square potentially holding a trigger, which cannot be moved
  * but influences other pieces, and a game object which can be moved around.  Game objects "take up
  * space", i.e. they cannot be moved over or overlap in any way, while triggers cannot move and do
  * not take up space (they can have a game object occupying the same space).
@@ -45,21 +47,127 @@ package com.jhsullivan.pushpull.game_logic;
 public class Level {
 
 
-    private static final int columnNumber = 10;
-    private static final int rowNumber = 10;
-    private final Vector2D levelBounds = new Vector2D(columnNumber - 1, rowNumber - 1);
-    private final String layout;
+    //The largest number of rows or columns a level may have.
+    public static final int MAX_GRID_LENGTH = 256;
+
+    //The memory the undo history may use unless told otherwise, enough for thousands of moves.
+    public static final int DEFAULT_HISTORY_BYTES = 64 * 1024;
+
+    private static final Vector2D.Direction[] DIRECTIONS = Vector2D.Direction.values();
+    private static final Player.Type[] TYPES = Player.Type.values();
+
+    //What each ASCII character of a layout spawns, so that a layout is read without building a
+    //String (or matching a pattern) for every character.  Characters outside of the table, or
+    //left as SPAWN_UNKNOWN, are not allowed.  The actions are also the cell codes of a
+    //CompiledLevel.
+    static final byte SPAWN_UNKNOWN = 0;
+    static final byte SPAWN_SEPARATOR = 1;
+    static final byte SPAWN_EMPTY = 2;
+    static final byte SPAWN_BLOCK = 3;
+    static final byte SPAWN_WALL = 4;
+    static final byte SPAWN_PLAYER = 5;
+    static final byte SPAWN_CLUSTER = 6;
+    static final byte SPAWN_TARGET = 7;
+    static final byte SPAWN_TRANSFORMER = 8;
+    private static final byte[] SPAWN_ACTIONS = new byte[128];
+
+    //The character of each action which only one character spawns, or 0 for the actions whose
+    //character has to be kept alongside it (e.g. which type of player spawns).
+    static final char[] SPAWN_IDS = {0, 0, 'x', 'b', 'w', 0, 0, 'o', 0};
+
+    static {
+        SPAWN_ACTIONS[','] = SPAWN_SEPARATOR;
+        SPAWN_ACTIONS['\n'] = SPAWN_SEPARATOR;
+        SPAWN_ACTIONS[' '] = SPAWN_SEPARATOR;
+        SPAWN_ACTIONS['x'] = SPAWN_EMPTY;
+        SPAWN_ACTIONS['b'] = SPAWN_BLOCK;
+        SPAWN_ACTIONS['w'] = SPAWN_WALL;
+        SPAWN_ACTIONS['o'] = SPAWN_TARGET;
+        for (char id : "pqr".toCharArray()) {
+            SPAWN_ACTIONS[id] = SPAWN_PLAYER;
+        }
+        for (char id : "PQR".toCharArray()) {
+            SPAWN_ACTIONS[id] = SPAWN_TRANSFORMER;
+        }
+        for (char id : "0123456789!@#$%^&*".toCharArray()) {
+            SPAWN_ACTIONS[id] = SPAWN_CLUSTER;
+        }
+    }
+
+    //Each entry of the undo history packs the id of a game object (or body) that changed during
+    //a move, whether it moved one space in the direction of the move, and, if it is a player
+    //whose type changed, the ordinals of its previous and new types plus one.
+    private static final int ENTRY_MOVED = 1;
+    private static final int ENTRY_PREVIOUS_TYPE_SHIFT = 1;
+    private static final int ENTRY_TYPE_SHIFT = 3;
+    private static final int ENTRY_ID_SHIFT = 5;
+
+    private int columnNumber;
+    private int rowNumber;
+
+    //When true, the cell array is checked against the location of every game object after every
+    //change.  Only meant for debugging, since the check goes through every game object.
+    private static final boolean DEBUG_CELL_INDEX = false;
+    private String layout;
+    private CompiledLevel compiled;
     private ArrayList<GameObject> gameObjects = new ArrayList<>();
     private List<Player> players = new ArrayList<>();
     private List<Trigger> triggers = new ArrayList<>();
     private List<Wall> walls = new ArrayList<>();
     private List<Target> targets = new ArrayList<>();
     private Map<String, List<BlockCluster>> clusterGroups = new HashMap<>();
-    private Map<Vector2D, GameObject> filledPositions = new HashMap<>();
+    private GameObject[] cells;
+    private Trigger[] triggerCells;
+    private boolean[] filledTargetCells;
+    private int filledTargetCount = 0;
     private boolean isComplete = false;
     private boolean finishedLoading = false;
     private String message = "";
 
+    //Scratch buffers for processing input.  These are kept between moves and only ever grow, so
+    //that once they are large enough a move does not allocate anything.
+    private Player.Type[] snapshotTypes = new Player.Type[0];
+    private final List<GameObject> groupScratch = new ArrayList<>();
+    private final List<GameObject> moverScratch = new ArrayList<>();
+    private int[] visitStamps;
+    private int visitStamp = 0;
+    private int groupStamp = 0;
+    private int[] moveOrder = new int[0];
+    private MoveResolver resolver;
+    private ConnectivityIndex connectivity;
+
+    //Per-object state, indexed by the id each game object is given when it is spawned.  A
+    //cluster uses the id of the first block of its body for the whole body.  moveStamps holds
+    //the number of the last input during which the object moved, and groupStamps the number of
+    //the last group it was moved as part of, so neither needs clearing between moves.
+    private int objectCount = 0;
+    private int[] moveStamps = new int[0];
+    private int[] groupStamps = new int[0];
+    private GameObject[] objectsById = new GameObject[0];
+
+    private MoveHistory history = new MoveHistory(DEFAULT_HISTORY_BYTES / 4);
+
+    //The number of the current input.  Game objects stamped with it have already moved during
+    //this input, so starting a new input lets everything move again without touching any object.
+    private int moveStamp = 1;
+
+    //The Zobrist hash of the current state; see Zobrist.
+    private long stateHash = 0;
+
+    //Cells whose occupant changed during the current input, without duplicates.
+    private int[] changedCells;
+    private int[] changedStamps;
+    private int changedCount = 0;
+
+    //The dead cells of the layout; see DeadCells.  Worked out when first needed, unless the
+    //level was asked to work them out as it loads.
+    private DeadCells deadCells;
+
+    //A checkpoint of the start of the level, taken once it has loaded, from which the level is
+    //reset in place.  Null once the game objects have been replaced, since it no longer matches
+    //them.
+    private int[] startCheckpoint;
+
 
     /**
      * Constructor which builds a level given a specifying layout String.  Fills
@@ -73,6 +181,20 @@ public class Level {
         this.load(layout);
     }
 
+    /**
+     * Constructor which builds a level given a specifying layout String, optionally working out
+     * its dead cells as it loads, so that the first call to {@link #getDeadCells()} is free.
+     *
+     * @param layout            The String defining the layout for this level.
+     * @param findDeadCells     Whether to work out the dead cells of the layout while loading.
+     */
+    public Level(String layout, boolean findDeadCells) throws LevelLoadException {
+        this(layout);
+        if (findDeadCells) {
+            deadCells = DeadCells.of(this);
+        }
+    }
+
     /**
      * Constructor which builds an empty level.
      *
@@ -93,6 +215,17 @@ public class Level {
         this.load(layout);
     }
 
+    /**
+     * Constructor which builds a level from a compiled level, without reading any text.  The
+     * layout String is only put together if it is asked for; see {@link #getLayout()}.
+     *
+     * @param compiled      The compiled level.
+     */
+    Level(CompiledLevel compiled) throws LevelLoadException {
+        this.compiled = compiled;
+        this.load(compiled);
+    }
+
 
     /**
      * Reads the specified String and adds game objects and triggers to the level.
@@ -100,6 +233,7 @@ public class Level {
      * reading order (left to right, top to bottom), where each pair can be a game
      * object and/or a trigger, or empty space.  When a '<' is encountered, the remainder
      * of the file is stored as a message that can be displayed for this particular level.
+     * The size of the grid is worked out first; see {@link #measure(String)}.
      * Throws an error if a pair contains illegally overlapping entities (i.e. two game
      * objects in the same position).
      *
@@ -107,33 +241,36 @@ public class Level {
      */
     private void load(String layout) throws LevelLoadException {
         this.gameObjects.clear();
+        int start = measure(layout);
+        allocateGrid();
+        char[] ids = layout.toCharArray();
         int position = 0;
         boolean doShift = false;
         int currentCode = -2;
-        StringBuilder messageBuilder = new StringBuilder();
-        for (char id : layout.toCharArray()) {
+        message = "";
+        for (int i = start; i < ids.length; i++) {
+           char id = ids[i];
 
            if (id == '>') {
                finishedLoading = true;
-               continue;
+               message = new String(ids, i + 1, ids.length - i - 1);
+               break;
            }
 
-           if (finishedLoading) {
-               messageBuilder.append(id);
+           if (id < SPAWN_ACTIONS.length && SPAWN_ACTIONS[id] == SPAWN_SEPARATOR) {
                continue;
            }
 
-
-           if (id == ','|| id == '\n' || id == ' ') {
-               continue;
+           if (position >= columnNumber * rowNumber) {
+               throw new LevelLoadException("Level file has more than " + columnNumber + "x"
+                                                + rowNumber + " positions.");
            }
-
-           int y = position / rowNumber;
+           int y = position / columnNumber;
            int x = position % columnNumber;
 
            int previousCode = currentCode;
-           Vector2D location = new Vector2D(x, y);
-           currentCode = processID(id, location);
+           Vector2D location = Vector2D.of(x, y);
+           currentCode = processID(spawnAction(id), id, location);
 
            if (doShift) {
                if (currentCode != 0 && currentCode == previousCode) {
@@ -145,80 +282,247 @@ public class Level {
            doShift = !doShift;
         }
 
-        for (Wall wall : walls) {
-           wall.groupWalls(walls);
-        }
+        finishLoading();
+    }
 
-        for (GameObject obj : gameObjects) {
-            obj.setUndoLocation(obj.getLocation());
+    /**
+     * Adds the game objects and triggers of a compiled level to the level.  Each cell's code holds
+     * the actions of its two characters, in the low and then the high four bits, and the
+     * characters which the actions alone do not give are read from the level's ids in order.
+     * Throws an error if the codes and ids do not agree, or a cell contains illegally
+     * overlapping entities.
+     *
+     * @param compiled  The compiled level.
+     */
+    private void load(CompiledLevel compiled) throws LevelLoadException {
+        this.gameObjects.clear();
+        setGridSize(compiled.getWidth(), compiled.getHeight());
+        allocateGrid();
+        byte[] cellCodes = compiled.getCellCodes();
+        byte[] ids = compiled.getIds();
+        int nextId = 0;
+        for (int cell = 0; cell < cellCodes.length; cell++) {
+            Vector2D location = Vector2D.of(cell % columnNumber, cell / columnNumber);
+            int previousCode = 0;
+            for (int shift = 0; shift < 8; shift += 4) {
+                int action = (cellCodes[cell] >>> shift) & 0xF;
+                char id = action < SPAWN_IDS.length ? SPAWN_IDS[action] : 0;
+                if (id == 0) {
+                    id = nextId < ids.length ? (char) (ids[nextId++] & 0xFF) : 0;
+                    if (spawnAction(id) != action) {
+                        throw new LevelLoadException("Compiled level has no valid ID for "
+                                                        + location.toString());
+                    }
+                }
+
+                int currentCode = processID(action, id, location);
+                if (currentCode != 0 && currentCode == previousCode) {
+                    throw new LevelLoadException("Level file contains an illegal overlap at "
+                                                    + location.toString());
+                }
+                previousCode = currentCode;
+            }
         }
 
-        for (Player player : players) {
-            player.setPreviousType(player.getType());
+        finishedLoading = compiled.getMessage() != null;
+        message = finishedLoading ? compiled.getMessage() : "";
+        finishLoading();
+    }
+
+    /**
+     * Brings the level up to date once all of its game objects and triggers have spawned.
+     */
+    private void finishLoading() {
+        for (Wall wall : walls) {
+           wall.groupWalls(walls);
         }
-        message = messageBuilder.toString();
+
         updateClusters();
         update();
+        startCheckpoint = saveCheckpoint();
     }
 
 
 
     /**
-     * Reads in a character and spawns game objects, triggers, or empty space at the
-     * specified location.
+     * Works out the size of the grid described by a layout, before anything is spawned.  A
+     * layout may declare its size in a header such as "[20x15]" at the very start.  Otherwise,
+     * if the rows are on separate lines, the width is the number of positions in the first row
+     * and the height is the number of rows, and every row must have the same width.  A layout
+     * on a single line is assumed to be square, as all of the original levels were.
      *
-     * @param idChar        The character id which determines what, if any, thing spawns.
-     * @param location      The location of the spawn.
-     * @return              Returns 1 for game objects, -1 for triggers, and 0 for empty space.
+     * @param layout    The String defining the layout of the level.
+     * @return          Returns the index in the layout at which the positions begin.
      */
-    private int processID(Character idChar, Vector2D location) throws LevelLoadException {
-
-        String id = Character.toString(idChar);
+    private int measure(String layout) throws LevelLoadException {
+        int start = 0;
+        while (start < layout.length() && Character.isWhitespace(layout.charAt(start))) {
+            start += 1;
+        }
 
-        if (id.equals("b")) {
-            spawnGameObject(new Block(), location);
-            return 1;
+        if (start < layout.length() && layout.charAt(start) == '[') {
+            int end = layout.indexOf(']', start);
+            String[] size = end == -1 ? new String[0]
+                                      : layout.substring(start + 1, end).split("x");
+            if (size.length != 2) {
+                throw new LevelLoadException("Level header is not of the form [WIDTHxHEIGHT].");
+            }
+            try {
+                setGridSize(Integer.parseInt(size[0].trim()), Integer.parseInt(size[1].trim()));
+            }
+            catch (NumberFormatException e) {
+                throw new LevelLoadException("Level header is not of the form [WIDTHxHEIGHT].");
+            }
+            return end + 1;
         }
 
-        else if (id.equals("w")) {
-            Wall wall = new Wall();
-            spawnGameObject(wall, location);
-            return 1;
+        int characters = 0;
+        int rowCharacters = 0;
+        int firstRowCharacters = 0;
+        int rows = 0;
+        for (int i = start; i <= layout.length(); i++) {
+            char id = i < layout.length() ? layout.charAt(i) : '\n';
+            if (id == '>') {
+                id = '\n';
+                i = layout.length();
+            }
+            if (id == '\n') {
+                if (rowCharacters == 0) {
+                    continue;
+                }
+                if (rows == 0) {
+                    firstRowCharacters = rowCharacters;
+                }
+                else if (rowCharacters != firstRowCharacters) {
+                    throw new LevelLoadException("Level file row " + (rows + 1)
+                                                    + " has a different width than the first.");
+                }
+                rows += 1;
+                rowCharacters = 0;
+            }
+            else if (id != ',' && id != ' ') {
+                characters += 1;
+                rowCharacters += 1;
+            }
         }
 
-        else if (id.equals("o")) {
-            Target target = new Target(location, this);
-            triggers.add(target);
-            targets.add(target);
-            return -1;
+        if (rows > 1) {
+            if (firstRowCharacters % 2 != 0) {
+                throw new LevelLoadException("Level file rows must have two characters for "
+                                                + "each position.");
+            }
+            setGridSize(firstRowCharacters / 2, rows);
         }
+        else {
+            int length = (int) Math.round(Math.sqrt(characters / 2));
+            if (length * length * 2 != characters) {
+                throw new LevelLoadException("Level file on a single line must describe a "
+                                                + "square grid.");
+            }
+            setGridSize(length, length);
+        }
+        return start;
+    }
 
-        else if (id.matches("[PQR]")) {
-            triggers.add(new Transformer(Player.idToType(idChar), location, this));
-            return -1;
+    /**
+     * Sets the number of columns and rows of the grid, checking that they are allowed.
+     *
+     * @param width     The number of columns.
+     * @param height    The number of rows.
+     */
+    private void setGridSize(int width, int height) throws LevelLoadException {
+        if (width < 1 || height < 1 || width > MAX_GRID_LENGTH || height > MAX_GRID_LENGTH) {
+            throw new LevelLoadException("Level size " + width + "x" + height
+                                            + " is not between 1x1 and " + MAX_GRID_LENGTH + "x"
+                                            + MAX_GRID_LENGTH + ".");
         }
+        columnNumber = width;
+        rowNumber = height;
+    }
 
-        else if (id.matches("[\\d!@#$%^&*]")) {
+    /**
+     * Creates the arrays that are indexed by cell, now that the size of the grid is known, and
+     * makes sure that every position on the grid has a shared Vector2D.
+     */
+    private void allocateGrid() {
+        int cellCount = columnNumber * rowNumber;
+        cells = new GameObject[cellCount];
+        triggerCells = new Trigger[cellCount];
+        filledTargetCells = new boolean[cellCount];
+        visitStamps = new int[cellCount];
+        moveStamps = new int[cellCount];
+        groupStamps = new int[cellCount];
+        objectsById = new GameObject[cellCount];
+        changedCells = new int[cellCount];
+        changedStamps = new int[cellCount];
+        resolver = new MoveResolver(cellCount);
+        connectivity = new ConnectivityIndex(cells, columnNumber, rowNumber);
+        Vector2D.reserve(columnNumber, rowNumber);
+    }
 
-            BlockCluster spawned = new BlockCluster(idChar);
-            spawnGameObject(spawned, location);
-            return 1;
-        }
+    /**
+     * @param id    A character of a layout.
+     * @return      Returns what the character spawns, i.e. one of the SPAWN_ actions.
+     */
+    static int spawnAction(char id) {
+        return id < SPAWN_ACTIONS.length ? SPAWN_ACTIONS[id] : SPAWN_UNKNOWN;
+    }
 
-        else if (id.matches("[pqr]")) {
-            Player.Type spawnType = Player.idToType(idChar);
-            Player spawnPlayer = new Player(spawnType);
-            spawnGameObject(spawnPlayer, location);
-            return 1;
+    /**
+     * Spawns game objects, triggers, or empty space at the specified location, according to
+     * what a character of the layout spawns.
+     *
+     * @param action        What the character spawns; see {@link #spawnAction(char)}.
+     * @param id            The character id, which determines e.g. the type of a player.
+     * @param location      The location of the spawn.
+     * @return              Returns 1 for game objects, -1 for triggers, and 0 for empty space.
+     */
+    private int processID(int action, char id, Vector2D location) throws LevelLoadException {
+        switch (action) {
+            case SPAWN_EMPTY:
+                return 0;
+
+            case SPAWN_BLOCK:
+                spawnGameObject(new Block(), location);
+                return 1;
+
+            case SPAWN_WALL:
+                spawnGameObject(new Wall(), location);
+                return 1;
+
+            case SPAWN_PLAYER:
+                spawnGameObject(new Player(Player.idToType(id)), location);
+                return 1;
+
+            case SPAWN_CLUSTER:
+                spawnGameObject(new BlockCluster(id), location);
+                return 1;
+
+            case SPAWN_TARGET:
+                Target target = new Target(location, this);
+                addTrigger(target);
+                targets.add(target);
+                return -1;
+
+            case SPAWN_TRANSFORMER:
+                addTrigger(new Transformer(Player.idToType(id), location, this));
+                return -1;
+
+            default:
+                throw new LevelLoadException("Object ID '" + id
+                        + "' does not correspond to a known object.");
         }
+    }
 
-        else if (id.equals("x")) {
-            return 0;
-        }
-        else {
-            throw new LevelLoadException("Object ID '" +  ""
-                    + id +  "' does not correspond to a known object.");
-        }
+    /**
+     * Adds a trigger to the level, indexing it by the cell it is on.
+     *
+     * @param trigger   The trigger to add.
+     */
+    private void addTrigger(Trigger trigger) {
+        triggers.add(trigger);
+        Vector2D location = trigger.getLocation();
+        triggerCells[cellIndex(location.getX(), location.getY())] = trigger;
     }
 
     /**
@@ -236,7 +540,8 @@ public class Level {
 
     /**
      * Unpacks a collection of game objects, i.e. clears the level and  puts all of the game
-     * objects in the specified collection into their location on the Level.
+     * objects in the specified collection into their location on the Level.  The undo history
+     * is cleared, since it no longer describes how the level got to this state.
      *
      * @param objects The Game Objects to unpack
 
@@ -247,27 +552,177 @@ public class Level {
         for (GameObject piece : objects) {
             spawnGameObject(piece, piece.getLocation());
         }
+        history.clear();
+        startCheckpoint = null;
+        update();
     }
 
     /**
-     * Performs the 'undo' feature of the game, i.e. puts every piece back to where it was before
-     * the last move, and reverts any just-changed types back to their previous state.
+     * Performs the 'undo' feature of the game, i.e. puts every piece that changed during the
+     * most recent move in the history back to where it was before that move, and reverts any
+     * just-changed types back to their previous state.  Only the cells that the move changed are
+     * touched.  Does nothing if there is no move left to undo.
      */
-    void revertState() {
+    public void revertState() {
+        if (history.isEmpty()) {
+            return;
+        }
+        Vector2D.Direction direction = DIRECTIONS[history.getNewestDirection()];
+        List<GameObject> movers = moverScratch;
+        movers.clear();
+        for (int i = 0; i < history.getNewestSize(); i++) {
+            applyEntry(history.getNewestEntry(i), false, movers);
+        }
+        history.removeNewest();
+        shiftGroup(movers, Vector2D.getOppositeDirection(direction));
 
-        filledPositions.clear();
-        for (GameObject gameObject : gameObjects) {
+        updateChangedCells();
+        checkCellIndex();
+        moveStamp += 1;
+    }
 
-            gameObject.setLocation(gameObject.getUndoLocation());
-            filledPositions.put(gameObject.getLocation(), gameObject);
+    /**
+     * Replays a recorded move, either forward (redoing it) or backward (undoing it), given the
+     * entries that were recorded for it.  The level must be in the state just before the move
+     * to replay it forward, or just after it to replay it backward.  Only the cells that the
+     * move changed are touched.  Since the level's own history no longer matches once a move is
+     * replayed from outside, it is cleared.
+     *
+     * @param entries       The recorded entries.
+     * @param from          The index of the first entry of the move.
+     * @param to            The index just past the last entry of the move.
+     * @param direction     The direction of the recorded move.
+     * @param forward       Whether to redo the move, rather than undo it.
+     */
+    void replayMove(int[] entries, int from, int to, Vector2D.Direction direction,
+                    boolean forward) {
+        List<GameObject> movers = moverScratch;
+        movers.clear();
+        for (int i = from; i < to; i++) {
+            applyEntry(entries[i], forward, movers);
+        }
+        shiftGroup(movers, forward ? direction : Vector2D.getOppositeDirection(direction));
 
-            if (gameObject instanceof  Player) {
-                Player player = (Player) gameObject;
-                player.changeType(player.getPreviousType());
-            }
+        history.clear();
+        updateChangedCells();
+        checkCellIndex();
+        moveStamp += 1;
+    }
+
+    /**
+     * Applies the type change in a recorded entry, and adds the game object to the list of
+     * movers if it moved.
+     *
+     * @param entry     The packed entry.
+     * @param forward   Whether to apply the new type, rather than the previous type.
+     * @param movers    The list of game objects to move.
+     */
+    private void applyEntry(int entry, boolean forward, List<GameObject> movers) {
+        GameObject gameObject = objectsById[entry >>> ENTRY_ID_SHIFT];
+        if ((entry & ENTRY_MOVED) != 0) {
+            movers.add(gameObject);
+        }
+        int type = (entry >>> (forward ? ENTRY_TYPE_SHIFT : ENTRY_PREVIOUS_TYPE_SHIFT)) & 3;
+        if (type != 0) {
+            Player player = (Player) gameObject;
+            Player.Type previous = player.getType();
+            player.changeType(TYPES[type - 1]);
+            hashTypeChange(player, previous);
+        }
+    }
+
+    /**
+     * @return  Returns the number of entries recorded for the most recent input.
+     */
+    int getLastMoveSize() {
+        return history.getPendingCount();
+    }
+
+    /**
+     * @param index     The index of the entry.
+     * @return          Returns the specified entry recorded for the most recent input.
+     */
+    int getLastMoveEntry(int index) {
+        return history.getPendingEntry(index);
+    }
+
+    /**
+     * Packs the location of every game object and the type of every player into an array, from
+     * which the state can be restored with {@link #restoreCheckpoint(int[])}.  The array holds
+     * the index (y * width + x) of the cell of every game object, in the order of
+     * {@link #getGameObjects()}, followed by the ordinal of the type of every player.
+     *
+     * @return  Returns the packed state of the level.
+     */
+    public int[] saveCheckpoint() {
+        int[] checkpoint = new int[gameObjects.size() + players.size()];
+        for (int i = 0; i < gameObjects.size(); i++) {
+            Vector2D location = gameObjects.get(i).getLocation();
+            checkpoint[i] = cellIndex(location.getX(), location.getY());
+        }
+        for (int i = 0; i < players.size(); i++) {
+            checkpoint[gameObjects.size() + i] = players.get(i).getType().ordinal();
+        }
+        return checkpoint;
+    }
+
+    /**
+     * Puts every game object back to the location, and every player back to the type, stored in
+     * a checkpoint taken from this level with {@link #saveCheckpoint()}.  Clears the level's own
+     * history, since it no longer matches.
+     *
+     * @param checkpoint    The packed state to restore.
+     */
+    public void restoreCheckpoint(int[] checkpoint) {
+        clearCells();
+        for (int i = 0; i < gameObjects.size(); i++) {
+            GameObject gameObject = gameObjects.get(i);
+            gameObject.setLocation(Vector2D.of(checkpoint[i] % columnNumber,
+                                               checkpoint[i] / columnNumber));
+            fillCell(gameObject);
+        }
+        for (int i = 0; i < players.size(); i++) {
+            players.get(i).changeType(TYPES[checkpoint[gameObjects.size() + i]]);
+        }
+
+        history.clear();
+        update();
+        checkCellIndex();
+        moveStamp += 1;
+    }
+
+    /**
+     * Puts the level back to its start in place, from the checkpoint taken when it loaded, so
+     * that nothing is parsed or spawned again and the outlines of clusters are kept.  Clears the
+     * undo history, and the level is no longer complete.
+     *
+     * @return  Returns whether the level was reset, which it cannot be once its game objects
+     *          have been replaced with {@link #unpackGameObjects(Collection)}.
+     */
+    public boolean reset() {
+        if (startCheckpoint == null) {
+            return false;
         }
+        isComplete = false;
+        restoreCheckpoint(startCheckpoint);
+        return true;
+    }
+
+    /**
+     * @return  Returns whether there is a move that can be undone.
+     */
+    public boolean canUndo() {
+        return !history.isEmpty();
+    }
 
-       update();
+    /**
+     * Sets the most memory the undo history may use, forgetting every move made so far.  Once
+     * the history is full, the oldest moves are forgotten to make room for new ones.
+     *
+     * @param bytes     The number of bytes the history may use.
+     */
+    public void setHistoryLimit(int bytes) {
+        history = new MoveHistory(bytes / 4);
     }
 
     /**
@@ -275,7 +730,8 @@ public class Level {
      */
     private void clearGameObjects() {
         gameObjects.clear();
-        filledPositions.clear();
+        objectCount = 0;
+        clearCells();
         players.clear();
         walls.clear();
         clusterGroups.clear();
@@ -287,8 +743,8 @@ public class Level {
      */
     private void removeGameObject(GameObject gameObject) {
         gameObjects.remove(gameObject);
-        if (filledPositions.get(gameObject.getLocation()).equals(gameObject)) {
-            filledPositions.remove(gameObject.getLocation());
+        if (getObjectAt(gameObject.getLocation()) == gameObject) {
+            emptyCell(gameObject.getLocation());
         }
         players.remove(gameObject);
         walls.remove(gameObject);
@@ -301,19 +757,20 @@ public class Level {
     }
 
     /**
-     * Spawns a game object in the level at a specified position.  If another object
-     * is already in the specified position then that object is deleted.
+     * Spawns a game object in the level at a specified position, giving it the next id.  If
+     * another object is already in the specified position then that object is deleted.
      *
      * @param gameObject    The game object to spawn.
      * @param spawnPoint    The location of the object in the game.
      */
     private void spawnGameObject(GameObject gameObject, Vector2D spawnPoint) {
         gameObject.setLocation(spawnPoint);
-        if (filledPositions.get(spawnPoint) != null) {
-            removeGameObject(filledPositions.get(spawnPoint));
+        if (getObjectAt(spawnPoint) != null) {
+            removeGameObject(getObjectAt(spawnPoint));
         }
-        filledPositions.put(spawnPoint, gameObject);
+        fillCell(gameObject);
         gameObjects.add(gameObject);
+        assignId(gameObject);
 
         if (gameObject instanceof Wall) {
             walls.add(((Wall) gameObject));
@@ -329,6 +786,24 @@ public class Level {
     }
 
 
+    /**
+     * Gives a game object the next id, growing the arrays indexed by id if necessary.
+     *
+     * @param gameObject    The game object to give an id.
+     */
+    private void assignId(GameObject gameObject) {
+        if (objectCount == moveStamps.length) {
+            int capacity = Math.max(16, objectCount * 2);
+            moveStamps = Arrays.copyOf(moveStamps, capacity);
+            groupStamps = Arrays.copyOf(groupStamps, capacity);
+            objectsById = Arrays.copyOf(objectsById, capacity);
+        }
+        moveStamps[objectCount] = 0;
+        objectsById[objectCount] = gameObject;
+        gameObject.setId(objectCount);
+        objectCount += 1;
+    }
+
     /**
      * Gets all of the game objects that are edge adjacent to the specified game object.
      *
@@ -337,21 +812,34 @@ public class Level {
      */
 
     public Collection<GameObject> getAdjacentObjects(GameObject gameObject) {
-        Collection<Vector2D> adjacentPoints = gameObject.getLocation().getAdjacentPoints();
+        int x = gameObject.getLocation().getX();
+        int y = gameObject.getLocation().getY();
         List<GameObject> adjacents = new ArrayList<>();
-        for (Vector2D point : adjacentPoints) {
-            GameObject adj = filledPositions.get(point);
-            if (adj != null) {
-                adjacents.add(adj);
-            }
-        }
+        addIfPresent(x + 1, y, adjacents);
+        addIfPresent(x - 1, y, adjacents);
+        addIfPresent(x, y + 1, adjacents);
+        addIfPresent(x, y - 1, adjacents);
         return adjacents;
     }
 
+    /**
+     * Adds the game object at the specified position to the list, if there is one.
+     *
+     * @param x         The x-coordinate of the position to check.
+     * @param y         The y-coordinate of the position to check.
+     * @param list      The list to add to.
+     */
+    private void addIfPresent(int x, int y, List<GameObject> list) {
+        GameObject obj = getObjectAt(x, y);
+        if (obj != null) {
+            list.add(obj);
+        }
+    }
+
     /**
      * Updates the collection of stored BlockClusters contained by each cluster.  Gives each
      * cluster a reference to its connecting blocks, as well as storing the drawing path for the
-     * clusters.
+     * clusters, and joins the blocks of each cluster into a single rigid body.
      */
     private void updateClusters() {
         for (List<BlockCluster> clusterList : clusterGroups.values()) {
@@ -371,120 +859,162 @@ public class Level {
                 cluster.makeCluster(clusterList);
                 cluster.setPath(path);
             }
+            ClusterBody body = new ClusterBody(clusterList);
+            for (BlockCluster cluster : clusterList) {
+                cluster.setBody(body);
+            }
         }
     }
 
 
     /**
      * Applies input in a certain direction, i.e. attempts to move all of the
-     * players in the level (and push/pull any blocks the players can).  Repeatedly
-     * attempts to move each player until there is no longer any change occurring.
+     * players in the level (and push/pull any blocks the players can).  Attempts
+     * to move each player again whenever something it was blocked by changes, until
+     * there is no longer any change occurring.
 
      * @param moveDirection  The input direction.
      *  @return  Returns whether a movement actually occurred.
      */
     public boolean processInput(Vector2D.Direction moveDirection) {
 
-
-        //Store current locations and types.
-        Map<GameObject, Vector2D> currentLocations = new HashMap<>();
-        Map<Player, Player.Type> currentTypes = new HashMap<>();
-        for (GameObject obj : gameObjects) {
-            currentLocations.put(obj, obj.getLocation());
-        }
-
-        for (Player player : players) {
-            currentTypes.put(player, player.getType());
-        }
-
-
+        //Store current types.
+        takeSnapshot();
+        history.begin();
 
         //Attempt moves
-        List<Player> failures = new ArrayList<>();
-        int count = players.size();
-        while (failures.size() != count) {
-            count = failures.size();
-            failures = new ArrayList<>();
-            movePlayers(moveDirection, failures);
+        boolean playersMoved = movePlayers(moveDirection);
+        boolean didMove = moveFailures(moveDirection) || playersMoved;
+
+        updateChangedCells();
+        checkCellIndex();
+
+        //If a move really occurs, record it (along with any type changes) for undoing.
+        if (didMove) {
+            for (int i = 0; i < players.size(); i++) {
+                Player player = players.get(i);
+                if (player.getType() != snapshotTypes[i]) {
+                    history.add((player.getId() << ENTRY_ID_SHIFT)
+                            | ((snapshotTypes[i].ordinal() + 1) << ENTRY_PREVIOUS_TYPE_SHIFT)
+                            | ((player.getType().ordinal() + 1) << ENTRY_TYPE_SHIFT));
+                }
+            }
+            history.commit(moveDirection.ordinal());
         }
 
-        //If a move really occurs, update undo locations.
-        boolean didMove = false;
-        if (moveFailures(moveDirection) || failures.size() < players.size()) {
-            for (GameObject obj : gameObjects) {
-                obj.setUndoLocation(currentLocations.get(obj));
-            }
+        //Let everything move again during the next input.
+        moveStamp += 1;
+        return didMove;
+    }
 
-            for (Player player : players) {
-                player.setPreviousType(currentTypes.get(player));
-            }
-            didMove = true;
 
+    /**
+     * Stores the current type of every player in the snapshot array, growing it first if the
+     * level has more players than it can hold.
+     */
+    private void takeSnapshot() {
+        if (snapshotTypes.length < players.size()) {
+            snapshotTypes = new Player.Type[players.size()];
         }
 
-        update();
-        return didMove;
+        for (int i = 0; i < players.size(); i++) {
+            snapshotTypes[i] = players.get(i).getType();
+        }
     }
 
-
     /**
-     * Attempts a single iteration of movement of all the players in a specified direction.
-     * Moves all of the GRABALL type players first, then the remaining players.  Collects
-     * any players that fail to move in the specified collection.
+     * Moves all of the players in a specified direction, as far as possible.  Attempts all of
+     * the GRABALL type players first, then the remaining players, and attempts a player that
+     * failed to move again (in the same order) whenever something it was blocked by has moved.
      *
      * @param moveDirection     The direction to attempt the move.
-     * @param failures          A collection to put all players that fail to move.
+     * @return                  Returns whether any player moved.
      */
-    private void movePlayers(Vector2D.Direction moveDirection,
-                             Collection<Player> failures) {
-
-        for (Player player : players) {
-            if (player.getType() == Player.Type.GRABALL
-                    && !player.move(moveDirection, this)) {
-                failures.add(player);
+    private boolean movePlayers(Vector2D.Direction moveDirection) {
+        int size = 0;
+        int[] order = getMoveOrder();
+        for (int i = 0; i < players.size(); i++) {
+            if (players.get(i).getType() == Player.Type.GRABALL) {
+                order[size++] = i;
+            }
+        }
+        for (int i = 0; i < players.size(); i++) {
+            if (players.get(i).getType() != Player.Type.GRABALL) {
+                order[size++] = i;
             }
         }
 
-        for (Player player : players) {
-            if (player.getType() != Player.Type.GRABALL
-                    && !player.move(moveDirection, this)) {
-
-                failures.add(player);
-
+        boolean moved = false;
+        resolver.begin(size);
+        for (int i = resolver.nextPosition(); i != -1; i = resolver.nextPosition()) {
+            Player player = players.get(order[i]);
+            if (!canMove(player)) {
+                continue;
             }
+            startAttempt(player);
+            boolean success = player.move(moveDirection, this);
+            resolver.finish(success);
+            moved |= success;
         }
+        return moved;
     }
 
     /**
      * Moves the PULL-type players alone (i.e. not pulling) if they have failed so far.
-     * Repeatedly attempts to move them until there is no more movement.
+     * Attempts a player again whenever something it was blocked by has moved, until there
+     * is no more movement.
      *
      * @param moveDirection     Direction to move.
+     * @return                  Returns whether any player moved.
      */
     private boolean moveFailures(Vector2D.Direction moveDirection) {
-        boolean moved = false;
-        int count = 1;
-        while (count > 0) {
-            count = 0;
-            for (Player player : players) {
-                if (player.canMove() && player.getType() == Player.Type.PULL) {
-                    if (player.move(moveDirection, this)) {
-                        count += 1;
-                    }
-                    else {
-                        if (moveObject(player, moveDirection)) {
-                            count += 1;
-                        }
-                    }
-                }
+        int size = 0;
+        int[] order = getMoveOrder();
+        for (int i = 0; i < players.size(); i++) {
+            if (players.get(i).getType() == Player.Type.PULL) {
+                order[size++] = i;
             }
-            if (count > 0) {
-                moved = true;
+        }
+
+        boolean moved = false;
+        resolver.begin(size);
+        for (int i = resolver.nextPosition(); i != -1; i = resolver.nextPosition()) {
+            Player player = players.get(order[i]);
+            if (!canMove(player)) {
+                continue;
             }
+            startAttempt(player);
+            boolean success = player.move(moveDirection, this)
+                    || moveObject(player, moveDirection);
+            resolver.finish(success);
+            moved |= success;
         }
         return moved;
     }
 
+    /**
+     * @return  Returns the scratch array for the order in which to attempt the players, grown
+     *          to hold every player if necessary.
+     */
+    private int[] getMoveOrder() {
+        if (moveOrder.length < players.size()) {
+            moveOrder = new int[players.size()];
+        }
+        return moveOrder;
+    }
+
+    /**
+     * Starts recording the cells read while attempting to move the specified player, beginning
+     * with the cell the player is on.
+     *
+     * @param player    The player about to be attempted.
+     */
+    private void startAttempt(Player player) {
+        resolver.startRecording();
+        Vector2D location = player.getLocation();
+        resolver.record(cellIndex(location.getX(), location.getY()));
+    }
+
     /**
      * Moves a game object in the specified direction, if possible.
      *
@@ -494,96 +1024,487 @@ public class Level {
      */
 
     private boolean moveObject(GameObject object, Vector2D.Direction direction) {
-        List<GameObject> obj = new ArrayList<>();
+        List<GameObject> obj = startGroup();
         obj.add(object);
         return moveGroup(obj, direction);
     }
 
+    /**
+     * Returns an empty list in which to gather a group of game objects to move together.  The
+     * list is owned by the level and reused for every group, so it is only valid until the next
+     * call to this method.
+     *
+     * @return  Returns the cleared group list.
+     */
+    public List<GameObject> startGroup() {
+        groupScratch.clear();
+        return groupScratch;
+    }
+
+    /**
+     * Adds the specified game object and all game objects that are attached to it (i.e. not
+     * separated by empty space, only blocks/players/clusters that can still move) to the
+     * specified list.  If nothing attached to the game object has moved yet during this input,
+     * its group is read straight from the connectivity index.  Otherwise, walks the grid
+     * directly, marking visited cells with a stamp instead of keeping a set of visited objects.
+     *
+     * @param target    The GameObject from which to get all attached.
+     * @param result    The list to add the attached game objects to.
+     */
+    public void addContiguousObjects(GameObject target, List<GameObject> result) {
+        Vector2D start = target.getLocation();
+        int startCell = cellIndex(start.getX(), start.getY());
+        if (canMove(target) && connectivity.isClean(startCell, moveStamp)) {
+            int cell = startCell;
+            do {
+                result.add(objectAt(cell));
+                cell = connectivity.next(cell);
+            } while (cell != startCell);
+            return;
+        }
+
+        visitStamp += 1;
+        visitStamps[startCell] = visitStamp;
+        int first = result.size();
+        result.add(target);
+
+        for (int i = first; i < result.size(); i++) {
+            Vector2D location = result.get(i).getLocation();
+            int x = location.getX();
+            int y = location.getY();
+            visitAttached(x + 1, y, result);
+            visitAttached(x - 1, y, result);
+            visitAttached(x, y + 1, result);
+            visitAttached(x, y - 1, result);
+        }
+    }
+
+    /**
+     * Adds the game object at the specified position to the list if it can be grabbed (i.e. it
+     * is not a wall and can still move) and has not been visited during the current search.
+     *
+     * @param x         The x-coordinate of the position to visit.
+     * @param y         The y-coordinate of the position to visit.
+     * @param result    The list to add the game object to.
+     */
+    private void visitAttached(int x, int y, List<GameObject> result) {
+        GameObject adj = getObjectAt(x, y);
+        if (adj == null || adj instanceof Wall || !canMove(adj)) {
+            return;
+        }
+        int cell = cellIndex(x, y);
+        if (visitStamps[cell] != visitStamp) {
+            visitStamps[cell] = visitStamp;
+            result.add(adj);
+        }
+    }
+
     /**
      * Moves a group of objects all at once in the specified direction.  If any of the
      * objects fails in movement for some reason (e.g. the location it is trying to fill is
      * occupied) then they all fail, and no movement occurs.
+     * <p>
+     * A BlockCluster in the group brings its whole cluster along, which moves as a single rigid
+     * body: only the cells in front of its leading edge are checked, only the cells on its
+     * leading and trailing edges change, and its origin is moved once, so a large cluster costs
+     * about as much to move as a single block.  Members of the group are marked with a stamp
+     * in an array indexed by their id, so checking whether a blocker is part of the group does
+     * not search the group, and validating a group takes time linear in its size.
      *
      * @param group         The group of game objects to move.
      * @param direction     The direction to move the game objects.
      * @return              Returns the success of the movement.
      */
 
-    public boolean moveGroup(Collection<GameObject> group, Vector2D.Direction direction) {
-        List<GameObject> movers = new ArrayList<>();
-        for (GameObject obj : group) {
-            if (obj.canMove()) {
+    public boolean moveGroup(List<GameObject> group, Vector2D.Direction direction) {
+        groupStamp += 1;
+        List<GameObject> movers = moverScratch;
+        movers.clear();
+        for (int i = 0; i < group.size(); i++) {
+            GameObject obj = group.get(i);
+            Vector2D location = obj.getLocation();
+            int cell = cellIndex(location.getX(), location.getY());
+            resolver.record(cell);
+            ClusterBody body = getBody(obj);
+            if (body != null) {
+                //The body's trailing cells all change whenever it moves.
+                resolver.record(cellIndex(body.getTrailingX(direction, 0),
+                                          body.getTrailingY(direction, 0)));
+            }
+            int id = moverId(obj);
+            if (groupStamps[id] != groupStamp && canMove(obj)) {
+                groupStamps[id] = groupStamp;
                 movers.add(obj);
             }
         }
 
-        for (GameObject obj : movers) {
-            Vector2D movePoint = obj.getLocation().getPointInDirection(direction);
-            if (!isPointValid(movePoint, movers)) {
-                return false;
+        for (int i = 0; i < movers.size(); i++) {
+            GameObject obj = movers.get(i);
+            ClusterBody body = getBody(obj);
+            if (body == null) {
+                Vector2D movePoint = obj.getLocation().getPointInDirection(direction);
+                if (!isPointValid(movePoint.getX(), movePoint.getY())) {
+                    return false;
+                }
+                continue;
+            }
+            for (int j = 0; j < body.getLeadingCount(direction); j++) {
+                if (!isPointValid(body.getLeadingTargetX(direction, j),
+                                  body.getLeadingTargetY(direction, j))) {
+                    return false;
+                }
             }
         }
 
-        for (GameObject obj : movers) {
-            filledPositions.remove(obj.getLocation());
+        shiftGroup(movers, direction);
+        for (int i = 0; i < movers.size(); i++) {
+            int id = moverId(movers.get(i));
+            moveStamps[id] = moveStamp;
+            history.add((id << ENTRY_ID_SHIFT) | ENTRY_MOVED);
         }
-        for (GameObject obj : movers) {
-            obj.setLocation(obj.getLocation().getPointInDirection(direction));
-            filledPositions.put(obj.getLocation(), obj);
+        return true;
+    }
 
-            obj.setMove(false);
+    /**
+     * Moves every game object in a group one space in the specified direction, without checking
+     * whether there is room.  Clusters move as whole bodies, changing only the cells on their
+     * leading and trailing edges.  Every cell that changes is marked as changed, and the state
+     * hash is updated for it.
+     *
+     * @param movers        The game objects to move, at most one per body.
+     * @param direction     The direction in which to move them.
+     */
+    private void shiftGroup(List<GameObject> movers, Vector2D.Direction direction) {
+        for (int i = 0; i < movers.size(); i++) {
+            GameObject obj = movers.get(i);
+            ClusterBody body = getBody(obj);
+            int kind = Zobrist.kindOf(obj);
+            if (body == null) {
+                Vector2D location = obj.getLocation();
+                leaveCell(cellIndex(location.getX(), location.getY()), kind);
+                continue;
+            }
+            for (int j = 0; j < body.getTrailingCount(direction); j++) {
+                leaveCell(cellIndex(body.getTrailingX(direction, j),
+                                    body.getTrailingY(direction, j)), kind);
+            }
         }
-        return true;
+        for (int i = 0; i < movers.size(); i++) {
+            GameObject obj = movers.get(i);
+            ClusterBody body = getBody(obj);
+            int kind = Zobrist.kindOf(obj);
+            if (body == null) {
+                Vector2D location = obj.getLocation().getPointInDirection(direction);
+                int cell = cellIndex(location.getX(), location.getY());
+                obj.setLocation(location);
+                fillCell(obj);
+                markChanged(cell);
+                stateHash ^= Zobrist.key(cell, kind);
+            }
+            else {
+                for (int j = 0; j < body.getLeadingCount(direction); j++) {
+                    int cell = cellIndex(body.getLeadingTargetX(direction, j),
+                                         body.getLeadingTargetY(direction, j));
+                    cells[cell] = obj;
+                    markChanged(cell);
+                    stateHash ^= Zobrist.key(cell, kind);
+                }
+                Vector2D step = Vector2D.getDirectionVector(direction);
+                body.setOrigin(body.getOriginX() + step.getX(), body.getOriginY() + step.getY());
+            }
+        }
+    }
+
+    /**
+     * Empties a cell whose occupant is moving away, marking its group of attached game objects
+     * as changed and removing the occupant from the state hash.
+     *
+     * @param cell  The index of the cell being left.
+     * @param kind  The kind of the occupant, for hashing.
+     */
+    private void leaveCell(int cell, int kind) {
+        connectivity.markMoved(cell, moveStamp);
+        cells[cell] = null;
+        markChanged(cell);
+        stateHash ^= Zobrist.key(cell, kind);
+    }
+
+    /**
+     * @param gameObject    The game object to check.
+     * @return              Returns the id under which the game object's per-object state is
+     *                      kept, i.e. the id of the first block of its body for a BlockCluster,
+     *                      and its own id otherwise.
+     */
+    private static int moverId(GameObject gameObject) {
+        ClusterBody body = getBody(gameObject);
+        if (body == null) {
+            return gameObject.getId();
+        }
+        return body.getMembers().get(0).getId();
     }
 
+    /**
+     * @param gameObject    The game object to check.
+     * @return              Returns the rigid body of the game object if it is a BlockCluster
+     *                      whose cluster has been built, or null otherwise.
+     */
+    private static ClusterBody getBody(GameObject gameObject) {
+        if (gameObject instanceof BlockCluster) {
+            return ((BlockCluster) gameObject).getBody();
+        }
+        return null;
+    }
+
+
+    /**
+     * Returns whether the specified game object can still move during the current input, i.e.
+     * it is not a wall and has not already moved.
+     *
+     * @param gameObject    The game object to check.
+     * @return              Returns whether the game object can move.
+     */
+    public boolean canMove(GameObject gameObject) {
+        return !(gameObject instanceof Wall) && moveStamps[moverId(gameObject)] != moveStamp;
+    }
 
     /**
-     * Performs all of the necessary activities that need to occur after an input has
-     * been processed.  Checks for victory, resets ability of game objects to move if
-     * they moved before, and checks triggers, acting if they have a game object on them.
+     * Records that the occupant of a cell changed during the current input, and wakes any
+     * players waiting on that cell.
+     *
+     * @param cell  The index of the cell that changed.
+     */
+    private void markChanged(int cell) {
+        resolver.wake(cell);
+        if (changedStamps[cell] != moveStamp) {
+            changedStamps[cell] = moveStamp;
+            changedCells[changedCount] = cell;
+            changedCount += 1;
+        }
+    }
+
+    /**
+     * Performs all of the necessary activities that need to occur after the level has been
+     * changed as a whole, e.g. after loading or undoing.  Checks triggers, acting if they have
+     * a game object on them, recounts the filled targets to check for victory, and rebuilds
+     * the groups of attached game objects and the state hash.
      */
     public void update() {
-        for (Trigger trigger : triggers) {
-            GameObject filler = filledPositions.get(trigger.getLocation());
-            if (trigger.isFilled()) {
-                trigger.act(filler);
+        connectivity.rebuild();
+        for (int i = 0; i < triggers.size(); i++) {
+            updateTrigger(triggers.get(i));
+        }
+        stateHash = computeStateHash();
+
+        filledTargetCount = 0;
+        for (int i = 0; i < targets.size(); i++) {
+            Target target = targets.get(i);
+            Vector2D location = target.getLocation();
+            boolean filled = target.isFilled();
+            filledTargetCells[cellIndex(location.getX(), location.getY())] = filled;
+            if (filled) {
+                filledTargetCount += 1;
             }
-            else {
-                trigger.undo(filler);
+        }
+        checkComplete();
+        changedCount = 0;
+    }
+
+    /**
+     * Performs the activities that need to occur after an input has been processed, looking
+     * only at the cells that changed.  Checks the triggers on those cells, keeps the count
+     * of filled targets up to date as game objects enter and leave them, and brings the groups
+     * of attached game objects up to date.
+     */
+    private void updateChangedCells() {
+        for (int i = 0; i < changedCount; i++) {
+            int cell = changedCells[i];
+            Trigger trigger = triggerCells[cell];
+            if (trigger == null) {
+                continue;
+            }
+            updateTrigger(trigger);
+
+            if (trigger instanceof Target) {
+                boolean filled = trigger.isFilled();
+                if (filled != filledTargetCells[cell]) {
+                    filledTargetCells[cell] = filled;
+                    filledTargetCount += filled ? 1 : -1;
+                }
             }
         }
+        connectivity.refresh(changedCells, changedCount);
+        changedCount = 0;
+        checkComplete();
+    }
+
+    /**
+     * Makes a trigger act if it has a game object on it, or undo otherwise.
+     *
+     * @param trigger   The trigger to update.
+     */
+    private void updateTrigger(Trigger trigger) {
+        GameObject filler = getObjectAt(trigger.getLocation());
+        Player.Type previous = filler instanceof Player ? ((Player) filler).getType() : null;
+        if (trigger.isFilled()) {
+            trigger.act(filler);
+        }
+        else {
+            trigger.undo(filler);
+        }
+        if (previous != null) {
+            hashTypeChange((Player) filler, previous);
+        }
+    }
 
-        for (GameObject obj : gameObjects) {
-            obj.setMove(true);
+    /**
+     * Updates the state hash after a player may have changed type.
+     *
+     * @param player    The player.
+     * @param previous  The type of the player before the change.
+     */
+    private void hashTypeChange(Player player, Player.Type previous) {
+        if (player.getType() == previous) {
+            return;
         }
+        Vector2D location = player.getLocation();
+        int cell = cellIndex(location.getX(), location.getY());
+        stateHash ^= Zobrist.key(cell, Zobrist.kindOf(previous))
+                ^ Zobrist.key(cell, Zobrist.kindOf(player.getType()));
+    }
 
-        int targetCount = 0;
-        for (Target target : targets) {
-            if (target.isFilled()) {
-                targetCount += 1;
+    /**
+     * Works out the Zobrist hash of the current state from scratch.
+     *
+     * @return  Returns the hash of the current state.
+     */
+    long computeStateHash() {
+        long hash = 0;
+        for (int i = 0; i < gameObjects.size(); i++) {
+            GameObject gameObject = gameObjects.get(i);
+            int kind = Zobrist.kindOf(gameObject);
+            if (kind != Zobrist.NONE) {
+                Vector2D location = gameObject.getLocation();
+                hash ^= Zobrist.key(cellIndex(location.getX(), location.getY()), kind);
             }
         }
-        if (targetCount == targets.size()) {
+        return hash;
+    }
+
+    /**
+     * Returns the Zobrist hash of the current state, i.e. of where each block, cluster and player
+     * is and the type of each player.  The hash is kept up to date as the level changes, so this
+     * takes constant time.  Equal states of the same layout always have equal hashes, and
+     * different states almost never do.
+     *
+     * @return  Returns the hash of the current state.
+     */
+    public long getStateHash() {
+        return stateHash;
+    }
+
+    /**
+     * Marks the level as complete if every target is filled.  Once complete, the level stays
+     * complete.
+     */
+    private void checkComplete() {
+        if (filledTargetCount == targets.size()) {
             isComplete = true;
         }
     }
 
     /**
-     * Checks whether a specified point is a valid point, i.e. that it is not occupied
-     * by another game object and is within the level bounds.  The exclusion list provided
-     * gives any game objects that can be ignored when checking if the point is occupied.
+     * Checks whether a specified point is a valid point, i.e. that it is within the level bounds
+     * and is not occupied by a game object other than one in the group currently being moved.
      *
-     * @param point             The point to check.
-     * @param exclusionList     A Collection of GameObjects to ignore when checking if the point
-     *                          is occupied.
-     * @return
+     * @param x     The x-coordinate of the point to check.
+     * @param y     The y-coordinate of the point to check.
+     * @return      Returns whether a member of the group can move onto the point.
      */
-    private boolean isPointValid(Vector2D point, Collection<GameObject> exclusionList) {
-        if (!point.isWithin(Vector2D.zero(), levelBounds)) {
+    private boolean isPointValid(int x, int y) {
+        if (!isInBounds(x, y)) {
             return false;
         }
-        GameObject blocker = filledPositions.get(point);
-        return (blocker == null || exclusionList.contains(blocker));
+        int cell = cellIndex(x, y);
+        resolver.record(cell);
+        GameObject blocker = cells[cell];
+        if (blocker == null) {
+            return true;
+        }
+        return groupStamps[moverId(blocker)] == groupStamp;
+    }
+
+    /**
+     * @param x     The x-coordinate of the position to check.
+     * @param y     The y-coordinate of the position to check.
+     * @return      Returns whether the position lies within the level bounds.
+     */
+    private boolean isInBounds(int x, int y) {
+        return x >= 0 && x < columnNumber && y >= 0 && y < rowNumber;
+    }
+
+    /**
+     * Returns the index into the cells array of a position, which must be in bounds.  Cells are
+     * stored row by row, in normal English reading order.
+     *
+     * @param x     The x-coordinate of the position.
+     * @param y     The y-coordinate of the position.
+     * @return      Returns the cell index of the position.
+     */
+    private int cellIndex(int x, int y) {
+        return y * columnNumber + x;
+    }
+
+    /**
+     * Records the specified game object as occupying the cell at its current location.
+     *
+     * @param gameObject    The game object to record.
+     */
+    private void fillCell(GameObject gameObject) {
+        Vector2D location = gameObject.getLocation();
+        cells[cellIndex(location.getX(), location.getY())] = gameObject;
+    }
+
+    /**
+     * Marks the cell at the specified location as empty.
+     *
+     * @param location  The location of the cell to empty.
+     */
+    private void emptyCell(Vector2D location) {
+        cells[cellIndex(location.getX(), location.getY())] = null;
+    }
+
+    /**
+     * Marks every cell as empty.
+     */
+    private void clearCells() {
+        Arrays.fill(cells, null);
+    }
+
+    /**
+     * When debugging is turned on, checks that every game object is found in the cell array at
+     * its location and that no other cells are filled, throwing an IllegalStateException if
+     * not.  Does nothing otherwise.
+     */
+    private void checkCellIndex() {
+        if (!DEBUG_CELL_INDEX) {
+            return;
+        }
+        int count = 0;
+        for (int i = 0; i < cells.length; i++) {
+            if (cells[i] != null) {
+                count += 1;
+            }
+        }
+        for (GameObject gameObject : gameObjects) {
+            Vector2D location = gameObject.getLocation();
+            if (!isInBounds(location.getX(), location.getY())
+                    || objectAt(cellIndex(location.getX(), location.getY())) != gameObject) {
+                throw new IllegalStateException("Cell index is out of sync at " + location);
+            }
+        }
+        if (count != gameObjects.size()) {
+            throw new IllegalStateException("Cell index has extra entries.");
+        }
     }
 
 
@@ -607,7 +1528,7 @@ public class Level {
      * @return          Returns whether a position is filled with a game object or not.
      */
     public boolean isPositionFilled(Vector2D point) {
-        return filledPositions.containsKey(point);
+        return getObjectAt(point) != null;
     }
 
     /**
@@ -615,18 +1536,41 @@ public class Level {
      * @return              Returns the game object at the specified position.
      */
     public GameObject getObjectAt(Vector2D position) {
-        return filledPositions.get(position);
+        return getObjectAt(position.getX(), position.getY());
     }
 
     /**
      * Overloaded version of the above, which uses integer arguments instead of a Vector2D.
+     * Looks the position up directly in the cell array, without allocating anything.
      *
      * @param x The x-coordinate of the position to check.
      * @param y The y-coordinate of the position to check.
      * @return  Returns the game object at the specified position.
      */
     public GameObject getObjectAt(int x, int y) {
-        return this.getObjectAt(new Vector2D(x, y));
+        if (!isInBounds(x, y)) {
+            return null;
+        }
+        int cell = cellIndex(x, y);
+        resolver.record(cell);
+        return objectAt(cell);
+    }
+
+    /**
+     * Returns the game object on a cell.  A cell covered by a cluster only records which body
+     * covers it, since the cells inside a moving body are not rewritten, so the BlockCluster
+     * at the cell is looked up in the body's shape.
+     *
+     * @param cell  The index of the cell.
+     * @return      Returns the game object on the cell, or null if there is none.
+     */
+    private GameObject objectAt(int cell) {
+        GameObject occupant = cells[cell];
+        ClusterBody body = getBody(occupant);
+        if (body == null) {
+            return occupant;
+        }
+        return body.memberAt(cell % columnNumber, cell / columnNumber);
     }
 
     /**
@@ -646,19 +1590,52 @@ public class Level {
     }
 
     /**
-     * @return      Returns the string layout of this level.
+     * Unlike {@link #isComplete()}, this reflects only the current state, so it becomes false
+     * again if a move is undone.
+     *
+     * @return      Returns whether every target is currently filled.
+     */
+    public boolean areTargetsFilled() {
+        return filledTargetCount == targets.size();
+    }
+
+    /**
+     * @return      Returns the string layout of this level.  A level built from a
+     *              {@link CompiledLevel} which was read rather than compiled puts its layout
+     *              together the first time it is asked for.
      */
     public String getLayout() {
+        if (layout == null) {
+            layout = compiled.getLayout();
+        }
         return this.layout;
     }
 
     /**
-     * @return      Returns the width of the grid (currently always 10).
+     * @return      Returns the cells of this level from which blocks and clusters can never
+     *              reach a target, shared with every other level of the same layout.
      */
-    public static int getGridLength() {
+    public DeadCells getDeadCells() {
+        if (deadCells == null) {
+            deadCells = DeadCells.of(this);
+        }
+        return deadCells;
+    }
+
+    /**
+     * @return      Returns the number of columns in the grid.
+     */
+    public int getWidth() {
         return columnNumber;
     }
 
+    /**
+     * @return      Returns the number of rows in the grid.
+     */
+    public int getHeight() {
+        return rowNumber;
+    }
+
     /**
      *
      * @return      Returns an unmodifiable list of targets for this level.
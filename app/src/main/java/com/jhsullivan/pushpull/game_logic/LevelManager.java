@@ -2,11 +2,15 @@ package com.jhsullivan.pushpull.game_logic;
 
 
 import android.content.Context;
+import android.content.res.AssetFileDescriptor;
 import android.content.res.AssetManager;
-import java.io.BufferedReader;
+import com.jhsullivan.pushpull.game_objects.GameObject;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.nio.channels.FileChannel;
+import java.util.Collection;
 
 /***
  * Handles switching between levels and other level-related events.
@@ -14,18 +18,50 @@ import java.io.InputStreamReader;
  * This class opens program asset files which contain level information, and creates levels from
  * those files, in addition to switching between levels and tracking which level is current.
  * The levels are stored in the form of .csv files in the assets section of the app.  The .csv
- * information is passed into the Level class to create the level.  Because files will be accessed,
- * there is possibility of throwing either an IOException in response to a file problem or a
- * LevelLoadException in response to a formatting issue of the level.  The class throws these
+ * information is passed into the Level class to create the level, unless the build compiled the
+ * level into the CompiledLevels assets (see {@link CompiledLevel}), in which case the level is
+ * built from the compiled level without any text being read.  If the build packed all of the
+ * levels into one {@link LevelPack} instead, the levels come from the pack, and the Levels
+ * directory is never listed.  Either way, the parsed level is kept as a template in a cache
+ * shared by every LevelManager, from which returning to the level builds it without reading its
+ * asset.  Because files will be accessed, there is possibility of throwing either an IOException
+ * in response to a file problem or a LevelLoadException in response to a formatting issue of the
+ * level.  The class throws these
  * errors when the constructor or loading methods are called, and allows the user to handle them.
+ * <p>
+ * Input to the current level should go through {@link #processInput}, so that every move is
+ * recorded for undoing, redoing, and seeking to an earlier move of the current attempt.
  */
 
 public class LevelManager {
 
 
+    //The number of moves between the full checkpoints kept for seeking.
+    private static final int CHECKPOINT_INTERVAL = 32;
+
+    //The most memory the moves of an attempt may use before the oldest are forgotten.
+    private static final int TIMELINE_BYTES = Level.DEFAULT_HISTORY_BYTES;
+
+    //The assets directory of the compiled levels.
+    private static final String COMPILED_DIRECTORY = "CompiledLevels";
+
+    //The asset of the level pack, if the levels were packed.
+    private static final String PACK_NAME = "Levels" + LevelPack.EXTENSION;
+
+    //The most memory, as estimated, that the cached level templates may hold.
+    private static final long TEMPLATE_CACHE_BYTES = 256 * 1024;
+
+    //The templates of recently played levels, shared by every LevelManager, since a new one is
+    //made whenever the play screen is.
+    private static final LevelTemplateCache templateCache =
+            new LevelTemplateCache(TEMPLATE_CACHE_BYTES);
+
     private Level currentLevel;
+    private CompiledLevel currentCompiled;
+    private MoveTimeline timeline;
     private int levelIndex = 0;
     private String[] filePaths = new String[0];
+    private LevelPack pack;
     private Context context;
     private AssetManager assetManager;
 
@@ -39,13 +75,62 @@ public class LevelManager {
     public LevelManager(Context context) throws IOException {
         this.context = context;
         assetManager = context.getAssets();
-        filePaths = assetManager.list("Levels");
+        pack = openPack();
+        if (pack == null) {
+            filePaths = assetManager.list("Levels");
+        }
     }
 
     /**
-     * Given an index, accesses the appropriate level file from the assets and returns a level
-     * using the layout information from the .csv asset file.  Throws a LevelLoadExcpetion if
-     * the level file is improperly formatted (determined during construction of the Level class).
+     * Opens the level pack, memory mapping it if it was stored uncompressed, or else reading it
+     * into memory.
+     *
+     * @return              Returns the level pack, or null if the levels were not packed.
+     * @throws IOException  Throws this exception if the pack exists but cannot be read.
+     */
+    private LevelPack openPack() throws IOException {
+        try {
+            AssetFileDescriptor descriptor = assetManager.openFd(PACK_NAME);
+            FileInputStream stream = null;
+            try {
+                //the mapping stays valid once the stream and its channel are closed
+                stream = descriptor.createInputStream();
+                return new LevelPack(stream.getChannel().map(FileChannel.MapMode.READ_ONLY,
+                                                             descriptor.getStartOffset(),
+                                                             descriptor.getLength()));
+            }
+            finally {
+                if (stream != null) {
+                    stream.close();
+                }
+                descriptor.close();
+            }
+        }
+        catch (FileNotFoundException e) {
+            //either there is no pack, or it was compressed and cannot be mapped
+        }
+
+        InputStream in;
+        try {
+            in = assetManager.open(PACK_NAME);
+        }
+        catch (FileNotFoundException e) {
+            return null;
+        }
+        try {
+            return LevelPack.read(in);
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Given an index, builds the level from its template, reading the template from the assets
+     * if it is not cached:  from the level pack or the compiled level, if there is one, or else
+     * by compiling the layout information from the .csv asset file.  Throws a LevelLoadExcpetion
+     * if the level file is improperly formatted (determined during construction of the Level
+     * class).
      *
      * @param index     The index of the level.  NOTE: this index starts at 0, not 1, so the index
      *                  will not match the level numbers in the file name.
@@ -55,35 +140,71 @@ public class LevelManager {
      */
     private Level createLevelFromIndex(int index) throws LevelLoadException {
 
-        Level result;
         try {
-            if (index >= filePaths.length) {
+            if (index >= getLevelCount()) {
                 throw new LevelLoadException("Level index exceeds number of levels.");
             }
-            InputStream singleLevel = assetManager.open("Levels/" + filePaths[index]);
-            BufferedReader br = new BufferedReader(new InputStreamReader(singleLevel));
-
-            StringBuilder layoutBuilder = new StringBuilder();
-            String line;
-            while ((line = br.readLine()) != null) {
-                layoutBuilder.append(line);
+            String key = (pack != null ? PACK_NAME : "Levels") + "#" + index;
+            currentCompiled = templateCache.get(key);
+            if (currentCompiled == null) {
+                currentCompiled = pack != null ? pack.getCompiledLevel(index)
+                                               : readCompiledLevel(index);
+                if (currentCompiled == null) {
+                    InputStream singleLevel = assetManager.open("Levels/" + filePaths[index]);
+                    currentCompiled = CompiledLevel.compile(CompiledLevel.readLayout(singleLevel));
+                }
+                templateCache.put(key, currentCompiled);
             }
-            String layout = layoutBuilder.toString();
-            result = new Level(layout);
-            br.close();
-            return result;
+            return currentCompiled.createLevel();
         }
         catch (IOException e) {
             throw new LevelLoadException("Error when attempting to open file.");
         }
     }
 
+    /**
+     * Reads the compiled form of the level at the given index, if the build compiled it.
+     *
+     * @param index         The index of the level.
+     * @return              Returns the compiled level, or null if there is none.
+     * @throws IOException  Throws this exception if the compiled level exists but cannot be read.
+     */
+    private CompiledLevel readCompiledLevel(int index) throws IOException {
+        String name = filePaths[index];
+        int extension = name.lastIndexOf('.');
+        if (extension != -1) {
+            name = name.substring(0, extension);
+        }
+
+        InputStream in;
+        try {
+            in = assetManager.open(COMPILED_DIRECTORY + "/" + name + CompiledLevel.EXTENSION);
+        }
+        catch (FileNotFoundException e) {
+            return null;
+        }
+        try {
+            return CompiledLevel.read(in);
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /**
+     * @return  Returns the cache of level templates shared by every LevelManager, e.g. to read
+     *          its hit and miss counts.
+     */
+    public static LevelTemplateCache getTemplateCache() {
+        return templateCache;
+    }
+
     /**
      *
      * @return  Returns the total number of levels.
      */
     public int getLevelCount() {
-       return filePaths.length;
+       return pack != null ? pack.getLevelCount() : filePaths.length;
     }
 
     /**
@@ -105,6 +226,7 @@ public class LevelManager {
         this.levelIndex = levelIndex;
         this.currentLevel = createLevelFromIndex(levelIndex);
         this.currentLevel.update();
+        this.timeline = new MoveTimeline(currentLevel, CHECKPOINT_INTERVAL, TIMELINE_BYTES);
 
     }
 
@@ -116,6 +238,24 @@ public class LevelManager {
         return currentLevel;
     }
 
+    /**
+     * @return      Returns the name of the current level's file, without its extension, under
+     *              which any other assets of the level (e.g. its hint table) are kept.
+     */
+    public String getLevelName() {
+        if (pack != null) {
+            try {
+                return pack.getName(levelIndex);
+            }
+            catch (IOException e) {
+                return "";
+            }
+        }
+        String name = filePaths[levelIndex];
+        int extension = name.lastIndexOf('.');
+        return extension == -1 ? name : name.substring(0, extension);
+    }
+
     /**
      *
      * @return      Returns the index of the current Level.
@@ -125,18 +265,93 @@ public class LevelManager {
     }
 
     /**
-     * Issues a command to the level to revert to its saved "undo" state.
+     * Applies input to the current level, recording the move if one occurs.  Any moves that had
+     * been undone can no longer be redone afterward.
+     *
+     * @param direction     The input direction.
+     * @return              Returns whether a movement actually occurred.
+     */
+    public boolean processInput(Vector2D.Direction direction) {
+        return timeline.processInput(direction);
+    }
+
+    /**
+     * Undoes the most recent move of the current level.
      */
     public void revertState() {
-        currentLevel.revertState();
+        timeline.undo();
+    }
+
+    /**
+     * Redoes the most recently undone move of the current level.
+     */
+    public void redo() {
+        timeline.redo();
+    }
+
+    /**
+     * Puts the current level into the state it was in after the specified number of moves of the
+     * current attempt, as a time-travel scrubber would.  The move number is clamped to the moves
+     * that have been made and not yet forgotten.
+     *
+     * @param moveNumber    The number of moves after which to put the level.
+     */
+    public void seek(int moveNumber) {
+        timeline.seek(moveNumber);
+    }
+
+    /**
+     * @return      Returns whether the current level has a move that can be undone, i.e. one that
+     *              was not forgotten to keep the moves of the attempt within their memory limit.
+     */
+    public boolean canUndo() {
+        return timeline.getPosition() > timeline.getFirstMove();
+    }
+
+    /**
+     * @return      Returns whether the current level has an undone move that can be redone.
+     */
+    public boolean canRedo() {
+        return timeline.getPosition() < timeline.getMoveCount();
+    }
+
+    /**
+     * @return      Returns the number of moves the current level is past in the current attempt.
+     */
+    public int getMoveNumber() {
+        return timeline.getPosition();
     }
 
     /**
-     * Reloads the current level, throwing a LevelLoadException upon failure.
+     * @return      Returns the number of moves made in the current attempt, including any that
+     *              have been undone and can still be redone.
+     */
+    public int getMoveCount() {
+        return timeline.getMoveCount();
+    }
+
+    /**
+     * Replaces the state of the current level with the specified game objects, e.g. after the
+     * application is restored, and starts the attempt over from that state.
+     *
+     * @param objects   The game objects to unpack into the current level.
+     */
+    public void restoreGameObjects(Collection<GameObject> objects) {
+        currentLevel.unpackGameObjects(objects);
+        timeline = new MoveTimeline(currentLevel, CHECKPOINT_INTERVAL, TIMELINE_BYTES);
+    }
+
+    /**
+     * Puts the current level back to its start, in place if it can be (see
+     * {@link Level#reset()}), or else by building it again from its template, throwing a
+     * LevelLoadException upon failure.
      *
      * @throws LevelLoadException
      */
     public void reset() throws LevelLoadException {
-        currentLevel = new Level(currentLevel.getLayout());
+        if (!currentLevel.reset()) {
+            currentLevel = currentCompiled.createLevel();
+        }
+        timeline = new MoveTimeline(currentLevel, CHECKPOINT_INTERVAL, TIMELINE_BYTES);
     }
 }
@@ -0,0 +1,313 @@
+package com.jhsullivan.pushpull.game_logic;
+
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Many compiled levels (see {@link CompiledLevel}) packed into one file, with a table of offsets
+ * at the front, so that a game with thousands of levels does not need thousands of assets.
+ * <p>
+ * The pack is read from a ByteBuffer, which is either memory mapped or holds the whole file, and
+ * nothing is decoded up front.  The number of levels, and the name and size of any level, are
+ * read straight from the table, while a level's body is only decoded when it is asked for, from
+ * its offset.  Reading a pack is safe from several threads at once, since only absolute reads of
+ * the buffer are made.
+ * <p>
+ * Packs are written by {@link #main(String[])}, which is meant to run as part of the build over
+ * the level assets.  The format is:  a magic number, the version and the number of levels, then
+ * an entry of 16 bytes for each level (the offset and length of its body, its width
+ * and height, and the offset of its name), then the names, and then the bodies, each of which is a
+ * compiled level.  Names are written as by {@link DataOutputStream#writeUTF(String)}.
+ */
+public class LevelPack {
+
+
+    //The extension of level pack files.
+    public static final String EXTENSION = ".pack";
+
+    private static final int MAGIC = 0x50504C4B;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 12;
+    private static final int ENTRY_BYTES = 16;
+
+    private final ByteBuffer buffer;
+    private final int levelCount;
+
+
+    /**
+     * Constructor for a LevelPack over the contents of a pack file.  Only the header is checked,
+     * so opening a pack takes the same time however many levels it holds.
+     *
+     * @param buffer        The contents of the pack file, from position 0.  The buffer is not
+     *                      changed.
+     * @throws IOException  Throws this exception if the buffer does not hold a level pack.
+     */
+    public LevelPack(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.limit() < HEADER_BYTES || buffer.getInt(0) != MAGIC
+                || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not a level pack.");
+        }
+        levelCount = buffer.getInt(8);
+        if (levelCount < 0 || (long) HEADER_BYTES + (long) levelCount * ENTRY_BYTES
+                                > buffer.limit()) {
+            throw new IOException("Level pack table is cut off.");
+        }
+    }
+
+    /**
+     * Opens a pack file by memory mapping it.
+     *
+     * @param file          The pack file.
+     * @return              Returns the level pack.
+     * @throws IOException  Throws this exception if the file cannot be mapped or is not a pack.
+     */
+    public static LevelPack open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            return new LevelPack(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+        finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Reads a whole pack into memory, for when it cannot be mapped (e.g. a compressed asset).
+     *
+     * @param in            The stream of the pack, which is not closed.
+     * @return              Returns the level pack.
+     * @throws IOException  Throws this exception if the stream cannot be read or is not a pack.
+     */
+    public static LevelPack read(InputStream in) throws IOException {
+        ByteArrayOutputStream contents = new ByteArrayOutputStream();
+        byte[] chunk = new byte[8192];
+        int read;
+        while ((read = in.read(chunk)) != -1) {
+            contents.write(chunk, 0, read);
+        }
+        return new LevelPack(ByteBuffer.wrap(contents.toByteArray()));
+    }
+
+    /**
+     * @return  Returns the number of levels in the pack.
+     */
+    public int getLevelCount() {
+        return levelCount;
+    }
+
+    /**
+     * @param index     The index of a level, starting at 0.
+     * @return          Returns the width of the level.
+     */
+    public int getWidth(int index) {
+        return buffer.getShort(entry(index) + 8) & 0xFFFF;
+    }
+
+    /**
+     * @param index     The index of a level, starting at 0.
+     * @return          Returns the height of the level.
+     */
+    public int getHeight(int index) {
+        return buffer.getShort(entry(index) + 10) & 0xFFFF;
+    }
+
+    /**
+     * @param index         The index of a level, starting at 0.
+     * @return              Returns the name of the level, i.e. the name of the file it was
+     *                      compiled from, without its extension.
+     * @throws IOException  Throws this exception if the name is not in the pack.
+     */
+    public String getName(int index) throws IOException {
+        int offset = buffer.getInt(entry(index) + 12);
+        if (offset < 0 || offset > buffer.limit()) {
+            throw new IOException("Level pack name " + index + " is cut off.");
+        }
+        ByteBuffer name = buffer.duplicate();
+        name.position(offset);
+        return new DataInputStream(new BufferInputStream(name)).readUTF();
+    }
+
+    /**
+     * Decodes a level of the pack.
+     *
+     * @param index         The index of a level, starting at 0.
+     * @return              Returns the compiled level.
+     * @throws IOException  Throws this exception if the level is not in the pack, or is not a
+     *                      compiled level.
+     */
+    public CompiledLevel getCompiledLevel(int index) throws IOException {
+        int entry = entry(index);
+        int offset = buffer.getInt(entry);
+        int length = buffer.getInt(entry + 4);
+        if (offset < 0 || length < 0 || (long) offset + length > buffer.limit()) {
+            throw new IOException("Level pack body " + index + " is cut off.");
+        }
+        ByteBuffer body = buffer.duplicate();
+        body.limit(offset + length);
+        body.position(offset);
+        return CompiledLevel.read(new BufferInputStream(body));
+    }
+
+    /**
+     * @param index     The index of a level, starting at 0.
+     * @return          Returns the offset of the level's entry in the table.
+     */
+    private int entry(int index) {
+        if (index < 0 || index >= levelCount) {
+            throw new IndexOutOfBoundsException("Level " + index + " is not in the pack of "
+                                                    + levelCount + ".");
+        }
+        return HEADER_BYTES + index * ENTRY_BYTES;
+    }
+
+    /**
+     * Writes a pack of compiled levels.
+     *
+     * @param out           The stream to write to, which is flushed but not closed.
+     * @param names         The name of each level.
+     * @param levels        The levels, in order.
+     * @throws IOException  Throws this exception if the stream cannot be written to.
+     */
+    public static void write(OutputStream out, List<String> names, List<CompiledLevel> levels)
+            throws IOException {
+        ByteArrayOutputStream nameBytes = new ByteArrayOutputStream();
+        DataOutputStream nameData = new DataOutputStream(nameBytes);
+        int[] nameOffsets = new int[levels.size()];
+        for (int i = 0; i < levels.size(); i++) {
+            nameOffsets[i] = nameData.size();
+            nameData.writeUTF(names.get(i));
+        }
+
+        ByteArrayOutputStream bodies = new ByteArrayOutputStream();
+        int[] bodyOffsets = new int[levels.size() + 1];
+        for (int i = 0; i < levels.size(); i++) {
+            bodyOffsets[i] = bodies.size();
+            levels.get(i).write(bodies);
+        }
+        bodyOffsets[levels.size()] = bodies.size();
+
+        int namesStart = HEADER_BYTES + levels.size() * ENTRY_BYTES;
+        int bodiesStart = namesStart + nameData.size();
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(levels.size());
+        for (int i = 0; i < levels.size(); i++) {
+            data.writeInt(bodiesStart + bodyOffsets[i]);
+            data.writeInt(bodyOffsets[i + 1] - bodyOffsets[i]);
+            data.writeShort(levels.get(i).getWidth());
+            data.writeShort(levels.get(i).getHeight());
+            data.writeInt(namesStart + nameOffsets[i]);
+        }
+        nameBytes.writeTo(data);
+        bodies.writeTo(data);
+        data.flush();
+    }
+
+    /**
+     * Compiles every level file given into one pack, in the order given, where a directory stands
+     * for all of the .csv files in it, in order of name.  Exits with a status of 1 if any level
+     * fails to compile, without writing the pack.
+     *
+     * @param args          The pack file, followed by the level files and directories.
+     * @throws IOException  Throws this exception if a file cannot be read or written.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: LevelPack <pack file> <level files>...");
+            System.exit(1);
+        }
+
+        List<String> names = new ArrayList<>();
+        List<CompiledLevel> levels = new ArrayList<>();
+        boolean failed = false;
+        for (int i = 1; i < args.length; i++) {
+            File file = new File(args[i]);
+            File[] children = file.listFiles();
+            if (children == null) {
+                children = new File[] {file};
+            }
+            Arrays.sort(children);
+            for (File child : children) {
+                String name = child.getName();
+                if (!name.endsWith(".csv")) {
+                    continue;
+                }
+                try {
+                    levels.add(CompiledLevel.compile(
+                            CompiledLevel.readLayout(new FileInputStream(child))));
+                    names.add(name.substring(0, name.length() - ".csv".length()));
+                }
+                catch (LevelLoadException e) {
+                    failed = true;
+                    System.out.println(name + ": " + e.getMessage());
+                }
+            }
+        }
+        if (failed) {
+            System.exit(1);
+        }
+
+        File packFile = new File(args[0]);
+        OutputStream out = new FileOutputStream(packFile);
+        try {
+            write(out, names, levels);
+        }
+        finally {
+            out.close();
+        }
+        System.out.println(packFile.getName() + ": " + levels.size() + " levels, "
+                + packFile.length() + " bytes");
+    }
+
+
+    /**
+     * An InputStream over the remaining bytes of a ByteBuffer, so that a level's body can be
+     * decoded where it is, without copying it out first.
+     */
+    private static class BufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        /**
+         * @param buffer    The buffer to read, from its position up to its limit.
+         */
+        BufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+    }
+}
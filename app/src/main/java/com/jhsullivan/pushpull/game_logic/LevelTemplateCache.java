@@ -0,0 +1,118 @@
+package com.jhsullivan.pushpull.game_logic;
+
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache of level templates, i.e. compiled levels (see {@link CompiledLevel}), so that going
+ * back to a level does not read and parse its asset again.  Templates are immutable, so one
+ * template can be shared by any number of levels built from it.
+ * <p>
+ * The cache is bounded by an estimate of the memory its templates hold (see
+ * {@link CompiledLevel#estimateBytes()}) rather than by their number, since levels may be of any
+ * size, and the least recently used templates are dropped first.  It counts its hits and misses,
+ * so that the bound can be tuned.  All of its methods may be called from any thread.
+ */
+public class LevelTemplateCache {
+
+
+    private final long maxBytes;
+    private long bytes = 0;
+    private long hitCount = 0;
+    private long missCount = 0;
+
+    //The templates, by key, from the least to the most recently used.
+    private final LinkedHashMap<String, CompiledLevel> templates =
+            new LinkedHashMap<>(16, 0.75f, true);
+
+
+    /**
+     * Constructor for a LevelTemplateCache.
+     *
+     * @param maxBytes  The most memory, as estimated, that the cached templates may hold.
+     */
+    public LevelTemplateCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Looks up a template, counting a hit or a miss.
+     *
+     * @param key   The key of the template, e.g. the source of the level and its index.
+     * @return      Returns the template, or null if it is not cached.
+     */
+    public synchronized CompiledLevel get(String key) {
+        CompiledLevel template = templates.get(key);
+        if (template != null) {
+            hitCount += 1;
+        }
+        else {
+            missCount += 1;
+        }
+        return template;
+    }
+
+    /**
+     * Caches a template, dropping the least recently used templates until the cache is back
+     * within its bound.  A template which is larger than the bound on its own is not cached.
+     *
+     * @param key       The key of the template.
+     * @param template  The template.
+     */
+    public synchronized void put(String key, CompiledLevel template) {
+        CompiledLevel previous = templates.remove(key);
+        if (previous != null) {
+            bytes -= previous.estimateBytes();
+        }
+        int size = template.estimateBytes();
+        if (size > maxBytes) {
+            return;
+        }
+
+        templates.put(key, template);
+        bytes += size;
+        Iterator<Map.Entry<String, CompiledLevel>> eldest = templates.entrySet().iterator();
+        while (bytes > maxBytes) {
+            bytes -= eldest.next().getValue().estimateBytes();
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Empties the cache, keeping its counts.
+     */
+    public synchronized void clear() {
+        templates.clear();
+        bytes = 0;
+    }
+
+    /**
+     * @return  Returns the number of cached templates.
+     */
+    public synchronized int size() {
+        return templates.size();
+    }
+
+    /**
+     * @return  Returns the memory, as estimated, that the cached templates hold.
+     */
+    public synchronized long getByteCount() {
+        return bytes;
+    }
+
+    /**
+     * @return  Returns the number of lookups which found their template.
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return  Returns the number of lookups which did not find their template.
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+}
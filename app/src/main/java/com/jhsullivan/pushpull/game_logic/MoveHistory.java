@@ -0,0 +1,183 @@
+package com.jhsullivan.pushpull.game_logic;
+
+
+import java.util.Arrays;
+
+
+/**
+ * Stores the moves made in a Level, so that they can be undone one at a time.
+ * <p>
+ * Every move is stored as a record of packed ints: a header holding the number of entries, one
+ * entry for each game object that moved or changed type during the move (what goes in an entry
+ * is up to the Level), and a footer holding the number of entries again along with the
+ * direction of the move.  The footer lets the newest record be read from the end, and the
+ * header lets the oldest record be dropped from the front.  Records are kept in a ring buffer
+ * of fixed size; when a new record does not fit, the oldest records are forgotten to make room.
+ * <p>
+ * The entries of a move are gathered with {@link #add(int)} while the move is being processed,
+ * after {@link #begin()}, and then stored with {@link #commit(int)} if the move really happened.
+ * Either way, they can still be read until the next move begins.
+ */
+class MoveHistory {
+
+    //The smallest buffer which can hold a record with a single entry.
+    private static final int MIN_CAPACITY = 3;
+
+    private final int[] buffer;
+    private int start = 0;
+    private int size = 0;
+    private int recordCount = 0;
+
+    private int[] pending = new int[16];
+    private int pendingCount = 0;
+
+
+    /**
+     * Constructor for a MoveHistory which uses at most the specified number of ints.
+     *
+     * @param capacity  The number of ints the history may use to store records.
+     */
+    MoveHistory(int capacity) {
+        buffer = new int[Math.max(MIN_CAPACITY, capacity)];
+    }
+
+    /**
+     * Starts gathering the entries of a new move, throwing away those of the previous one.
+     */
+    void begin() {
+        pendingCount = 0;
+    }
+
+    /**
+     * Adds an entry to the move currently being processed.
+     *
+     * @param entry     The packed entry to add.
+     */
+    void add(int entry) {
+        if (pendingCount == pending.length) {
+            pending = Arrays.copyOf(pending, pendingCount * 2);
+        }
+        pending[pendingCount] = entry;
+        pendingCount += 1;
+    }
+
+    /**
+     * Stores the move currently being processed as the newest record, forgetting the oldest
+     * records if there is not enough room.  If the move is too large to fit in the buffer on its
+     * own, every record is forgotten, since the moves before it could not be undone in order.
+     *
+     * @param direction     The ordinal of the direction of the move.
+     */
+    void commit(int direction) {
+        int needed = pendingCount + 2;
+        if (needed > buffer.length) {
+            clear();
+            return;
+        }
+        while (buffer.length - size < needed) {
+            removeOldest();
+        }
+
+        write(size, pendingCount);
+        for (int i = 0; i < pendingCount; i++) {
+            write(size + 1 + i, pending[i]);
+        }
+        write(size + 1 + pendingCount, (pendingCount << 2) | direction);
+        size += needed;
+        recordCount += 1;
+    }
+
+    /**
+     * Forgets every record.
+     */
+    void clear() {
+        start = 0;
+        size = 0;
+        recordCount = 0;
+    }
+
+    /**
+     * @return  Returns the number of entries gathered for the most recent move.
+     */
+    int getPendingCount() {
+        return pendingCount;
+    }
+
+    /**
+     * @param index     The index of the entry, in the order in which the entries were added.
+     * @return          Returns the specified entry of the most recent move.
+     */
+    int getPendingEntry(int index) {
+        return pending[index];
+    }
+
+    /**
+     * @return  Returns whether there are no records left to undo.
+     */
+    boolean isEmpty() {
+        return recordCount == 0;
+    }
+
+    /**
+     * @return  Returns the number of records stored.
+     */
+    int getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * @return  Returns the ordinal of the direction of the newest record.
+     */
+    int getNewestDirection() {
+        return read(size - 1) & 3;
+    }
+
+    /**
+     * @return  Returns the number of entries in the newest record.
+     */
+    int getNewestSize() {
+        return read(size - 1) >>> 2;
+    }
+
+    /**
+     * @param index     The index of the entry, in the order in which the entries were added.
+     * @return          Returns the specified entry of the newest record.
+     */
+    int getNewestEntry(int index) {
+        return read(size - 1 - getNewestSize() + index);
+    }
+
+    /**
+     * Forgets the newest record, i.e. once it has been undone.
+     */
+    void removeNewest() {
+        size -= getNewestSize() + 2;
+        recordCount -= 1;
+    }
+
+    /**
+     * Forgets the oldest record, to make room for a new one.
+     */
+    private void removeOldest() {
+        int length = read(0) + 2;
+        start = (start + length) % buffer.length;
+        size -= length;
+        recordCount -= 1;
+    }
+
+    /**
+     * @param offset    The position relative to the start of the oldest record.
+     * @return          Returns the int stored at that position.
+     */
+    private int read(int offset) {
+        return buffer[(start + offset) % buffer.length];
+    }
+
+    /**
+     * @param offset    The position relative to the start of the oldest record.
+     * @param value     The int to store at that position.
+     */
+    private void write(int offset, int value) {
+        buffer[(start + offset) % buffer.length] = value;
+    }
+}
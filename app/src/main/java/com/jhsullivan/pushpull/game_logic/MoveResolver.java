@@ -0,0 +1,196 @@
+package com.jhsullivan.pushpull.game_logic;
+
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+
+/**
+ * Schedules the attempts to move each player during a single input.
+ * <p>
+ * The Level used to attempt every player over and over, in passes, until a whole pass went by
+ * without anything moving.  Since a failed attempt changes nothing, attempting a player again
+ * can only give a different result if one of the cells it looked at has changed in the
+ * meantime.  So, while a player attempts to move, the Level records every cell it reads; if the
+ * attempt fails, the player is parked on each of those cells.  When a later move changes one of
+ * them, the player is woken up and attempted again.
+ * <p>
+ * Players are identified by their position in the order of the original passes.  A woken player
+ * whose position has not yet been reached is attempted later in the current round, and any other
+ * woken player waits for the next round, which is exactly when the original passes would have
+ * reached them again.  Players that are never woken are never attempted again, so the moves
+ * happen in the same order as before, without repeatedly re-attempting blocked players.
+ */
+class MoveResolver {
+
+    private static final int NONE = -1;
+
+    //Parked players, as linked lists (one per cell) stored in parallel arrays.  A list is only
+    //valid if its stamp matches the current epoch, so nothing needs clearing between inputs.
+    private final int[] cellHeads;
+    private final int[] cellStamps;
+    private int epoch = 0;
+    private int[] nodePositions = new int[64];
+    private int[] nodeAttempts = new int[64];
+    private int[] nodeNexts = new int[64];
+    private int nodeCount = 0;
+
+    //The number of times each position has been attempted or woken.  A parked entry whose
+    //attempt number is out of date belongs to an earlier attempt and is ignored.
+    private int[] attempts = new int[0];
+
+    private BitSet current = new BitSet();
+    private BitSet next = new BitSet();
+    private int cursor = NONE;
+
+    //Cells read during the current attempt, without duplicates.
+    private final int[] readStamps;
+    private int readStamp = 0;
+    private int[] reads = new int[16];
+    private int readCount = 0;
+    private boolean recording = false;
+
+
+    /**
+     * Constructor for a MoveResolver for a grid with the specified number of cells.
+     *
+     * @param cellCount     The number of cells in the grid.
+     */
+    MoveResolver(int cellCount) {
+        this.cellHeads = new int[cellCount];
+        this.cellStamps = new int[cellCount];
+        this.readStamps = new int[cellCount];
+    }
+
+    /**
+     * Starts scheduling a new set of attempts, in which every position is to be attempted once
+     * in the first round.
+     *
+     * @param size  The number of positions to schedule.
+     */
+    void begin(int size) {
+        epoch += 1;
+        nodeCount = 0;
+        if (attempts.length < size) {
+            attempts = new int[size];
+        }
+        current.clear();
+        next.clear();
+        current.set(0, size);
+        cursor = NONE;
+        recording = false;
+    }
+
+    /**
+     * Returns the next position to attempt, moving on to the next round when the current one is
+     * finished.
+     *
+     * @return  Returns the next position to attempt, or -1 if there is nothing left to attempt.
+     */
+    int nextPosition() {
+        int position = current.nextSetBit(cursor + 1);
+        if (position == NONE) {
+            if (next.isEmpty()) {
+                return NONE;
+            }
+            BitSet swap = current;
+            current = next;
+            next = swap;
+            position = current.nextSetBit(0);
+        }
+        current.clear(position);
+        cursor = position;
+        attempts[position] += 1;
+        return position;
+    }
+
+    /**
+     * Starts recording the cells read by the attempt at the current position.
+     */
+    void startRecording() {
+        readStamp += 1;
+        readCount = 0;
+        recording = true;
+    }
+
+    /**
+     * Records that the current attempt read the specified cell.  Does nothing if no attempt is
+     * being recorded.
+     *
+     * @param cell  The index of the cell that was read.
+     */
+    void record(int cell) {
+        if (!recording || readStamps[cell] == readStamp) {
+            return;
+        }
+        readStamps[cell] = readStamp;
+        if (readCount == reads.length) {
+            reads = Arrays.copyOf(reads, readCount * 2);
+        }
+        reads[readCount] = cell;
+        readCount += 1;
+    }
+
+    /**
+     * Finishes the attempt at the current position.  If it failed, the position is parked on
+     * every cell the attempt read, so that it is attempted again once one of them changes.
+     *
+     * @param success   Whether the attempt succeeded.
+     */
+    void finish(boolean success) {
+        recording = false;
+        if (success) {
+            return;
+        }
+        for (int i = 0; i < readCount; i++) {
+            park(cursor, reads[i]);
+        }
+    }
+
+    /**
+     * Wakes every position parked on the specified cell, since the cell has changed.  Positions
+     * after the current one are attempted in this round; the rest in the next round.
+     *
+     * @param cell  The index of the cell that changed.
+     */
+    void wake(int cell) {
+        if (cellStamps[cell] != epoch) {
+            return;
+        }
+        for (int node = cellHeads[cell]; node != NONE; node = nodeNexts[node]) {
+            int position = nodePositions[node];
+            if (nodeAttempts[node] != attempts[position]) {
+                continue;
+            }
+            attempts[position] += 1;
+            if (position > cursor) {
+                current.set(position);
+            }
+            else {
+                next.set(position);
+            }
+        }
+        cellHeads[cell] = NONE;
+    }
+
+    /**
+     * Parks a position on a cell, i.e. adds it to the front of the cell's list.
+     *
+     * @param position  The position to park.
+     * @param cell      The index of the cell to park on.
+     */
+    private void park(int position, int cell) {
+        if (nodeCount == nodePositions.length) {
+            int capacity = nodeCount * 2;
+            nodePositions = Arrays.copyOf(nodePositions, capacity);
+            nodeAttempts = Arrays.copyOf(nodeAttempts, capacity);
+            nodeNexts = Arrays.copyOf(nodeNexts, capacity);
+        }
+        nodePositions[nodeCount] = position;
+        nodeAttempts[nodeCount] = attempts[position];
+        nodeNexts[nodeCount] = cellStamps[cell] == epoch ? cellHeads[cell] : NONE;
+        cellHeads[cell] = nodeCount;
+        cellStamps[cell] = epoch;
+        nodeCount += 1;
+    }
+}
@@ -0,0 +1,228 @@
+package com.jhsullivan.pushpull.game_logic;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * Records the moves of the current attempt at a Level, so that the attempt can be undone,
+ * redone, and scrubbed through to any earlier (or, until a new move is made, later) point.
+ * <p>
+ * Each move is stored as the packed entries the Level recorded for it, which can be replayed in
+ * either direction and only touch the cells the move changed.  A full checkpoint of the board is
+ * also kept every few moves.  Seeking to a move starts from whichever is closest of the current
+ * position and the checkpoints on either side of the target, and replays the moves in between,
+ * so a seek never replays more than about half the checkpoint interval once it is away from the
+ * current position, however long the attempt has been.
+ * <p>
+ * Like the Level's own {@link MoveHistory}, the timeline is bounded by the memory it uses.  Once
+ * it is full, the oldest checkpoint and the moves up to the next one are forgotten, so the
+ * attempt can then only be gone back to its first remaining checkpoint (see
+ * {@link #getFirstMove()}).  The moves since the newest checkpoint are always kept.  Moves keep
+ * their numbers from the start of the attempt either way.
+ * <p>
+ * The timeline must see every move made in the Level, i.e. input must go through
+ * {@link #processInput}, and it has to be started over whenever the Level's state is replaced.
+ */
+class MoveTimeline {
+
+    private static final Vector2D.Direction[] DIRECTIONS = Vector2D.Direction.values();
+
+    //The rough memory taken by each checkpoint besides its contents.
+    private static final int CHECKPOINT_OVERHEAD = 16;
+
+    private final Level level;
+    private final int interval;
+    private final int maxBytes;
+
+    //The entries of the kept moves, back to back, from firstMove on; move firstMove + i uses the
+    //entries from moveEnds[i - 1] (or 0) up to moveEnds[i].
+    private int[] entries = new int[64];
+    private int[] moveEnds = new int[16];
+    private int[] directions = new int[16];
+    private int firstMove = 0;
+    private int moveCount = 0;
+    private int position = 0;
+
+    //The checkpoint at index i holds the state after firstMove + interval * i moves.
+    private final List<int[]> checkpoints = new ArrayList<>();
+
+
+    /**
+     * Constructor for a MoveTimeline that starts at the current state of the specified Level.
+     *
+     * @param level     The Level to record.
+     * @param interval  The number of moves between checkpoints.
+     * @param maxBytes  The most memory the moves and checkpoints may use.
+     */
+    MoveTimeline(Level level, int interval, int maxBytes) {
+        this.level = level;
+        this.interval = Math.max(1, interval);
+        this.maxBytes = maxBytes;
+        checkpoints.add(level.saveCheckpoint());
+    }
+
+    /**
+     * Applies input to the Level, and records the move if one occurred.  Any moves that had been
+     * undone are forgotten, since they can no longer be redone, and then the oldest moves if the
+     * timeline is full.
+     *
+     * @param direction     The input direction.
+     * @return              Returns whether a movement actually occurred.
+     */
+    boolean processInput(Vector2D.Direction direction) {
+        if (!level.processInput(direction)) {
+            return false;
+        }
+
+        moveCount = position;
+        while (checkpoints.size() > (position - firstMove) / interval + 1) {
+            checkpoints.remove(checkpoints.size() - 1);
+        }
+
+        int move = position - firstMove;
+        int start = startOf(position);
+        int size = level.getLastMoveSize();
+        if (start + size > entries.length) {
+            entries = Arrays.copyOf(entries, Math.max(entries.length * 2, start + size));
+        }
+        for (int i = 0; i < size; i++) {
+            entries[start + i] = level.getLastMoveEntry(i);
+        }
+        if (move == moveEnds.length) {
+            moveEnds = Arrays.copyOf(moveEnds, move * 2);
+            directions = Arrays.copyOf(directions, move * 2);
+        }
+        moveEnds[move] = start + size;
+        directions[move] = direction.ordinal();
+        moveCount += 1;
+        position = moveCount;
+
+        if ((position - firstMove) % interval == 0) {
+            checkpoints.add(level.saveCheckpoint());
+        }
+        while (getByteCount() > maxBytes && checkpoints.size() > 1) {
+            removeOldest();
+        }
+        return true;
+    }
+
+    /**
+     * Forgets the oldest checkpoint and the moves up to the next one, moving the rest of the
+     * moves to the front of the arrays.
+     */
+    private void removeOldest() {
+        int removed = moveEnds[interval - 1];
+        int kept = moveCount - firstMove - interval;
+        System.arraycopy(entries, removed, entries, 0, startOf(moveCount) - removed);
+        for (int i = 0; i < kept; i++) {
+            moveEnds[i] = moveEnds[i + interval] - removed;
+            directions[i] = directions[i + interval];
+        }
+        checkpoints.remove(0);
+        firstMove += interval;
+    }
+
+    /**
+     * Undoes the most recent move, if there is one that has not been forgotten.
+     *
+     * @return  Returns whether a move was undone.
+     */
+    boolean undo() {
+        if (position == firstMove) {
+            return false;
+        }
+        seek(position - 1);
+        return true;
+    }
+
+    /**
+     * Redoes the most recently undone move, if there is one.
+     *
+     * @return  Returns whether a move was redone.
+     */
+    boolean redo() {
+        if (position == moveCount) {
+            return false;
+        }
+        seek(position + 1);
+        return true;
+    }
+
+    /**
+     * Puts the Level into the state it was in after the specified number of moves.  The target is
+     * clamped to the moves that are still kept.
+     *
+     * @param target    The number of moves after which to put the Level.
+     */
+    void seek(int target) {
+        target = Math.max(firstMove, Math.min(moveCount, target));
+
+        int checkpoint = Math.min((target - firstMove) / interval, checkpoints.size() - 1);
+        int start = firstMove + checkpoint * interval;
+        if (checkpoint + 1 < checkpoints.size()
+                && start + interval - target < target - start) {
+            checkpoint += 1;
+            start += interval;
+        }
+
+        if (Math.abs(target - position) > Math.abs(target - start)) {
+            level.restoreCheckpoint(checkpoints.get(checkpoint));
+            position = start;
+        }
+        while (position < target) {
+            level.replayMove(entries, startOf(position), moveEnds[position - firstMove],
+                             DIRECTIONS[directions[position - firstMove]], true);
+            position += 1;
+        }
+        while (position > target) {
+            position -= 1;
+            level.replayMove(entries, startOf(position), moveEnds[position - firstMove],
+                             DIRECTIONS[directions[position - firstMove]], false);
+        }
+    }
+
+    /**
+     * @param move  The number of a kept move.
+     * @return      Returns the index of the first entry of the move.
+     */
+    private int startOf(int move) {
+        return move == firstMove ? 0 : moveEnds[move - firstMove - 1];
+    }
+
+    /**
+     * @return  Returns the memory used by the kept moves and checkpoints, i.e. four bytes for
+     *          every entry, eight more for every move, and the checkpoints with their overhead.
+     */
+    int getByteCount() {
+        int checkpointBytes = 4 * checkpoints.get(0).length + CHECKPOINT_OVERHEAD;
+        return 4 * startOf(moveCount) + 8 * (moveCount - firstMove)
+                + checkpointBytes * checkpoints.size();
+    }
+
+    /**
+     * @return  Returns the number of moves the Level is currently past, i.e. the position of the
+     *          timeline.
+     */
+    int getPosition() {
+        return position;
+    }
+
+    /**
+     * @return  Returns the earliest position which can still be gone back to, which is 0 until
+     *          the oldest moves are forgotten.
+     */
+    int getFirstMove() {
+        return firstMove;
+    }
+
+    /**
+     * @return  Returns the number of moves recorded, including any that have been undone and can
+     *          still be redone.
+     */
+    int getMoveCount() {
+        return moveCount;
+    }
+}
@@ -19,18 +19,44 @@ import java.util.Random;
  * use the Direction enum, and when they do the directions use the following schema:
  * LEFT represents the -x direction, UP represents the -y direction, RIGHT represents the +x
  * direction, and DOWN represents the +y direction.
+ * <p>
+ * Since instances are immutable, the vectors for every grid coordinate (plus one step beyond each
+ * edge of the grid) are created once and shared.  {@link #of(int, int)} returns these shared
+ * instances, and each of them caches its four neighbors, so that {@link #getPointInDirection}
+ * does not allocate anything for points on or next to the grid.  Use {@code of} rather than the
+ * constructor wherever possible.  The shared instances cover a 10x10 grid to begin with, and
+ * {@link #reserve(int, int)} extends them to cover larger grids.
  *
  */
 public class Vector2D implements Serializable{
 
     public enum Direction {LEFT, RIGHT, UP, DOWN}
 
+    //The smallest coordinate, in both x and y, for which shared instances are kept.  The cache
+    //covers a grid, the points just outside of it, and the far corners of the last row and column
+    //(used for drawing paths around clusters).
+    private static final int CACHE_MIN = -1;
+    private static final int DEFAULT_GRID_LENGTH = 10;
+
+    //Shared instances by row, then column, offset by CACHE_MIN.  Replaced as a whole when it
+    //grows, so that readers always see a complete cache.
+    private static volatile Vector2D[][] cache = new Vector2D[0][0];
+    private static final Vector2D ZERO;
+
+    static {
+        reserve(DEFAULT_GRID_LENGTH, DEFAULT_GRID_LENGTH);
+        ZERO = of(0, 0);
+    }
+
     private final int x;
     private final int y;
+    private transient Vector2D[] neighbors;
 
 
     /**
-     * The main constructor for a 2D vector at (x, y)
+     * The main constructor for a 2D vector at (x, y).  Prefer {@link #of(int, int)}, which
+     * reuses shared instances.
+     *
      * @param x  The x-coordinate
      * @param y  The y-coordinate
      */
@@ -39,6 +65,99 @@ public class Vector2D implements Serializable{
         this.y = y;
     }
 
+    /**
+     * Returns a vector at (x, y).  If the point lies on or next to the grid, returns the shared
+     * instance for that point instead of allocating a new one.
+     *
+     * @param x  The x-coordinate
+     * @param y  The y-coordinate
+     * @return   Returns a Vector2D at (x, y).
+     */
+    public static Vector2D of(int x, int y) {
+        Vector2D point = cached(x, y);
+        if (point != null) {
+            return point;
+        }
+        return new Vector2D(x, y);
+    }
+
+    /**
+     * @param x  The x-coordinate
+     * @param y  The y-coordinate
+     * @return   Returns the shared instance at (x, y), or null if there is none.
+     */
+    private static Vector2D cached(int x, int y) {
+        return cached(cache, x, y);
+    }
+
+    /**
+     * @param rows  The cache to look in.
+     * @param x     The x-coordinate
+     * @param y     The y-coordinate
+     * @return      Returns the instance at (x, y) in the specified cache, or null if there is none.
+     */
+    private static Vector2D cached(Vector2D[][] rows, int x, int y) {
+        int row = y - CACHE_MIN;
+        int column = x - CACHE_MIN;
+        if (row < 0 || row >= rows.length || column < 0 || column >= rows[row].length) {
+            return null;
+        }
+        return rows[row][column];
+    }
+
+    /**
+     * Makes sure that shared instances exist for every point on a grid of the specified size,
+     * and for the points just outside of it.  Existing shared instances are kept, so vectors
+     * that were shared before stay shared.
+     *
+     * @param width     The number of columns in the grid.
+     * @param height    The number of rows in the grid.
+     */
+    public static synchronized void reserve(int width, int height) {
+        Vector2D[][] old = cache;
+        int oldColumns = old.length == 0 ? 0 : old[0].length;
+        int rowCount = Math.max(old.length, height - CACHE_MIN + 1);
+        int columnCount = Math.max(oldColumns, width - CACHE_MIN + 1);
+        if (rowCount == old.length && columnCount == oldColumns) {
+            return;
+        }
+
+        Vector2D[][] rows = new Vector2D[rowCount][columnCount];
+        for (int row = 0; row < rowCount; row++) {
+            for (int column = 0; column < columnCount; column++) {
+                Vector2D point = null;
+                if (row < old.length && column < oldColumns) {
+                    point = old[row][column];
+                }
+                if (point == null) {
+                    point = new Vector2D(column + CACHE_MIN, row + CACHE_MIN);
+                    point.neighbors = new Vector2D[Direction.values().length];
+                }
+                rows[row][column] = point;
+            }
+        }
+
+        for (Vector2D[] points : rows) {
+            for (Vector2D point : points) {
+                for (Direction direction : Direction.values()) {
+                    Vector2D unit = getDirectionVector(direction);
+                    point.neighbors[direction.ordinal()] =
+                            cached(rows, point.x + unit.x, point.y + unit.y);
+                }
+            }
+        }
+        cache = rows;
+    }
+
+    /**
+     * Replaces deserialized vectors with the shared instance for the same point, if there is one.
+     *
+     * @return  Returns the instance to use in place of the deserialized one.
+     */
+    private Object readResolve() {
+        return of(x, y);
+    }
+
     /**
      * @return  Returns the x-coordinate
      */
@@ -58,7 +177,7 @@ public class Vector2D implements Serializable{
      * @return  Returns the zero vector, i.e. (0, 0).
      */
     public static Vector2D zero() {
-        return new Vector2D(0, 0);
+        return ZERO;
     }
 
     /**
@@ -107,19 +226,19 @@ public class Vector2D implements Serializable{
      */
     public Vector2D getPointInDirection(Direction direction, int shiftDistance) {
         if (direction == Direction.LEFT) {
-            return new Vector2D(this.getX() - shiftDistance, this.getY());
+            return Vector2D.of(this.getX() - shiftDistance, this.getY());
         }
 
         if (direction == Direction.UP) {
-            return new Vector2D(this.getX(), this.getY() - shiftDistance);
+            return Vector2D.of(this.getX(), this.getY() - shiftDistance);
         }
 
         if (direction == Direction.RIGHT) {
-            return new Vector2D(this.getX() + shiftDistance, this.getY());
+            return Vector2D.of(this.getX() + shiftDistance, this.getY());
         }
 
         if (direction == Direction.DOWN) {
-            return new Vector2D(this.getX(), this.getY() + shiftDistance);
+            return Vector2D.of(this.getX(), this.getY() + shiftDistance);
         }
 
         return null;
@@ -127,11 +246,17 @@ public class Vector2D implements Serializable{
 
     /**
      * Overload of the {@link #getPointInDirection(Direction direction, int shiftDistance)} method,
-     * with a default shiftDistance value of 1.
+     * with a default shiftDistance value of 1.  Shared instances return their cached neighbor.
      * @param direction     The direction in which to move to get the returned point.
      * @return              Returns the point direction in the specified direction.
      */
     public Vector2D getPointInDirection(Direction direction) {
+        if (neighbors != null) {
+            Vector2D neighbor = neighbors[direction.ordinal()];
+            if (neighbor != null) {
+                return neighbor;
+            }
+        }
         return getPointInDirection(direction, 1);
     }
 
@@ -145,7 +270,7 @@ public class Vector2D implements Serializable{
     public static Vector2D add(Vector2D first, Vector2D second) {
         int resultX = first.getX() + second.getX();
         int resultY = first.getY() + second.getY();
-        return new Vector2D(resultX, resultY);
+        return Vector2D.of(resultX, resultY);
     }
 
     /**
@@ -158,7 +283,7 @@ public class Vector2D implements Serializable{
     public static Vector2D subtract(Vector2D first, Vector2D second) {
         int resultX = first.getX() - second.getX();
         int resultY = first.getY() - second.getY();
-        return new Vector2D(resultX, resultY);
+        return Vector2D.of(resultX, resultY);
     }
 
     /**
@@ -170,7 +295,7 @@ public class Vector2D implements Serializable{
     public Vector2D scale(int scalar) {
         int x = this.getX() * scalar;
         int y = this.getY() * scalar;
-        return new Vector2D(x, y);
+        return Vector2D.of(x, y);
     }
 
     /**
@@ -213,10 +338,10 @@ public class Vector2D implements Serializable{
      */
     public Collection<Vector2D> getAdjacentPoints() {
         Collection<Vector2D> points = new LinkedHashSet<>();
-        points.add(new Vector2D(this.x + 1, this.y));
-        points.add(new Vector2D(this.x - 1, this.y));
-        points.add(new Vector2D(this.x, this.y + 1));
-        points.add(new Vector2D(this.x, this.y - 1));
+        points.add(Vector2D.of(this.x + 1, this.y));
+        points.add(Vector2D.of(this.x - 1, this.y));
+        points.add(Vector2D.of(this.x, this.y + 1));
+        points.add(Vector2D.of(this.x, this.y - 1));
 
         return points;
     }
@@ -226,10 +351,10 @@ public class Vector2D implements Serializable{
      */
     public Collection<Vector2D> getDiagonalPoints() {
         Collection<Vector2D> points = new LinkedHashSet<>();
-        points.add(new Vector2D(this.x - 1, this.y - 1));
-        points.add(new Vector2D(this.x + 1, this.y - 1));
-        points.add(new Vector2D(this.x + 1, this.y + 1));
-        points.add(new Vector2D(this.x - 1, this.y - 1));
+        points.add(Vector2D.of(this.x - 1, this.y - 1));
+        points.add(Vector2D.of(this.x + 1, this.y - 1));
+        points.add(Vector2D.of(this.x + 1, this.y + 1));
+        points.add(Vector2D.of(this.x - 1, this.y - 1));
         return points;
     }
 
@@ -323,13 +448,13 @@ public class Vector2D implements Serializable{
     public static Vector2D getDirectionVector(Direction direction) {
         switch (direction) {
             case UP:
-                return new Vector2D(0, -1);
+                return Vector2D.of(0, -1);
             case LEFT:
-                return new Vector2D(-1, 0);
+                return Vector2D.of(-1, 0);
             case DOWN:
-                return new Vector2D(0, 1);
+                return Vector2D.of(0, 1);
             case RIGHT:
-                return new Vector2D(1, 0);
+                return Vector2D.of(1, 0);
             default:
                 return Vector2D.zero();
         }
@@ -364,7 +489,7 @@ public class Vector2D implements Serializable{
         int x = topLeft.getX() + rng.nextInt(bottomRight.getX() - topLeft.getX());
         int y = topLeft.getY() + rng.nextInt(bottomRight.getY() - topLeft.getY());
 
-        return new Vector2D(x, y);
+        return Vector2D.of(x, y);
     }
 
     /**
@@ -377,8 +502,8 @@ public class Vector2D implements Serializable{
      * @return                  A random Vector2D within the given rectangle.
      */
     public static Vector2D getRandomPoint(Vector2D point, int distanceToEdge, Random rng) {
-        Vector2D topLeft = new Vector2D(point.getX() - distanceToEdge, point.getY() - distanceToEdge);
-        Vector2D bottomRight = new Vector2D(point.getX() + distanceToEdge, point.getY() + distanceToEdge);
+        Vector2D topLeft = Vector2D.of(point.getX() - distanceToEdge, point.getY() - distanceToEdge);
+        Vector2D bottomRight = Vector2D.of(point.getX() + distanceToEdge, point.getY() + distanceToEdge);
 
         return getRandomPoint(topLeft, bottomRight, rng);
     }
@@ -452,7 +577,7 @@ public class Vector2D implements Serializable{
             }
         }
 
-        return Arrays.asList(new Vector2D(minX, minY), new Vector2D(maxX, maxY));
+        return Arrays.asList(Vector2D.of(minX, minY), Vector2D.of(maxX, maxY));
     }
 
 }
@@ -0,0 +1,85 @@
+package com.jhsullivan.pushpull.game_logic;
+
+
+import com.jhsullivan.pushpull.game_objects.Block;
+import com.jhsullivan.pushpull.game_objects.BlockCluster;
+import com.jhsullivan.pushpull.game_objects.GameObject;
+import com.jhsullivan.pushpull.game_objects.Player;
+
+
+/**
+ * Keys for Zobrist hashing of level states.
+ * <p>
+ * The hash of a state is the XOR of one 64-bit key for every occupied cell, chosen by the cell
+ * and the kind of game object on it: a block, a player of a given type, or a block of a given
+ * cluster.  Walls never move, so they are left out.  Moving a game object, or changing a
+ * player's type, only needs the keys for the old and new contents of the cells involved to be
+ * XORed into the hash, so the hash can be kept up to date as the state changes.
+ * <p>
+ * Rather than being drawn at random and stored in a table, the keys are worked out by mixing the
+ * cell and kind together, so they take no memory and are the same for every level.  Two states
+ * of the same layout with the same hash are almost certainly the same state.
+ */
+public final class Zobrist {
+
+    //The kinds of game objects that are hashed.  Cluster kinds follow the player kinds, offset by
+    //the character code of the cluster ID.
+    public static final int NONE = -1;
+    public static final int BLOCK = 0;
+    public static final int PLAYER = 1;
+    public static final int CLUSTER = PLAYER + Player.Type.values().length;
+
+
+    private Zobrist() {
+        //not meant to be instantiated
+    }
+
+    /**
+     * @param cell  The index of a cell.
+     * @param kind  The kind of game object on the cell.
+     * @return      Returns the key for the specified kind of game object being on the cell.
+     */
+    public static long key(int cell, int kind) {
+        return mix64(((long) kind << 32) | cell);
+    }
+
+    /**
+     * @param gameObject    A game object.
+     * @return              Returns the kind of the game object for hashing, or NONE if it is
+     *                      not hashed (i.e. it is a wall).
+     */
+    public static int kindOf(GameObject gameObject) {
+        if (gameObject instanceof Block) {
+            return BLOCK;
+        }
+        if (gameObject instanceof Player) {
+            return kindOf(((Player) gameObject).getType());
+        }
+        if (gameObject instanceof BlockCluster) {
+            return CLUSTER + ((BlockCluster) gameObject).getClusterID();
+        }
+        return NONE;
+    }
+
+    /**
+     * @param type  A player type.
+     * @return      Returns the kind of a player of the specified type.
+     */
+    public static int kindOf(Player.Type type) {
+        return PLAYER + type.ordinal();
+    }
+
+    /**
+     * Scrambles a 64-bit value so that every bit of the result depends on every bit of the input
+     * (the finalizer of the SplitMix64 generator).
+     *
+     * @param value     The value to scramble.
+     * @return          Returns the scrambled value.
+     */
+    public static long mix64(long value) {
+        long z = value + 0x9e3779b97f4a7c15L;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -15,8 +15,7 @@ public class Block implements GameObject {
 
     private int color = ColorHelper.getBlockColor();
     private Vector2D location;
-    private boolean move = true;
-    private Vector2D undoLocation;
+    private int id = -1;
 
 
     /**
@@ -51,42 +50,22 @@ public class Block implements GameObject {
 
     /**
      *
-     * @param move  Sets whether the block can move or not.
+     * @param id    Sets the id given to the block by the Level.
      */
     @Override
-    public void setMove(boolean move) {
-        this.move = move;
+    public void setId(int id) {
+        this.id = id;
     }
 
     /**
      *
-     * @return  Returns whether the block can move or not.
+     * @return  Returns the id given to the block by the Level.
      */
     @Override
-    public boolean canMove() {
-        return move;
+    public int getId() {
+        return id;
     }
 
-    /**
-     *
-     * @return  Returns the previous location of this game object, where it will go if the undo
-     * action is performed.
-     */
-    @Override
-    public Vector2D getUndoLocation() {
-        return this.undoLocation;
-    }
-
-
-    /**
-     * Sets the value of the undoLocation field.
-     *
-     * @param undoLocation The location to which to set the undo location.
-     */
-    @Override
-    public void setUndoLocation(Vector2D undoLocation) {
-        this.undoLocation = undoLocation;
-    }
 
     /**
      *
@@ -20,9 +20,12 @@ public class BlockCluster implements GameObject{
     private int color = ColorHelper.getClusterColor();
     private Vector2D location;
     private List<BlockCluster> clusters = new ArrayList<>();
-    private boolean move = true;
+    private List<BlockCluster> clusterView = Collections.unmodifiableList(clusters);
+    private int id = -1;
+    private ClusterBody body;
+    private int offsetX;
+    private int offsetY;
     protected Character clusterID;
-    private Vector2D undoLocation;
     private List<Vector2D> path;
     private boolean isMajor = false;
 
@@ -48,6 +51,29 @@ public class BlockCluster implements GameObject{
      */
     public void makeCluster(List<BlockCluster> template) {
         clusters = template;
+        clusterView = Collections.unmodifiableList(template);
+    }
+
+    /**
+     * Attaches this block to the rigid body of its cluster, at a fixed offset from the body's
+     * origin given by the block's current location.  From then on, the location of this block is
+     * worked out from the body.
+     *
+     * @param body      The body of this block's cluster.
+     */
+    public void setBody(ClusterBody body) {
+        Vector2D location = getLocation();
+        this.offsetX = location.getX() - body.getOriginX();
+        this.offsetY = location.getY() - body.getOriginY();
+        this.body = body;
+    }
+
+    /**
+     * @return  Returns the rigid body of this block's cluster, or null if the cluster has not
+     *          been built yet.
+     */
+    public ClusterBody getBody() {
+        return body;
     }
 
     /**
@@ -56,7 +82,10 @@ public class BlockCluster implements GameObject{
      */
     @Override
     public Vector2D getLocation() {
-        return this.location;
+        if (body == null) {
+            return this.location;
+        }
+        return Vector2D.of(body.getOriginX() + offsetX, body.getOriginY() + offsetY);
     }
 
     /**
@@ -75,28 +104,33 @@ public class BlockCluster implements GameObject{
     }
 
     /**
-     * Sets the location of this game object.  If this is the major BlockCluster, moves the path
-     * the same amount.
+     * Sets the location of this game object.  Once the block is part of a rigid body, this moves
+     * the whole body (and so every block in the cluster) by the same amount, along with the
+     * drawing path.
      *
      * @param location  The value for which to set the GameObject's location attribute.
      */
     @Override
     public void setLocation(Vector2D location) {
-        if (isMajor) {
-            Vector2D previous = this.location;
-            this.location = location;
-            Vector2D difference = Vector2D.subtract(location, previous);
-
-            for (int i = 0; i < path.size(); i++) {
-                Vector2D replacement = Vector2D.add(path.get(i), difference);
-                path.set(i, replacement);
-            }
-
-        }
-        else {
+        if (body == null) {
             this.location = location;
+            return;
         }
+        body.setOrigin(location.getX() - offsetX, location.getY() - offsetY);
+    }
 
+    /**
+     * Moves the drawing path of this cluster by the specified amount.
+     *
+     * @param x     The distance to move along the x-axis.
+     * @param y     The distance to move along the y-axis.
+     */
+    void shiftPath(int x, int y) {
+        Vector2D difference = Vector2D.of(x, y);
+        for (int i = 0; i < path.size(); i++) {
+            Vector2D replacement = Vector2D.add(path.get(i), difference);
+            path.set(i, replacement);
+        }
     }
 
 
@@ -104,25 +138,26 @@ public class BlockCluster implements GameObject{
      * @return  Returns an unmodifiable version of this block cluster's cluster group.
      */
     public List<BlockCluster> getCluster() {
-        return Collections.unmodifiableList(clusters);
+        return clusterView;
     }
 
     /**
-     * Sets whether this game object can move.
+     * Sets the id of this block.  The Level treats the id of the first block in a body as the id
+     * of the whole body.
      *
-     * @param move  The value for which to set the GameObject's move attribute.
+     * @param id    The id given to this block by the Level.
      */
     @Override
-    public void setMove(boolean move) {
-        this.move = move;
+    public void setId(int id) {
+        this.id = id;
     }
 
     /**
-     * @return  Returns whether this game object can move.
+     * @return  Returns the id given to this block by the Level.
      */
     @Override
-    public boolean canMove() {
-        return move;
+    public int getId() {
+        return id;
     }
 
     /**
@@ -143,33 +178,10 @@ public class BlockCluster implements GameObject{
      */
     private boolean hasAdjacentCluster(Vector2D.Direction direction) {
         Vector2D pointInDirection = getLocation().getPointInDirection(direction);
-        for (BlockCluster cluster : clusters) {
-            if (cluster.getLocation().equals(pointInDirection)) {
-                return true;
-            }
+        if (body == null) {
+            return false;
         }
-
-        return false;
-    }
-
-    /**
-     *
-     * @return  Returns the previous location of this game object, where it will go if the undo
-     * action is performed.
-     */
-    @Override
-    public Vector2D getUndoLocation() {
-        return this.undoLocation;
-    }
-
-    /**
-     * Sets the value of the undoLocation field.
-     *
-     * @param undoLocation The location to which to set the undo location.
-     */
-    @Override
-    public void setUndoLocation(Vector2D undoLocation) {
-        this.undoLocation = undoLocation;
+        return body.memberAt(pointInDirection.getX(), pointInDirection.getY()) != null;
     }
 
     /**
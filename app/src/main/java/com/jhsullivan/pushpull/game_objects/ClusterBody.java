@@ -0,0 +1,236 @@
+package com.jhsullivan.pushpull.game_objects;
+
+
+import com.jhsullivan.pushpull.game_logic.Vector2D;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * The rigid body shared by all of the BlockClusters with the same cluster ID.
+ * <p>
+ * The body has a single origin, and each BlockCluster sits at a fixed offset from it, so moving
+ * the whole cluster only changes the origin.  The shape of the cluster is stored as a lookup
+ * table over its bounding box, which gives the BlockCluster at any position in constant time,
+ * and for each direction the body keeps the offsets of its leading edge (the cells with no
+ * member in front of them) and trailing edge (the cells with no member behind them).  Moving
+ * the body one step only needs to check the cells in front of the leading edge, and only the
+ * leading and trailing cells change occupancy.
+ */
+public class ClusterBody implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Vector2D.Direction[] DIRECTIONS = Vector2D.Direction.values();
+
+    private final List<BlockCluster> members;
+    private final BlockCluster[] shape;
+    private final int minX;
+    private final int minY;
+    private final int shapeWidth;
+    private final int[][] leadingX;
+    private final int[][] leadingY;
+    private final int[][] trailingX;
+    private final int[][] trailingY;
+    private int originX;
+    private int originY;
+
+
+    /**
+     * Constructor which builds a body from BlockClusters at their current locations, with the
+     * origin at the first of them.  The BlockClusters still need to be attached to the body with
+     * {@link BlockCluster#setBody(ClusterBody)}.
+     *
+     * @param clusters  The BlockClusters that make up the body, which must not be empty.
+     */
+    public ClusterBody(List<BlockCluster> clusters) {
+        this.members = Collections.unmodifiableList(new ArrayList<>(clusters));
+        Vector2D origin = clusters.get(0).getLocation();
+        originX = origin.getX();
+        originY = origin.getY();
+
+        int lowX = 0;
+        int lowY = 0;
+        int highX = 0;
+        int highY = 0;
+        for (BlockCluster cluster : clusters) {
+            int x = cluster.getLocation().getX() - originX;
+            int y = cluster.getLocation().getY() - originY;
+            lowX = Math.min(lowX, x);
+            lowY = Math.min(lowY, y);
+            highX = Math.max(highX, x);
+            highY = Math.max(highY, y);
+        }
+        minX = lowX;
+        minY = lowY;
+        shapeWidth = highX - lowX + 1;
+        shape = new BlockCluster[shapeWidth * (highY - lowY + 1)];
+        for (BlockCluster cluster : clusters) {
+            int x = cluster.getLocation().getX() - originX;
+            int y = cluster.getLocation().getY() - originY;
+            shape[(y - minY) * shapeWidth + (x - minX)] = cluster;
+        }
+
+        leadingX = new int[DIRECTIONS.length][];
+        leadingY = new int[DIRECTIONS.length][];
+        trailingX = new int[DIRECTIONS.length][];
+        trailingY = new int[DIRECTIONS.length][];
+        for (Vector2D.Direction direction : DIRECTIONS) {
+            Vector2D unit = Vector2D.getDirectionVector(direction);
+            int index = direction.ordinal();
+            leadingX[index] = edge(unit.getX(), unit.getY(), true);
+            leadingY[index] = edge(unit.getX(), unit.getY(), false);
+            trailingX[index] = edge(-unit.getX(), -unit.getY(), true);
+            trailingY[index] = edge(-unit.getX(), -unit.getY(), false);
+        }
+    }
+
+    /**
+     * Returns one coordinate of the offsets of every member that has no other member next to it
+     * in the specified direction.
+     *
+     * @param stepX     The x-component of the direction.
+     * @param stepY     The y-component of the direction.
+     * @param xs        Whether to return the x-coordinates of the offsets, rather than the y.
+     * @return          Returns the requested coordinate of each edge offset.
+     */
+    private int[] edge(int stepX, int stepY, boolean xs) {
+        List<Integer> coordinates = new ArrayList<>();
+        for (BlockCluster cluster : members) {
+            int x = cluster.getLocation().getX() - originX;
+            int y = cluster.getLocation().getY() - originY;
+            if (memberAtOffset(x + stepX, y + stepY) == null) {
+                coordinates.add(xs ? x : y);
+            }
+        }
+        int[] result = new int[coordinates.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = coordinates.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * @param x     The x-coordinate of an offset from the origin.
+     * @param y     The y-coordinate of an offset from the origin.
+     * @return      Returns the member at the specified offset, or null if there is none.
+     */
+    private BlockCluster memberAtOffset(int x, int y) {
+        int column = x - minX;
+        int row = y - minY;
+        if (column < 0 || column >= shapeWidth || row < 0 || row * shapeWidth >= shape.length) {
+            return null;
+        }
+        return shape[row * shapeWidth + column];
+    }
+
+    /**
+     * @param x     The x-coordinate of a position on the grid.
+     * @param y     The y-coordinate of a position on the grid.
+     * @return      Returns the member of this body at the specified position, or null if there
+     *              is none.
+     */
+    public BlockCluster memberAt(int x, int y) {
+        return memberAtOffset(x - originX, y - originY);
+    }
+
+    /**
+     * @return  Returns an unmodifiable list of the BlockClusters that make up this body.
+     */
+    public List<BlockCluster> getMembers() {
+        return members;
+    }
+
+    /**
+     * @return  Returns the x-coordinate of the origin.
+     */
+    public int getOriginX() {
+        return originX;
+    }
+
+    /**
+     * @return  Returns the y-coordinate of the origin.
+     */
+    public int getOriginY() {
+        return originY;
+    }
+
+    /**
+     * Moves the origin of the body, and with it every member, to the specified position.  Moves
+     * the drawing path of the major member by the same amount.
+     *
+     * @param x     The x-coordinate of the new origin.
+     * @param y     The y-coordinate of the new origin.
+     */
+    public void setOrigin(int x, int y) {
+        if (x == originX && y == originY) {
+            return;
+        }
+        int differenceX = x - originX;
+        int differenceY = y - originY;
+        originX = x;
+        originY = y;
+        for (int i = 0; i < members.size(); i++) {
+            if (members.get(i).getMajor()) {
+                members.get(i).shiftPath(differenceX, differenceY);
+            }
+        }
+    }
+
+    /**
+     * @param direction     The direction of movement.
+     * @return              Returns the number of members on the leading edge for the direction.
+     */
+    public int getLeadingCount(Vector2D.Direction direction) {
+        return leadingX[direction.ordinal()].length;
+    }
+
+    /**
+     * @param direction     The direction of movement.
+     * @param index         The index of the leading member.
+     * @return              Returns the x-coordinate of the cell in front of the leading member.
+     */
+    public int getLeadingTargetX(Vector2D.Direction direction, int index) {
+        return originX + leadingX[direction.ordinal()][index]
+                + Vector2D.getDirectionVector(direction).getX();
+    }
+
+    /**
+     * @param direction     The direction of movement.
+     * @param index         The index of the leading member.
+     * @return              Returns the y-coordinate of the cell in front of the leading member.
+     */
+    public int getLeadingTargetY(Vector2D.Direction direction, int index) {
+        return originY + leadingY[direction.ordinal()][index]
+                + Vector2D.getDirectionVector(direction).getY();
+    }
+
+    /**
+     * @param direction     The direction of movement.
+     * @return              Returns the number of members on the trailing edge for the direction.
+     */
+    public int getTrailingCount(Vector2D.Direction direction) {
+        return trailingX[direction.ordinal()].length;
+    }
+
+    /**
+     * @param direction     The direction of movement.
+     * @param index         The index of the trailing member.
+     * @return              Returns the x-coordinate of the trailing member.
+     */
+    public int getTrailingX(Vector2D.Direction direction, int index) {
+        return originX + trailingX[direction.ordinal()][index];
+    }
+
+    /**
+     * @param direction     The direction of movement.
+     * @param index         The index of the trailing member.
+     * @return              Returns the y-coordinate of the trailing member.
+     */
+    public int getTrailingY(Vector2D.Direction direction, int index) {
+        return originY + trailingY[direction.ordinal()][index];
+    }
+}
@@ -20,32 +20,18 @@ public interface GameObject extends Actor {
 
 
     /**
-     * Sets the "move" boolean, which defines whether the GameObject can move.
+     * Sets the id of the GameObject, i.e. the dense number given to it by the Level when it was
+     * spawned.  The Level keeps its per-object state in arrays indexed by this id.
      *
-     * @param move  The value for which to set the GameObject's move attribute.
+     * @param id    The value for which to set the GameObject's id.
      */
-    public void setMove(boolean move);
+    public void setId(int id);
 
 
     /**
-     * @return Returns whether the GameObject can move or not.
+     * @return Returns the id given to the GameObject by the Level when it was spawned.
      */
-    public boolean canMove();
-
-
-    /**
-     * @return  Returns the undo location of the game object, i.e. its position before the most
-     * recent move was performed.
-     */
-    public Vector2D getUndoLocation();
-
-    /**
-     * Sets the value of the game object's undo location, i.e. its position before the most recent
-     * move was performed.
-     *
-     * @param undoLocation The location to which to set the undo location.
-     */
-    public void setUndoLocation(Vector2D undoLocation);
+    public int getId();
 
 
 }
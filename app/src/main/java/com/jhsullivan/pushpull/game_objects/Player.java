@@ -6,9 +6,9 @@ import com.jhsullivan.pushpull.game_logic.Level;
 import com.jhsullivan.pushpull.game_logic.Vector2D;
 import com.jhsullivan.pushpull.user_interface.ColorHelper;
 import com.jhsullivan.pushpull.user_interface.DrawingHelper;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.List;
 
 /**
  * A game object that can be moved directly.  Depending on its current state, can also move
@@ -25,10 +25,7 @@ public class Player implements GameObject{
     private Type type;
     private int color = ColorHelper.getPushColor();
     private Vector2D location;
-    private boolean move = true;
-
-    private Player.Type previousType;
-    private Vector2D undoLocation;
+    private int id = -1;
 
     /**
      * Constructor for the Player object.
@@ -76,20 +73,21 @@ public class Player implements GameObject{
      */
     public boolean move(Vector2D.Direction direction, Level level) {
 
-        if (!move) {
+        if (!level.canMove(this)) {
             return true;
         }
         Vector2D movePoint = location.getPointInDirection(direction);
         GameObject other;
-        Set<GameObject> movers = new HashSet<>();
-        movers.add(this);
+        List<GameObject> movers = level.startGroup();
 
         switch (type) {
             case PUSH:
+                movers.add(this);
                 other = level.getObjectAt(movePoint);
                 addIfValid(other, movers);
                 return level.moveGroup(movers, direction);
             case PULL:
+                movers.add(this);
                 Vector2D.Direction opposite = Vector2D.getOppositeDirection(direction);
                 Vector2D pullPoint = location.getPointInDirection(opposite);
                 other = level.getObjectAt(pullPoint);
@@ -97,7 +95,7 @@ public class Player implements GameObject{
                 return level.moveGroup(movers, direction);
 
             case GRABALL:
-                movers.addAll(getContiguousObjects(this, level));
+                level.addContiguousObjects(this, movers);
                 return level.moveGroup(movers, direction);
         }
 
@@ -114,24 +112,8 @@ public class Player implements GameObject{
      */
     public Collection<GameObject> getContiguousObjects(GameObject target, Level level) {
 
-        Set<GameObject> attached = new HashSet<>();
-        Set<GameObject> next = new HashSet<>();
-        Set<GameObject> frontier = new HashSet<>();
-        next.add(target);
-
-        do {
-            for (GameObject obj : next) {
-                attached.add(obj);
-                for (GameObject adj : level.getAdjacentObjects(obj)) {
-                    if (!attached.contains(adj) && !(adj instanceof Wall) && adj.canMove()) {
-                        frontier.add(adj);
-                    }
-                }
-            }
-            next = frontier;
-            frontier = new HashSet<>();
-        } while (next.size() > 0);
-
+        List<GameObject> attached = new ArrayList<>();
+        level.addContiguousObjects(target, attached);
         return attached;
     }
 
@@ -155,8 +137,8 @@ public class Player implements GameObject{
 
 
     /**
-     * Adds a GameObject (and all objects in its cluster, if it is a BlockCluster) to the
-     * specified list if it is not null, a wall, or a player.
+     * Adds a GameObject to the specified list if it is not null, a wall, or a player.  A
+     * BlockCluster stands for its whole cluster, which the Level moves as a single body.
      *
      * @param obj       The GameObject to add, if it is neither null, Wall, or Player.
      * @param list      The List to which the GameObject should be added, if applicable.
@@ -174,23 +156,9 @@ public class Player implements GameObject{
             return;
         }
 
-        if (obj instanceof BlockCluster) {
-            BlockCluster bc = (BlockCluster) obj;
-            list.addAll(bc.getCluster());
-            return;
-        }
-
         list.add(obj);
     }
 
-    public Player.Type getPreviousType() {
-        return this.previousType;
-    }
-
-    public void setPreviousType(Player.Type previousType) {
-        this.previousType = previousType;
-    }
-
     /**
      * Draws the game object onto the specified Canvas using the specified DrawingHelper.
      *
@@ -223,43 +191,21 @@ public class Player implements GameObject{
     }
 
     /**
-     * Sets whether the player can move.
+     * Sets the id of the player.
      *
-     * @param move  The value for which to set the GameObject's move attribute.
+     * @param id    The id given to the player by the Level.
      */
     @Override
-    public void setMove(boolean move) {
-        this.move = move;
+    public void setId(int id) {
+        this.id = id;
     }
 
     /**
-     * Returns whether the player can move or not.  Movement is turned off upon a successful move.
-     * @return Returns the value of the move attribute.
-     *
-     */
-    @Override
-    public boolean canMove() {
-        return move;
-    }
-
-    /**
-     *
-     * @return  Returns the previous location of this game object, where it will go if the undo
-     * action is performed.
-     */
-    @Override
-    public Vector2D getUndoLocation() {
-        return this.undoLocation;
-    }
-
-    /**
-     * Sets the value of the undoLocation field.
-     *
-     * @param undoLocation The location to which to set the undo location.
+     * @return Returns the id given to the player by the Level.
      */
     @Override
-    public void setUndoLocation(Vector2D undoLocation) {
-        this.undoLocation = undoLocation;
+    public int getId() {
+        return id;
     }
 
     /**
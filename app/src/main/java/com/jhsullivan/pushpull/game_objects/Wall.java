@@ -21,6 +21,7 @@ public class Wall implements GameObject{
     private int color = ColorHelper.getWallColor();
     private Vector2D location;
     private List<Wall> walls = new ArrayList<>();
+    private int id = -1;
 
 
 
@@ -112,41 +113,23 @@ public class Wall implements GameObject{
     }
 
     /**
-     * Unused function from interface, since the wall can never move.
+     * Sets the id of this wall.  The wall never moves, but still gets an id like every other
+     * game object.
      *
-     * @param move  N/A
+     * @param id    The id given to the wall by the Level.
      */
     @Override
-    public void setMove(boolean move) {
-        //pass
+    public void setId(int id) {
+        this.id = id;
     }
 
     /**
      *
-     * @return  Returns false, since this game object can never move.
+     * @return  Returns the id given to the wall by the Level.
      */
     @Override
-    public boolean canMove() {
-        return false;
-    }
-
-    /**
-     *
-     * @return  Returns the Wall's location, since it never moves.
-     */
-    @Override
-    public Vector2D getUndoLocation() {
-        return this.location;
-    }
-
-    /**
-     * Does nothing, since the wall never moves and doesn't have an undo location.
-     *
-     * @param undoLocation N/A
-     */
-    @Override
-    public void setUndoLocation(Vector2D undoLocation) {
-
+    public int getId() {
+        return id;
     }
 
     /**
@@ -0,0 +1,348 @@
+package com.jhsullivan.pushpull.solver;
+
+
+import com.jhsullivan.pushpull.game_logic.DeadCells;
+import com.jhsullivan.pushpull.game_logic.Level;
+import com.jhsullivan.pushpull.game_logic.Vector2D;
+import com.jhsullivan.pushpull.game_objects.BlockCluster;
+import com.jhsullivan.pushpull.game_objects.GameObject;
+import com.jhsullivan.pushpull.game_objects.Wall;
+import com.jhsullivan.pushpull.triggers.Target;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A lower bound on the number of inputs needed to solve a level from a given state, for the
+ * informed searches of the {@link Solver}.
+ * <p>
+ * Targets are filled by blocks and by the blocks of clusters.  Since every input moves each game
+ * object by at most one cell, and walls never move, a block cannot reach a target in fewer
+ * inputs than the length of the shortest path between them around the walls, and likewise a
+ * cluster cannot bring any of its blocks onto a target in fewer inputs than the shortest path of
+ * its whole shape around the walls.  These distances only depend on the layout, so they are
+ * worked out once, as a map for each target.
+ * <p>
+ * The estimate is the smallest number k for which every target can be given its own block (a
+ * cluster can fill as many targets as it has blocks) within k inputs, i.e. a bottleneck matching
+ * of targets to blocks.  Unlike in games where a single block moves at a time, the distances
+ * cannot be added up, since a single input may move every block at once, so the estimate is the
+ * largest distance that any matching has to cover rather than the total.  It changes by at most
+ * one with each input, so it is consistent.  If some target cannot be reached by enough blocks
+ * at all, the state cannot be solved, which is reported as {@link #UNSOLVABLE}.  Blocks and
+ * clusters on the level's {@link DeadCells} cannot reach any target, so they are left out of the
+ * matching altogether, which lets the estimate give up on hopeless states without any extra work.
+ * <p>
+ * For searches which need not find a shortest solution, {@link #estimateTotal(int[])} adds up the
+ * distances of the matching instead.  That is not a lower bound, but it changes whenever any
+ * block gets closer to its target, rather than only the farthest one, so it leads a search
+ * toward a solution far more directly.
+ * <p>
+ * A Heuristic is not thread-safe, since it keeps scratch space for the matching.
+ */
+class Heuristic {
+
+
+    static final int UNSOLVABLE = Integer.MAX_VALUE;
+
+    private final int[] blockIndexes;
+    private final int[] bodyIndexes;
+    private final int targetCount;
+
+    //The distances to each target, indexed by target and then by cell:  of a block on the cell,
+    //and of each cluster whose first block is on the cell.
+    private final int[][] blockDistances;
+    private final int[][][] bodyDistances;
+
+    //The matching is between targets and slots, where each block is a slot and each cluster is
+    //one slot for each of its blocks.  slotOwners holds the block or cluster of each slot, with
+    //the clusters numbered after the blocks.
+    private final int[] slotOwners;
+    private final int[][] distances;
+    private final int[] values;
+    private final int[] slotTargets;
+    private final boolean[] matched;
+    private final int[] visitStamps;
+    private int visitStamp = 0;
+
+
+    /**
+     * Constructor for a Heuristic for the specified Level.
+     *
+     * @param level     The Level, which must be in the state the codec was made from.
+     * @param codec     The codec used to pack the states of the Level.
+     */
+    Heuristic(Level level, StateCodec codec) {
+        int width = level.getWidth();
+        int height = level.getHeight();
+        this.blockIndexes = codec.getBlockIndexes();
+        this.bodyIndexes = codec.getBodyIndexes();
+
+        List<GameObject> gameObjects = level.getGameObjects();
+        boolean[] walls = new boolean[width * height];
+        for (GameObject gameObject : gameObjects) {
+            if (gameObject instanceof Wall) {
+                Vector2D location = gameObject.getLocation();
+                walls[location.getY() * width + location.getX()] = true;
+            }
+        }
+
+        //a target under a wall is always filled, so it can be left out
+        List<Target> targets = level.getTargets();
+        int[] targetCells = new int[targets.size()];
+        int count = 0;
+        for (Target target : targets) {
+            Vector2D location = target.getLocation();
+            int cell = location.getY() * width + location.getX();
+            if (!walls[cell]) {
+                targetCells[count] = cell;
+                count += 1;
+            }
+        }
+        this.targetCount = count;
+
+        DeadCells deadCells = level.getDeadCells();
+        int[][] single = {{0, 0}};
+        blockDistances = new int[targetCount][];
+        for (int t = 0; t < targetCount; t++) {
+            blockDistances[t] = measure(walls, width, height, single, targetCells[t]);
+            for (int cell = 0; cell < width * height; cell++) {
+                if (deadCells.isDeadForBlock(cell)) {
+                    blockDistances[t][cell] = UNSOLVABLE;
+                }
+            }
+        }
+
+        bodyDistances = new int[bodyIndexes.length][targetCount][];
+        int slotCount = blockIndexes.length;
+        int[] bodySizes = new int[bodyIndexes.length];
+        for (int b = 0; b < bodyIndexes.length; b++) {
+            BlockCluster first = (BlockCluster) gameObjects.get(bodyIndexes[b]);
+            List<BlockCluster> members = first.getBody().getMembers();
+            int[][] offsets = new int[members.size()][2];
+            for (int m = 0; m < members.size(); m++) {
+                Vector2D location = members.get(m).getLocation();
+                offsets[m][0] = location.getX() - first.getLocation().getX();
+                offsets[m][1] = location.getY() - first.getLocation().getY();
+            }
+            //the dead cells of a cluster are given by the origin of its body, which keeps the
+            //same offset from the first block
+            int originX = first.getBody().getOriginX() - first.getLocation().getX();
+            int originY = first.getBody().getOriginY() - first.getLocation().getY();
+            for (int t = 0; t < targetCount; t++) {
+                bodyDistances[b][t] = measure(walls, width, height, offsets, targetCells[t]);
+                for (int cell = 0; cell < width * height; cell++) {
+                    int x = cell % width + originX;
+                    int y = cell / width + originY;
+                    if (x >= 0 && y >= 0 && x < width && y < height
+                            && deadCells.isDeadForCluster(first.getClusterID(), y * width + x)) {
+                        bodyDistances[b][t][cell] = UNSOLVABLE;
+                    }
+                }
+            }
+            bodySizes[b] = members.size();
+            slotCount += members.size();
+        }
+
+        slotOwners = new int[slotCount];
+        int slot = 0;
+        for (int i = 0; i < blockIndexes.length; i++) {
+            slotOwners[slot] = i;
+            slot += 1;
+        }
+        for (int b = 0; b < bodyIndexes.length; b++) {
+            for (int m = 0; m < bodySizes[b]; m++) {
+                slotOwners[slot] = blockIndexes.length + b;
+                slot += 1;
+            }
+        }
+
+        int ownerCount = blockIndexes.length + bodyIndexes.length;
+        distances = new int[targetCount][ownerCount];
+        values = new int[targetCount * ownerCount];
+        slotTargets = new int[slotCount];
+        matched = new boolean[targetCount];
+        visitStamps = new int[slotCount];
+    }
+
+    /**
+     * Works out how far a shape has to travel around the walls to cover a target with any of
+     * its cells, for every position of the shape, by breadth-first search outward from the
+     * positions which cover the target.
+     *
+     * @param walls     Which cells hold walls.
+     * @param width     The number of columns.
+     * @param height    The number of rows.
+     * @param offsets   The offsets (x, y) of the cells of the shape from its first cell.
+     * @param target    The cell of the target.
+     * @return          Returns the distance for each cell of the first cell of the shape, or
+     *                  UNSOLVABLE where the shape does not fit or cannot reach the target.
+     */
+    private static int[] measure(boolean[] walls, int width, int height, int[][] offsets,
+                                 int target) {
+        int[] result = new int[width * height];
+        Arrays.fill(result, UNSOLVABLE);
+        int[] queue = new int[width * height];
+        int queueEnd = 0;
+
+        int targetX = target % width;
+        int targetY = target / width;
+        for (int[] offset : offsets) {
+            int x = targetX - offset[0];
+            int y = targetY - offset[1];
+            if (fits(walls, width, height, offsets, x, y) && result[y * width + x] != 0) {
+                result[y * width + x] = 0;
+                queue[queueEnd] = y * width + x;
+                queueEnd += 1;
+            }
+        }
+
+        for (int next = 0; next < queueEnd; next++) {
+            int cell = queue[next];
+            for (Vector2D.Direction direction : Vector2D.Direction.values()) {
+                Vector2D point = Vector2D.of(cell % width, cell / width)
+                        .getPointInDirection(direction);
+                int x = point.getX();
+                int y = point.getY();
+                if (fits(walls, width, height, offsets, x, y)
+                        && result[y * width + x] == UNSOLVABLE) {
+                    result[y * width + x] = result[cell] + 1;
+                    queue[queueEnd] = y * width + x;
+                    queueEnd += 1;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param walls     Which cells hold walls.
+     * @param width     The number of columns.
+     * @param height    The number of rows.
+     * @param offsets   The offsets (x, y) of the cells of the shape from its first cell.
+     * @param x         The x-coordinate of the first cell of the shape.
+     * @param y         The y-coordinate of the first cell of the shape.
+     * @return          Returns whether the whole shape is within the grid and off the walls.
+     */
+    private static boolean fits(boolean[] walls, int width, int height, int[][] offsets,
+                                int x, int y) {
+        for (int[] offset : offsets) {
+            int cellX = x + offset[0];
+            int cellY = y + offset[1];
+            if (cellX < 0 || cellY < 0 || cellX >= width || cellY >= height
+                    || walls[cellY * width + cellX]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param checkpoint    A checkpoint of the level, from {@link Level#saveCheckpoint()}.
+     * @return              Returns a lower bound on the number of inputs needed to solve the
+     *                      level from the state in the checkpoint, or UNSOLVABLE if it cannot
+     *                      be solved.
+     */
+    int estimate(int[] checkpoint) {
+        if (targetCount == 0) {
+            return 0;
+        }
+        if (targetCount > slotOwners.length) {
+            return UNSOLVABLE;
+        }
+
+        //no matching can do better than the nearest block to the farthest target
+        int lowest = 0;
+        int valueCount = 0;
+        for (int t = 0; t < targetCount; t++) {
+            int nearest = UNSOLVABLE;
+            int[] row = distances[t];
+            for (int i = 0; i < blockIndexes.length; i++) {
+                row[i] = blockDistances[t][checkpoint[blockIndexes[i]]];
+                nearest = Math.min(nearest, row[i]);
+            }
+            for (int b = 0; b < bodyIndexes.length; b++) {
+                int distance = bodyDistances[b][t][checkpoint[bodyIndexes[b]]];
+                row[blockIndexes.length + b] = distance;
+                nearest = Math.min(nearest, distance);
+            }
+            if (nearest == UNSOLVABLE) {
+                return UNSOLVABLE;
+            }
+            lowest = Math.max(lowest, nearest);
+            for (int distance : row) {
+                if (distance != UNSOLVABLE) {
+                    values[valueCount] = distance;
+                    valueCount += 1;
+                }
+            }
+        }
+        Arrays.sort(values, 0, valueCount);
+
+        //raise the bound through the distances until every target can be matched, keeping the
+        //matching found so far since raising the bound only adds choices
+        Arrays.fill(slotTargets, -1);
+        Arrays.fill(matched, false);
+        int matchedCount = 0;
+        for (int v = 0; v < valueCount; v++) {
+            int bound = values[v];
+            if (bound < lowest || (v > 0 && bound == values[v - 1])) {
+                continue;
+            }
+            for (int t = 0; t < targetCount; t++) {
+                if (!matched[t]) {
+                    visitStamp += 1;
+                    if (augment(t, bound)) {
+                        matched[t] = true;
+                        matchedCount += 1;
+                    }
+                }
+            }
+            if (matchedCount == targetCount) {
+                return bound;
+            }
+        }
+        return UNSOLVABLE;
+    }
+
+    /**
+     * @param checkpoint    A checkpoint of the level, from {@link Level#saveCheckpoint()}.
+     * @return              Returns the total distance of the blocks matched to the targets by
+     *                      {@link #estimate(int[])}, which is not a lower bound, or UNSOLVABLE
+     *                      if the level cannot be solved from the state in the checkpoint.
+     */
+    int estimateTotal(int[] checkpoint) {
+        int bound = estimate(checkpoint);
+        if (bound == UNSOLVABLE || targetCount == 0) {
+            return bound;
+        }
+        int total = 0;
+        for (int s = 0; s < slotOwners.length; s++) {
+            if (slotTargets[s] >= 0) {
+                total += distances[slotTargets[s]][slotOwners[s]];
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Tries to match a target to a slot within the bound, moving other targets to other slots
+     * if needed (i.e. finds an augmenting path).
+     *
+     * @param target    The target to match.
+     * @param bound     The largest distance allowed.
+     * @return          Returns whether the target was matched.
+     */
+    private boolean augment(int target, int bound) {
+        for (int s = 0; s < slotOwners.length; s++) {
+            if (visitStamps[s] == visitStamp || distances[target][slotOwners[s]] > bound) {
+                continue;
+            }
+            visitStamps[s] = visitStamp;
+            if (slotTargets[s] < 0 || augment(slotTargets[s], bound)) {
+                slotTargets[s] = target;
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,166 @@
+package com.jhsullivan.pushpull.solver;
+
+
+import com.jhsullivan.pushpull.game_logic.Level;
+import com.jhsullivan.pushpull.game_logic.LevelLoadException;
+import com.jhsullivan.pushpull.game_logic.Vector2D;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Gives the next move of a shortest solution from the current state of a level, as a hint, or
+ * failing that, of any solution that can be found.
+ * <p>
+ * Hints come from three places, cheapest first.  The level's {@link HintTable}, if it shipped
+ * with one, holds the states around the start of the level.  Then every state along a solution
+ * found by an earlier search is cached by its hash, along with its moves left, so asking again
+ * after following a hint is also a lookup.  Only states found in neither need a search, which is
+ * an A* search by the {@link Solver} with a time limit, so a hint on a phone is either found
+ * quickly or given up on.  If A* runs out of half of the time, the rest goes to weighted A*, which
+ * finds a solution to far larger levels, if not always a shortest one.
+ * <p>
+ * {@link #lookUp(Level)} only tries the lookups, so it is safe to call from the UI thread, while
+ * {@link #getHint(int[])} may search, and should be called from a background thread.  Both may be
+ * called at once from different threads.
+ */
+public class HintEngine {
+
+
+    //The longest a search for a hint may take, unless set otherwise.
+    public static final long DEFAULT_TIME_LIMIT_MILLIS = 1500;
+
+    //The weight of the search for any solution, once A* has run out of its time.
+    private static final int FALLBACK_WEIGHT = 10;
+
+    //The number of states whose hints are cached.
+    private static final int CACHE_SIZE = 4096;
+
+    private static final Vector2D.Direction[] DIRECTIONS = Vector2D.Direction.values();
+
+    private final HintTable table;
+    private final Level level;
+    private volatile long timeLimit = DEFAULT_TIME_LIMIT_MILLIS;
+    private int searchCount = 0;
+
+    //The moves left (above the ordinal of the best move) of the most recently used states, by
+    //hash.
+    private final Map<Long, Integer> cache = Collections.synchronizedMap(
+            new LinkedHashMap<Long, Integer>(CACHE_SIZE, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, Integer> eldest) {
+                    return size() > CACHE_SIZE;
+                }
+            });
+
+
+    /**
+     * Constructor for a HintEngine for the level with the specified layout.
+     *
+     * @param layout                The layout of the level.
+     * @param table                 The level's precomputed hint table, or null if it has none.
+     * @throws LevelLoadException   Throws this exception if the layout is not properly formatted.
+     */
+    public HintEngine(String layout, HintTable table) throws LevelLoadException {
+        this.level = new Level(layout);
+        this.table = table;
+    }
+
+    /**
+     * Sets the longest a search for a hint may take.
+     *
+     * @param millis    The time limit, in milliseconds.
+     */
+    public void setTimeLimit(long millis) {
+        this.timeLimit = Math.max(1, millis);
+    }
+
+    /**
+     * Looks up a hint in the hint table and the cache, without searching.
+     *
+     * @param current   The level, in its current state.
+     * @return          Returns the best move, or null if the state has not been looked at yet
+     *                  (or is solved).
+     */
+    public Vector2D.Direction lookUp(Level current) {
+        long hash = current.getStateHash();
+        if (table != null) {
+            Vector2D.Direction move = table.getMove(hash);
+            if (move != null) {
+                return move;
+            }
+        }
+        Integer entry = cache.get(hash);
+        return entry == null ? null : DIRECTIONS[entry & 3];
+    }
+
+    /**
+     * Looks up the moves left to solve the level along the hints, without searching.
+     *
+     * @param current   The level, in its current state.
+     * @return          Returns the moves left, or -1 if the state has not been looked at yet.
+     */
+    public int getMovesLeft(Level current) {
+        long hash = current.getStateHash();
+        if (table != null) {
+            int distance = table.getDistance(hash);
+            if (distance >= 0) {
+                return distance;
+            }
+        }
+        Integer entry = cache.get(hash);
+        return entry == null ? -1 : entry >>> 2;
+    }
+
+    /**
+     * Finds a hint, searching if it cannot be looked up.  Only one search runs at a time.
+     *
+     * @param checkpoint    A checkpoint of the current state of the level, from
+     *                      {@link Level#saveCheckpoint()}.
+     * @return              Returns the best move, or null if the level is solved, cannot be
+     *                      solved, or no solution was found within the time limit.
+     * @throws LevelLoadException   Throws this exception if the layout cannot be loaded again.
+     */
+    public synchronized Vector2D.Direction getHint(int[] checkpoint) throws LevelLoadException {
+        level.restoreCheckpoint(checkpoint);
+        if (level.areTargetsFilled()) {
+            return null;
+        }
+        Vector2D.Direction move = lookUp(level);
+        if (move != null) {
+            return move;
+        }
+
+        Solver solver = new Solver(level);
+        solver.setStrategy(Solver.Strategy.A_STAR);
+        solver.setTimeLimit(timeLimit / 2);
+        List<Vector2D.Direction> solution = solver.solve();
+        if (solution == null && solver.isCutOff()) {
+            solver.setWeight(FALLBACK_WEIGHT);
+            solver.setTimeLimit(timeLimit - timeLimit / 2);
+            solution = solver.solve();
+        }
+        searchCount += 1;
+        if (solution == null || solution.isEmpty()) {
+            return null;
+        }
+
+        //every state along a shortest solution is on a shortest solution of its own, and every
+        //state along any other solution is at most its moves left from the end
+        for (int i = 0; i < solution.size(); i++) {
+            int movesLeft = solution.size() - i;
+            cache.put(level.getStateHash(), (movesLeft << 2) | solution.get(i).ordinal());
+            level.processInput(solution.get(i));
+        }
+        return solution.get(0);
+    }
+
+    /**
+     * @return  Returns the number of searches run so far, i.e. the hints which could not be
+     *          looked up.
+     */
+    public synchronized int getSearchCount() {
+        return searchCount;
+    }
+}
@@ -0,0 +1,413 @@
+package com.jhsullivan.pushpull.solver;
+
+
+import com.jhsullivan.pushpull.game_logic.Level;
+import com.jhsullivan.pushpull.game_logic.LevelLoadException;
+import com.jhsullivan.pushpull.game_logic.Vector2D;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The best move, and the number of moves left, from states of a level, worked out ahead of time
+ * so that hints for those states are a lookup rather than a search.
+ * <p>
+ * A table is built by searching every state reachable from the start of the level and then
+ * working back from the solved states, which gives the exact number of moves left from every
+ * state from which the level can still be solved.  Levels with too many states for that only get
+ * the states along a solution, which is a shortest one if A* can find it, and otherwise one found
+ * by weighted A* (see {@link Solver#setWeight(int)}), whose moves left are those along it.
+ * Either way, the states are held by their Zobrist hashes (see {@link Level#getStateHash()}),
+ * sorted so that a lookup is a binary search, each with two bytes packing the moves left and the
+ * best move.
+ * <p>
+ * Tables are written to a compact binary format by {@link #main(String[])}, which is meant to run
+ * as part of the build over the level assets, with one table per level.  The tables of the shipped
+ * levels are kept with them, under Hints, and must be built again whenever a level changes.  The
+ * format is:  a magic number, the version, the hash code of the level's layout (so that a table
+ * left over from an older version of the level is refused), the number of states, the hashes of
+ * the states in increasing order, and then the packed entries in the same order.
+ */
+public class HintTable {
+
+
+    //The file extension of hint tables, which share the names of their level files.
+    public static final String EXTENSION = ".hints";
+
+    //The most states searched while building a table before settling for a solution.
+    public static final int DEFAULT_STATE_LIMIT = 1 << 20;
+
+    //The weights of the A* searches for a solution, tried in turn until one finds a solution.
+    private static final int[] SOLUTION_WEIGHTS = {1, 3, 10, 50};
+
+    private static final int MAGIC = 0x50504854;
+    private static final int VERSION = 1;
+
+    //Each entry packs the moves left above the ordinal of the best move.
+    private static final int DIRECTION_BITS = 2;
+    private static final int MAX_DISTANCE = (1 << (16 - DIRECTION_BITS)) - 1;
+
+    private static final Vector2D.Direction[] DIRECTIONS = Vector2D.Direction.values();
+
+    private final int layoutChecksum;
+    private final long[] hashes;
+    private final char[] entries;
+
+
+    /**
+     * Constructor for a HintTable.
+     *
+     * @param layoutChecksum    The hash code of the layout of the level.
+     * @param hashes            The hashes of the states, in increasing order.
+     * @param entries           The packed entries of the states.
+     */
+    private HintTable(int layoutChecksum, long[] hashes, char[] entries) {
+        this.layoutChecksum = layoutChecksum;
+        this.hashes = hashes;
+        this.entries = entries;
+    }
+
+    /**
+     * @return  Returns the number of states in the table.
+     */
+    public int size() {
+        return hashes.length;
+    }
+
+    /**
+     * @param hash  The hash of a state, from {@link Level#getStateHash()}.
+     * @return      Returns the best move from the state, or null if the table does not hold it.
+     */
+    public Vector2D.Direction getMove(long hash) {
+        int index = Arrays.binarySearch(hashes, hash);
+        if (index < 0) {
+            return null;
+        }
+        return DIRECTIONS[entries[index] & ((1 << DIRECTION_BITS) - 1)];
+    }
+
+    /**
+     * @param hash  The hash of a state, from {@link Level#getStateHash()}.
+     * @return      Returns the moves which solve the level from the state by following the
+     *              table, which are the fewest unless the table was built from a weighted
+     *              search, or -1 if the table does not hold it.
+     */
+    public int getDistance(long hash) {
+        int index = Arrays.binarySearch(hashes, hash);
+        if (index < 0) {
+            return -1;
+        }
+        return entries[index] >>> DIRECTION_BITS;
+    }
+
+    /**
+     * Reads a table written by {@link #write(OutputStream)}.
+     *
+     * @param in            The stream to read from, which is not closed.
+     * @param layout        The layout of the level the table should be for.
+     * @return              Returns the table.
+     * @throws IOException  Throws this exception if the stream cannot be read, or does not hold
+     *                      a table for the layout.
+     */
+    public static HintTable read(InputStream in, String layout) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not a hint table.");
+        }
+        if (data.readInt() != VERSION) {
+            throw new IOException("Unsupported hint table version.");
+        }
+        if (data.readInt() != layout.hashCode()) {
+            throw new IOException("Hint table is for a different version of the level.");
+        }
+        int count = data.readInt();
+        if (count < 0) {
+            throw new IOException("Hint table is corrupt.");
+        }
+
+        long[] hashes = new long[count];
+        for (int i = 0; i < count; i++) {
+            hashes[i] = data.readLong();
+        }
+        char[] entries = new char[count];
+        for (int i = 0; i < count; i++) {
+            entries[i] = data.readChar();
+        }
+        return new HintTable(layout.hashCode(), hashes, entries);
+    }
+
+    /**
+     * Writes the table in its binary format.
+     *
+     * @param out           The stream to write to, which is flushed but not closed.
+     * @throws IOException  Throws this exception if the stream cannot be written.
+     */
+    public void write(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(layoutChecksum);
+        data.writeInt(hashes.length);
+        for (long hash : hashes) {
+            data.writeLong(hash);
+        }
+        for (char entry : entries) {
+            data.writeChar(entry);
+        }
+        data.flush();
+    }
+
+    /**
+     * Builds the table for a level, from every state reachable from its start if there are at
+     * most as many as the state limit, or else from a solution.
+     *
+     * @param layout                The layout of the level.
+     * @param stateLimit            The most states to search through exhaustively.
+     * @return                      Returns the table, which is empty if no solution was found.
+     * @throws LevelLoadException   Throws this exception if the layout is not properly formatted.
+     */
+    public static HintTable build(String layout, int stateLimit) throws LevelLoadException {
+        Level level = new Level(layout);
+        StateCodec codec = new StateCodec(level);
+        StateTable table = new StateTable(codec.getStateLength());
+        char[] state = new char[codec.getStateLength()];
+        int[] checkpoint = codec.newCheckpoint();
+
+        //search forward, keeping the state each input leads to (or -1 if nothing moves), and
+        //without going on from solved states, since the level ends there
+        int[] children = new int[1024];
+        BitSet solved = new BitSet();
+        codec.encode(level.saveCheckpoint(), state);
+        table.add(state, level.getStateHash(), -1, -1);
+        for (int current = 0; current < table.size(); current++) {
+            table.read(current, state);
+            codec.decode(state, checkpoint);
+            level.restoreCheckpoint(checkpoint);
+            if (current * DIRECTIONS.length == children.length) {
+                children = Arrays.copyOf(children, children.length * 2);
+            }
+            Arrays.fill(children, current * DIRECTIONS.length,
+                        (current + 1) * DIRECTIONS.length, -1);
+            if (level.areTargetsFilled()) {
+                solved.set(current);
+                continue;
+            }
+            for (int i = 0; i < DIRECTIONS.length; i++) {
+                if (!level.processInput(DIRECTIONS[i])) {
+                    continue;
+                }
+                codec.encode(level.saveCheckpoint(), state);
+                int added = table.add(state, level.getStateHash(), current, i);
+                children[current * DIRECTIONS.length + i] = added >= 0 ? added : -1 - added;
+                level.revertState();
+            }
+            if (table.size() > stateLimit) {
+                return buildFromSolution(layout);
+            }
+        }
+
+        int[] distances = measureBack(children, table.size(), solved);
+        List<Long> hashList = new ArrayList<>();
+        List<Character> entryList = new ArrayList<>();
+        for (int index = 0; index < table.size(); index++) {
+            int distance = distances[index];
+            if (distance <= 0 || distance > MAX_DISTANCE) {
+                continue;
+            }
+            for (int i = 0; i < DIRECTIONS.length; i++) {
+                int child = children[index * DIRECTIONS.length + i];
+                if (child >= 0 && distances[child] == distance - 1) {
+                    hashList.add(table.getHash(index));
+                    entryList.add(pack(distance, i));
+                    break;
+                }
+            }
+        }
+        return fromEntries(layout, hashList, entryList);
+    }
+
+    /**
+     * Works out the fewest moves to a solved state from every state, by breadth-first search
+     * backward from the solved states.
+     *
+     * @param children      The state each input leads to from each state, or -1.
+     * @param stateCount    The number of states.
+     * @param solved        Which states are solved.
+     * @return              Returns the moves left from each state, or -1 where the level cannot
+     *                      be solved.
+     */
+    private static int[] measureBack(int[] children, int stateCount, BitSet solved) {
+        //gather the inputs leading into each state, grouped by state
+        int[] starts = new int[stateCount + 1];
+        for (int edge = 0; edge < stateCount * DIRECTIONS.length; edge++) {
+            if (children[edge] >= 0) {
+                starts[children[edge] + 1] += 1;
+            }
+        }
+        for (int index = 0; index < stateCount; index++) {
+            starts[index + 1] += starts[index];
+        }
+        int[] parents = new int[starts[stateCount]];
+        int[] filled = Arrays.copyOf(starts, stateCount);
+        for (int edge = 0; edge < stateCount * DIRECTIONS.length; edge++) {
+            int child = children[edge];
+            if (child >= 0) {
+                parents[filled[child]] = edge / DIRECTIONS.length;
+                filled[child] += 1;
+            }
+        }
+
+        int[] distances = new int[stateCount];
+        Arrays.fill(distances, -1);
+        int[] queue = new int[stateCount];
+        int queueEnd = 0;
+        for (int index = solved.nextSetBit(0); index >= 0; index = solved.nextSetBit(index + 1)) {
+            distances[index] = 0;
+            queue[queueEnd] = index;
+            queueEnd += 1;
+        }
+        for (int next = 0; next < queueEnd; next++) {
+            int index = queue[next];
+            for (int p = starts[index]; p < starts[index + 1]; p++) {
+                if (distances[parents[p]] < 0) {
+                    distances[parents[p]] = distances[index] + 1;
+                    queue[queueEnd] = parents[p];
+                    queueEnd += 1;
+                }
+            }
+        }
+        return distances;
+    }
+
+    /**
+     * Builds the table for a level from the states along a solution, searching with A* and then,
+     * if it gives up, with weighted A* of increasing weights, each storing up to the solver's
+     * default state limit.
+     *
+     * @param layout                The layout of the level.
+     * @return                      Returns the table, which is empty if no solution was found.
+     * @throws LevelLoadException   Throws this exception if the layout is not properly formatted.
+     */
+    private static HintTable buildFromSolution(String layout) throws LevelLoadException {
+        Solver solver = new Solver(layout);
+        solver.setStrategy(Solver.Strategy.A_STAR);
+        List<Vector2D.Direction> solution = null;
+        for (int weight : SOLUTION_WEIGHTS) {
+            solver.setWeight(weight);
+            solution = solver.solve();
+            if (solution != null || !solver.isCutOff()) {
+                break;
+            }
+        }
+
+        List<Long> hashList = new ArrayList<>();
+        List<Character> entryList = new ArrayList<>();
+        if (solution != null) {
+            Level level = new Level(layout);
+            for (int i = 0; i < solution.size(); i++) {
+                int distance = solution.size() - i;
+                if (distance <= MAX_DISTANCE) {
+                    hashList.add(level.getStateHash());
+                    entryList.add(pack(distance, solution.get(i).ordinal()));
+                }
+                level.processInput(solution.get(i));
+            }
+        }
+        return fromEntries(layout, hashList, entryList);
+    }
+
+    /**
+     * @param layout        The layout of the level.
+     * @param hashList      The hashes of the states.
+     * @param entryList     The packed entries of the states, in the same order.
+     * @return              Returns a table of the states, sorted by hash.
+     */
+    private static HintTable fromEntries(String layout, final List<Long> hashList,
+                                         List<Character> entryList) {
+        Integer[] order = new Integer[hashList.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return hashList.get(a).compareTo(hashList.get(b));
+            }
+        });
+
+        long[] hashes = new long[order.length];
+        char[] entries = new char[order.length];
+        for (int i = 0; i < order.length; i++) {
+            hashes[i] = hashList.get(order[i]);
+            entries[i] = entryList.get(order[i]);
+        }
+        return new HintTable(layout.hashCode(), hashes, entries);
+    }
+
+    /**
+     * @param distance      The moves left.
+     * @param direction     The ordinal of the best move.
+     * @return              Returns the packed entry.
+     */
+    private static char pack(int distance, int direction) {
+        return (char) ((distance << DIRECTION_BITS) | direction);
+    }
+
+    /**
+     * Builds the hint table of every level file given, writing each next to the others in the
+     * output directory under the name of its level file, with the extension
+     * {@link #EXTENSION}.  A directory stands for all of the .csv files in it.  Exits with a
+     * status of 1 if any level fails to load.
+     *
+     * @param args          The output directory, then the level files and directories.
+     * @throws IOException  Throws this exception if a file cannot be read or written.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: HintTable <output directory> <level files>...");
+            System.exit(1);
+        }
+        File outputDirectory = new File(args[0]);
+        if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+            throw new IOException("Cannot create " + outputDirectory);
+        }
+
+        boolean failed = false;
+        for (File file : Solver.listLevelFiles(args, 1)) {
+            String name = file.getName();
+            if (name.endsWith(".csv")) {
+                name = name.substring(0, name.length() - ".csv".length());
+            }
+            try {
+                HintTable hintTable = build(Solver.readLayout(file), DEFAULT_STATE_LIMIT);
+                OutputStream out = new FileOutputStream(new File(outputDirectory,
+                                                                 name + EXTENSION));
+                try {
+                    hintTable.write(out);
+                }
+                finally {
+                    out.close();
+                }
+                System.out.println(file.getName() + ": " + hintTable.size() + " states");
+            }
+            catch (LevelLoadException e) {
+                failed = true;
+                System.out.println(file.getName() + ": " + e.getMessage());
+            }
+        }
+        if (failed) {
+            System.exit(1);
+        }
+    }
+}
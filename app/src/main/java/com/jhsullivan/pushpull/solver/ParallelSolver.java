@@ -0,0 +1,403 @@
+package com.jhsullivan.pushpull.solver;
+
+
+import com.jhsullivan.pushpull.game_logic.Level;
+import com.jhsullivan.pushpull.game_logic.LevelLoadException;
+import com.jhsullivan.pushpull.game_logic.Vector2D;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Finds a shortest solution to a level by breadth-first search, like the {@link Solver}, but
+ * expands each depth of the search on several threads at once.
+ * <p>
+ * Each depth's frontier is split into ranges by a fork-join task, so idle threads steal work
+ * from busy ones.  Every thread moves its own copy of the level.  The states found are kept in
+ * a transposition table split into shards by the high bits of their hash, each shard being a
+ * {@link StateTable} with its own lock, so threads seldom wait for each other:  the lock is
+ * only held to look up or copy a packed state, which takes far less time than moving the level.
+ * A state is identified by its shard and its index within the shard.  New states are gathered
+ * by each thread separately, and joined into the next frontier once the depth is done.
+ * <p>
+ * Since all the states of one depth are expanded before the next, the first solution found is
+ * a shortest one, although which one of several shortest solutions is found may vary.
+ */
+public class ParallelSolver {
+
+
+    //The number of shards is 2 to the power of SHARD_BITS, which is several times the number of
+    //threads on any likely machine, so that two threads rarely want the same shard.
+    private static final int SHARD_BITS = 6;
+    private static final int SHARD_COUNT = 1 << SHARD_BITS;
+
+    //The number of states expanded by a task without splitting it further.
+    private static final int GRAIN = 16;
+
+    private static final Vector2D.Direction[] DIRECTIONS = Vector2D.Direction.values();
+
+    private final String layout;
+    private final int[] initial;
+    private final StateCodec codec;
+    private final int threadCount;
+    private final int stateLimit;
+
+    private final StateTable[] shards = new StateTable[SHARD_COUNT];
+    private final AtomicInteger stateCount = new AtomicInteger();
+    private final AtomicInteger solution = new AtomicInteger(-1);
+    private volatile boolean cutOff = false;
+
+    private final List<Worker> workers = new ArrayList<>();
+    private final ConcurrentLinkedQueue<Worker> idleWorkers = new ConcurrentLinkedQueue<>();
+
+    private long elapsedNanos = 0;
+
+
+    /**
+     * Constructor for a ParallelSolver which solves the level with the specified layout from its
+     * starting state.
+     *
+     * @param layout                The layout of the level to solve.
+     * @param threadCount           The number of threads to search with, or 0 to use one for
+     *                              each available processor.
+     * @param memoryBudget          The most bytes the states found may take up, roughly.  The
+     *                              search gives up once it has found that many states.
+     * @throws LevelLoadException   Throws this exception if the layout is not properly formatted.
+     */
+    public ParallelSolver(String layout, int threadCount, long memoryBudget)
+            throws LevelLoadException {
+        Level level = new Level(layout);
+        this.layout = layout;
+        this.initial = level.saveCheckpoint();
+        this.codec = new StateCodec(level);
+        this.threadCount = threadCount > 0
+                ? threadCount : Runtime.getRuntime().availableProcessors();
+
+        long stateBytes = 2 * codec.getStateLength() + StateTable.OVERHEAD_BYTES + 4;
+        this.stateLimit = (int) Math.max(1, Math.min(Integer.MAX_VALUE >>> SHARD_BITS,
+                                                     memoryBudget / stateBytes));
+        idleWorkers.add(new Worker(level));
+    }
+
+    /**
+     * Searches for a shortest solution.
+     *
+     * @return  Returns the inputs of a shortest solution, which is empty if the level starts
+     *          solved, or null if there is no solution (or none was found within the memory
+     *          budget; see {@link #isCutOff()}).
+     */
+    public List<Vector2D.Direction> solve() {
+        for (int i = 0; i < SHARD_COUNT; i++) {
+            shards[i] = new StateTable(codec.getStateLength());
+        }
+        stateCount.set(0);
+        solution.set(-1);
+        cutOff = false;
+        long start = System.nanoTime();
+
+        Worker first = takeWorker();
+        first.level.restoreCheckpoint(initial);
+        boolean solved = first.level.areTargetsFilled();
+        codec.encode(initial, first.state);
+        int[] frontier = {addState(first.state, first.level.getStateHash(), -1, -1)};
+        idleWorkers.add(first);
+        if (solved) {
+            elapsedNanos = System.nanoTime() - start;
+            return new ArrayList<>();
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threadCount);
+        try {
+            while (frontier.length > 0 && solution.get() < 0 && !cutOff) {
+                pool.invoke(new ExpandTask(frontier, 0, frontier.length));
+                frontier = gatherFrontier();
+            }
+        }
+        finally {
+            pool.shutdown();
+            elapsedNanos = System.nanoTime() - start;
+        }
+
+        if (solution.get() >= 0) {
+            return getPath(solution.get());
+        }
+        return null;
+    }
+
+    /**
+     * @return  Returns whether the last search gave up because it ran out of memory budget,
+     *          rather than because every reachable state had been searched.
+     */
+    public boolean isCutOff() {
+        return cutOff && solution.get() < 0;
+    }
+
+    /**
+     * @return  Returns the number of states stored by the last search.
+     */
+    public int getStateCount() {
+        return stateCount.get();
+    }
+
+    /**
+     * @return  Returns how long the last search took, in milliseconds.
+     */
+    public long getElapsedMillis() {
+        return elapsedNanos / 1000000;
+    }
+
+    /**
+     * @return  Returns the number of states the last search found per second.
+     */
+    public double getStatesPerSecond() {
+        return elapsedNanos == 0 ? 0 : stateCount.get() * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * Stores a state, unless it has been stored already.  May be called from any thread.
+     *
+     * @param state         The packed state.
+     * @param hash          The hash of the state.
+     * @param parent        The state from which the state was reached, or -1.
+     * @param direction     The ordinal of the input which reached the state.
+     * @return              Returns the state, or -1 if it was not new.
+     */
+    private int addState(char[] state, long hash, int parent, int direction) {
+        int shard = (int) (hash >>> (64 - SHARD_BITS));
+        StateTable table = shards[shard];
+        int index;
+        synchronized (table) {
+            index = table.add(state, hash, parent, direction);
+        }
+        if (index < 0) {
+            return -1;
+        }
+        if (stateCount.incrementAndGet() >= stateLimit) {
+            cutOff = true;
+        }
+        return (index << SHARD_BITS) | shard;
+    }
+
+    /**
+     * Copies a stored state.  May be called from any thread.
+     *
+     * @param id        The state.
+     * @param state     The array into which to copy the packed state.
+     */
+    private void readState(int id, char[] state) {
+        StateTable table = shards[id & (SHARD_COUNT - 1)];
+        synchronized (table) {
+            table.read(id >>> SHARD_BITS, state);
+        }
+    }
+
+    /**
+     * @param id    A stored state.
+     * @return      Returns the inputs which lead from the starting state to the stored state.
+     */
+    private List<Vector2D.Direction> getPath(int id) {
+        List<Vector2D.Direction> path = new ArrayList<>();
+        while (true) {
+            StateTable table = shards[id & (SHARD_COUNT - 1)];
+            int index = id >>> SHARD_BITS;
+            if (table.getParent(index) < 0) {
+                break;
+            }
+            path.add(DIRECTIONS[table.getDirection(index)]);
+            id = table.getParent(index);
+        }
+        Collections.reverse(path);
+        return path;
+    }
+
+    /**
+     * @return  Returns the states found by every worker during the last depth, which make up the
+     *          frontier of the next depth, and clears them from the workers.
+     */
+    private int[] gatherFrontier() {
+        int size = 0;
+        for (Worker worker : workers) {
+            size += worker.foundCount;
+        }
+        int[] frontier = new int[size];
+        int offset = 0;
+        for (Worker worker : workers) {
+            System.arraycopy(worker.found, 0, frontier, offset, worker.foundCount);
+            offset += worker.foundCount;
+            worker.foundCount = 0;
+        }
+        return frontier;
+    }
+
+    /**
+     * @return  Returns a worker which no other thread is using, making a new one if needed.
+     */
+    private Worker takeWorker() {
+        Worker worker = idleWorkers.poll();
+        if (worker != null) {
+            return worker;
+        }
+        try {
+            return new Worker(new Level(layout));
+        }
+        catch (LevelLoadException e) {
+            //the layout was already loaded once by the constructor
+            throw new IllegalStateException(e);
+        }
+    }
+
+
+    /**
+     * A copy of the level, with the scratch space and list of new states of one thread.
+     */
+    private class Worker {
+
+        private final Level level;
+        private final char[] state = new char[codec.getStateLength()];
+        private final int[] checkpoint = codec.newCheckpoint();
+        private int[] found = new int[64];
+        private int foundCount = 0;
+
+
+        /**
+         * Constructor for a Worker which moves the specified Level.
+         *
+         * @param level     The worker's own copy of the level.
+         */
+        Worker(Level level) {
+            this.level = level;
+            synchronized (workers) {
+                workers.add(this);
+            }
+        }
+
+        /**
+         * Tries every input from a stored state, storing every new state found, and noting a
+         * solution if one is found.
+         *
+         * @param id    The state to expand.
+         */
+        void expand(int id) {
+            readState(id, state);
+            codec.decode(state, checkpoint);
+            level.restoreCheckpoint(checkpoint);
+            for (int i = 0; i < DIRECTIONS.length; i++) {
+                if (!level.processInput(DIRECTIONS[i])) {
+                    continue;
+                }
+                codec.encode(level.saveCheckpoint(), state);
+                int child = addState(state, level.getStateHash(), id, i);
+                boolean solved = level.areTargetsFilled();
+                level.revertState();
+                if (child < 0) {
+                    continue;
+                }
+                if (solved) {
+                    solution.compareAndSet(-1, child);
+                }
+                if (foundCount == found.length) {
+                    found = Arrays.copyOf(found, foundCount * 2);
+                }
+                found[foundCount] = child;
+                foundCount += 1;
+            }
+        }
+    }
+
+
+    /**
+     * Expands a range of the frontier, splitting it in half until it is small enough to expand
+     * on one thread.
+     */
+    private class ExpandTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int[] frontier;
+        private final int from;
+        private final int to;
+
+
+        /**
+         * @param frontier  The states of the current depth.
+         * @param from      The index of the first state to expand.
+         * @param to        The index just past the last state to expand.
+         */
+        ExpandTask(int[] frontier, int from, int to) {
+            this.frontier = frontier;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > GRAIN) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ExpandTask(frontier, from, middle),
+                          new ExpandTask(frontier, middle, to));
+                return;
+            }
+            Worker worker = takeWorker();
+            try {
+                for (int i = from; i < to && solution.get() < 0 && !cutOff; i++) {
+                    worker.expand(frontier[i]);
+                }
+            }
+            finally {
+                idleWorkers.add(worker);
+            }
+        }
+    }
+
+    /**
+     * Solves every level file given, printing the length of a shortest solution of each along
+     * with the speed of the search.  Exits with a status of 1 if any level fails to load or
+     * cannot be solved.
+     *
+     * @param args          The number of threads (0 for one per processor), the memory budget
+     *                      in megabytes, and then the level files and directories to solve.
+     * @throws IOException  Throws this exception if a file cannot be read.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.out.println("Arguments: threads megabytes levels...");
+            System.exit(2);
+        }
+        int threads = Integer.parseInt(args[0]);
+        long budget = Long.parseLong(args[1]) * 1024 * 1024;
+
+        boolean failed = false;
+        for (File file : Solver.listLevelFiles(args, 2)) {
+            try {
+                ParallelSolver solver =
+                        new ParallelSolver(Solver.readLayout(file), threads, budget);
+                List<Vector2D.Direction> solution = solver.solve();
+                String result;
+                if (solution != null) {
+                    result = solution.size() + " moves";
+                }
+                else {
+                    failed = true;
+                    result = solver.isCutOff() ? "out of memory budget" : "no solution";
+                }
+                System.out.println(file.getName() + ": " + result + ", "
+                        + solver.getStateCount() + " states in " + solver.getElapsedMillis()
+                        + " ms (" + Math.round(solver.getStatesPerSecond()) + " states/s)");
+            }
+            catch (LevelLoadException e) {
+                failed = true;
+                System.out.println(file.getName() + ": " + e.getMessage());
+            }
+        }
+        if (failed) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,672 @@
+package com.jhsullivan.pushpull.solver;
+
+
+import com.jhsullivan.pushpull.game_logic.Vector2D;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps the results of solving levels on disk, by a hash of their layouts (as given by
+ * {@link com.jhsullivan.pushpull.game_logic.Level#getLayout()}), so that levels which have not
+ * changed need not be solved again.
+ * <p>
+ * The results are appended to a log file, each as a record with a CRC-32, and nothing already
+ * written to the log is ever changed.  An index from the hashes of the layouts to the records is
+ * kept in a second file, which is memory-mapped, so opening the cache and looking a level up
+ * does not read the whole log.  The log is the only source of truth:  the index records how much
+ * of the log it covers, and when it is opened, whatever it does not cover is indexed again from
+ * the log, or the whole index is rebuilt if it does not match the log at all.  If the process is
+ * killed while appending, the torn record at the end of the log fails its check and is cut off
+ * the next time the cache is opened, and every record is checked against its hash and CRC again
+ * when it is read.
+ * <p>
+ * Every lookup stamps the entry with a clock in the index.  Once the log grows past its size
+ * limit, the entries most recently used (up to three quarters of the limit) are copied to a new
+ * log, which then replaces the old one by renaming, so a kill at any point leaves either the old
+ * log or the new one.
+ * <p>
+ * A SolutionCache is not thread-safe, and a cache directory should only be open in one process
+ * at a time.
+ */
+public class SolutionCache implements Closeable {
+
+
+    /**
+     * The result of solving a level.
+     */
+    public static class Result {
+
+        private final List<Vector2D.Direction> solution;
+        private final boolean cutOff;
+        private final long solveMillis;
+        private final int stateCount;
+
+
+        /**
+         * Constructor for a Result.
+         *
+         * @param solution      The solution found, or null if there was none.
+         * @param cutOff        Whether the search gave up before finding a solution.
+         * @param solveMillis   The time the search took, in milliseconds.
+         * @param stateCount    The number of states the search stored.
+         */
+        public Result(List<Vector2D.Direction> solution, boolean cutOff, long solveMillis,
+                      int stateCount) {
+            this.solution = solution == null ? null
+                    : Collections.unmodifiableList(new ArrayList<>(solution));
+            this.cutOff = cutOff;
+            this.solveMillis = solveMillis;
+            this.stateCount = stateCount;
+        }
+
+        /**
+         * @return  Returns the solution found, or null if there was none.
+         */
+        public List<Vector2D.Direction> getSolution() {
+            return solution;
+        }
+
+        /**
+         * @return  Returns whether the search gave up before finding a solution.
+         */
+        public boolean isCutOff() {
+            return cutOff;
+        }
+
+        /**
+         * @return  Returns the time the search took, in milliseconds.
+         */
+        public long getSolveMillis() {
+            return solveMillis;
+        }
+
+        /**
+         * @return  Returns the number of states the search stored.
+         */
+        public int getStateCount() {
+            return stateCount;
+        }
+    }
+
+    public static final String LOG_NAME = "solutions.log";
+    public static final String INDEX_NAME = "solutions.idx";
+
+    private static final int LOG_MAGIC = 0x50505343;
+    private static final int INDEX_MAGIC = 0x50505349;
+    private static final int VERSION = 1;
+
+    //The log starts with its magic number, version and generation, which goes up with each
+    //compaction so that an index of an older log is never used.
+    private static final int LOG_HEADER_BYTES = 16;
+
+    //A record is its length, then the body (the hash of the layout, whether a solution was found
+    //and whether the search was cut off, the time, the states, and the moves, packed four to a
+    //byte), then the CRC-32 of the length and body.
+    private static final int RECORD_FIXED_BYTES = 8 + 1 + 8 + 4 + 4;
+    private static final int FLAG_SOLVED = 1;
+    private static final int FLAG_CUT_OFF = 2;
+
+    //The index starts with its magic number, version, capacity and entry count, the generation
+    //and length of the log it covers, and the clock; then come the slots, each holding the hash
+    //of a layout (or 0 for an empty slot), the offset of its record, and when it was last used.
+    private static final int INDEX_HEADER_BYTES = 4 * 4 + 3 * 8;
+    private static final int SLOT_BYTES = 3 * 8;
+    private static final int INDEX_COUNT = 12;
+    private static final int INDEX_GENERATION = 16;
+    private static final int INDEX_LOG_LENGTH = 24;
+    private static final int INDEX_CLOCK = 32;
+    private static final int MIN_CAPACITY = 256;
+
+    private static final Vector2D.Direction[] DIRECTIONS = Vector2D.Direction.values();
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File directory;
+    private final long maxBytes;
+    private RandomAccessFile log;
+    private FileChannel logChannel;
+    private long generation;
+    private long logLength;
+    private RandomAccessFile indexFile;
+    private MappedByteBuffer index;
+    private int capacity;
+    private int count;
+    private long clock;
+
+
+    /**
+     * Constructor which opens the cache in the specified directory, creating it if needed.
+     *
+     * @param directory     The directory holding the log and index files.
+     * @param maxBytes      The size past which the log is compacted.
+     * @throws IOException  Throws this exception if the files cannot be read or written.
+     */
+    public SolutionCache(File directory, long maxBytes) throws IOException {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        new File(directory, LOG_NAME + ".tmp").delete();
+        openLog();
+        openIndex();
+    }
+
+    /**
+     * Hashes a layout, as the key of its results.
+     *
+     * @param layout    The layout of a level.
+     * @return          Returns a 64-bit hash of the layout, which is never 0.
+     */
+    public static long hashLayout(String layout) {
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256").digest(layout.getBytes(UTF_8));
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        long hash = ByteBuffer.wrap(digest).getLong();
+        return hash == 0 ? 1 : hash;
+    }
+
+    /**
+     * @return  Returns the number of layouts with results in the cache.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @return  Returns the current length of the log file, in bytes.
+     */
+    public long getLogLength() {
+        return logLength;
+    }
+
+    /**
+     * Looks up the result for a layout, marking it as recently used.
+     *
+     * @param layout        The layout of a level.
+     * @return              Returns the result, or null if the cache has none for the layout.
+     * @throws IOException  Throws this exception if the log cannot be read.
+     */
+    public Result get(String layout) throws IOException {
+        long hash = hashLayout(layout);
+        int slot = findSlot(hash);
+        if (getSlotHash(slot) == 0) {
+            return null;
+        }
+        Result result = readRecord(getSlotOffset(slot), hash);
+        if (result != null) {
+            clock += 1;
+            index.putLong(INDEX_CLOCK, clock);
+            index.putLong(slotPosition(slot) + 16, clock);
+        }
+        return result;
+    }
+
+    /**
+     * Stores the result for a layout, replacing any result it had.  The result is written to
+     * the log before the index points to it.
+     *
+     * @param layout        The layout of a level.
+     * @param result        The result of solving it.
+     * @throws IOException  Throws this exception if the files cannot be written.
+     */
+    public void put(String layout, Result result) throws IOException {
+        long hash = hashLayout(layout);
+        byte[] record = encode(hash, result);
+        long offset = logLength;
+        logChannel.write(ByteBuffer.wrap(record), offset);
+        logChannel.force(false);
+        logLength += record.length;
+
+        clock += 1;
+        addToIndex(hash, offset, clock);
+        index.putLong(INDEX_LOG_LENGTH, logLength);
+
+        if (logLength > maxBytes) {
+            compact();
+        }
+    }
+
+    /**
+     * Closes the files, flushing the index.
+     *
+     * @throws IOException  Throws this exception if the files cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        index.force();
+        indexFile.close();
+        log.close();
+    }
+
+    /**
+     * Opens the log, writing its header if it is new, and cuts off a torn record at the end.
+     */
+    private void openLog() throws IOException {
+        log = new RandomAccessFile(new File(directory, LOG_NAME), "rw");
+        logChannel = log.getChannel();
+        if (log.length() < LOG_HEADER_BYTES) {
+            generation = 1;
+            writeLogHeader(logChannel, generation);
+            log.setLength(LOG_HEADER_BYTES);
+        }
+        else {
+            ByteBuffer header = ByteBuffer.allocate(LOG_HEADER_BYTES);
+            readFully(logChannel, header, 0);
+            if (header.getInt(0) != LOG_MAGIC || header.getInt(4) != VERSION) {
+                throw new IOException(LOG_NAME + " is not a solution log.");
+            }
+            generation = header.getLong(8);
+        }
+        logLength = log.length();
+    }
+
+    /**
+     * Maps the index, bringing it up to date with the log.
+     */
+    private void openIndex() throws IOException {
+        indexFile = new RandomAccessFile(new File(directory, INDEX_NAME), "rw");
+        if (indexFile.length() >= INDEX_HEADER_BYTES) {
+            index = indexFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+                                               indexFile.length());
+            capacity = index.getInt(8);
+            boolean valid = index.getInt(0) == INDEX_MAGIC && index.getInt(4) == VERSION
+                    && capacity >= MIN_CAPACITY && Integer.bitCount(capacity) == 1
+                    && indexFile.length() == INDEX_HEADER_BYTES + (long) capacity * SLOT_BYTES
+                    && index.getLong(INDEX_GENERATION) == generation
+                    && index.getLong(INDEX_LOG_LENGTH) >= LOG_HEADER_BYTES
+                    && index.getLong(INDEX_LOG_LENGTH) <= logLength;
+            if (valid) {
+                count = index.getInt(INDEX_COUNT);
+                clock = index.getLong(INDEX_CLOCK);
+                scanLog(index.getLong(INDEX_LOG_LENGTH));
+                return;
+            }
+        }
+        rebuildIndex(MIN_CAPACITY);
+    }
+
+    /**
+     * Starts a new, empty index and indexes the whole log.
+     *
+     * @param newCapacity   The number of slots, a power of two.
+     */
+    private void rebuildIndex(int newCapacity) throws IOException {
+        createIndex(newCapacity);
+        scanLog(LOG_HEADER_BYTES);
+    }
+
+    /**
+     * Replaces the index with an empty one.
+     *
+     * @param newCapacity   The number of slots, a power of two.
+     */
+    private void createIndex(int newCapacity) throws IOException {
+        capacity = newCapacity;
+        count = 0;
+        clock = 0;
+        long length = INDEX_HEADER_BYTES + (long) capacity * SLOT_BYTES;
+        indexFile.setLength(0);
+        indexFile.setLength(length);
+        index = indexFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+        index.putInt(0, INDEX_MAGIC);
+        index.putInt(4, VERSION);
+        index.putInt(8, capacity);
+        index.putInt(INDEX_COUNT, 0);
+        index.putLong(INDEX_GENERATION, generation);
+        index.putLong(INDEX_LOG_LENGTH, LOG_HEADER_BYTES);
+        index.putLong(INDEX_CLOCK, 0);
+    }
+
+    /**
+     * Indexes the records of the log from the specified offset on, cutting the log off at the
+     * first record which is torn or fails its check.
+     *
+     * @param from  The offset of the first record to index.
+     */
+    private void scanLog(long from) throws IOException {
+        long offset = from;
+        ByteBuffer head = ByteBuffer.allocate(12);
+        while (offset < logLength) {
+            head.clear();
+            if (offset + 12 > logLength || !readFully(logChannel, head, offset)) {
+                break;
+            }
+            int length = head.getInt(0);
+            long hash = head.getLong(4);
+            if (length < RECORD_FIXED_BYTES || offset + 8L + length > logLength
+                    || readRecord(offset, hash) == null) {
+                break;
+            }
+            clock += 1;
+            addToIndex(hash, offset, clock);
+            offset += 8L + length;
+        }
+        if (offset < logLength) {
+            log.setLength(offset);
+            logLength = offset;
+        }
+        index.putLong(INDEX_LOG_LENGTH, logLength);
+    }
+
+    /**
+     * Points the index at a record, growing the index if it is getting full.
+     *
+     * @param hash      The hash of the layout.
+     * @param offset    The offset of the record.
+     * @param used      When the entry was last used.
+     */
+    private void addToIndex(long hash, long offset, long used) throws IOException {
+        if ((count + 1) * 2 > capacity) {
+            growIndex();
+        }
+        int slot = findSlot(hash);
+        if (getSlotHash(slot) == 0) {
+            count += 1;
+            index.putInt(INDEX_COUNT, count);
+        }
+        int position = slotPosition(slot);
+        index.putLong(position + 8, offset);
+        index.putLong(position + 16, used);
+        index.putLong(position, hash);
+        index.putLong(INDEX_CLOCK, clock);
+    }
+
+    /**
+     * Doubles the number of slots of the index, keeping its entries.
+     */
+    private void growIndex() throws IOException {
+        long[] entries = readSlots();
+        createIndex(capacity * 2);
+        insertSlots(entries);
+    }
+
+    /**
+     * @return  Returns the entries of the index, three longs (hash, offset, last use) for each.
+     */
+    private long[] readSlots() {
+        long[] entries = new long[count * 3];
+        int e = 0;
+        for (int slot = 0; slot < capacity; slot++) {
+            if (getSlotHash(slot) != 0) {
+                int position = slotPosition(slot);
+                entries[e] = index.getLong(position);
+                entries[e + 1] = index.getLong(position + 8);
+                entries[e + 2] = index.getLong(position + 16);
+                e += 3;
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Adds entries to a new index, keeping the clock past their last uses.
+     *
+     * @param entries   The entries, three longs (hash, offset, last use) for each.
+     */
+    private void insertSlots(long[] entries) {
+        long savedClock = 0;
+        for (int e = 0; e < entries.length; e += 3) {
+            int position = slotPosition(findSlot(entries[e]));
+            index.putLong(position, entries[e]);
+            index.putLong(position + 8, entries[e + 1]);
+            index.putLong(position + 16, entries[e + 2]);
+            savedClock = Math.max(savedClock, entries[e + 2]);
+        }
+        count = entries.length / 3;
+        clock = Math.max(clock, savedClock);
+        index.putInt(INDEX_COUNT, count);
+        index.putLong(INDEX_CLOCK, clock);
+        index.putLong(INDEX_LOG_LENGTH, logLength);
+    }
+
+    /**
+     * Copies the most recently used results to a new log, oldest first, until they fill three
+     * quarters of the size limit, then swaps the new log in and indexes it.
+     */
+    private void compact() throws IOException {
+        final long[] entries = readSlots();
+        Integer[] order = new Integer[entries.length / 3];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return -Long.compare(entries[a * 3 + 2], entries[b * 3 + 2]);
+            }
+        });
+
+        List<byte[]> kept = new ArrayList<>();
+        long keptBytes = LOG_HEADER_BYTES;
+        for (Integer i : order) {
+            byte[] record = readRecordBytes(entries[i * 3 + 1]);
+            if (record == null) {
+                continue;
+            }
+            if (keptBytes + record.length > maxBytes * 3 / 4) {
+                break;
+            }
+            kept.add(record);
+            keptBytes += record.length;
+        }
+        Collections.reverse(kept);
+
+        File temporary = new File(directory, LOG_NAME + ".tmp");
+        RandomAccessFile newLog = new RandomAccessFile(temporary, "rw");
+        try {
+            newLog.setLength(0);
+            FileChannel channel = newLog.getChannel();
+            writeLogHeader(channel, generation + 1);
+            long offset = LOG_HEADER_BYTES;
+            for (byte[] record : kept) {
+                channel.write(ByteBuffer.wrap(record), offset);
+                offset += record.length;
+            }
+            channel.force(true);
+        }
+        finally {
+            newLog.close();
+        }
+
+        log.close();
+        if (!temporary.renameTo(new File(directory, LOG_NAME))) {
+            throw new IOException("Cannot replace " + LOG_NAME);
+        }
+        openLog();
+        rebuildIndex(MIN_CAPACITY);
+    }
+
+    /**
+     * @param hash  The hash of a layout.
+     * @return      Returns the slot of the layout in the index, or the empty slot where it
+     *              would go.
+     */
+    private int findSlot(long hash) {
+        int mask = capacity - 1;
+        int slot = (int) (hash ^ (hash >>> 32)) & mask;
+        while (true) {
+            long other = getSlotHash(slot);
+            if (other == 0 || other == hash) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * @param slot  A slot of the index.
+     * @return      Returns the position of the slot in the index file.
+     */
+    private static int slotPosition(int slot) {
+        return INDEX_HEADER_BYTES + slot * SLOT_BYTES;
+    }
+
+    /**
+     * @param slot  A slot of the index.
+     * @return      Returns the hash held by the slot, or 0 if it is empty.
+     */
+    private long getSlotHash(int slot) {
+        return index.getLong(slotPosition(slot));
+    }
+
+    /**
+     * @param slot  A slot of the index.
+     * @return      Returns the offset of the record the slot points to.
+     */
+    private long getSlotOffset(int slot) {
+        return index.getLong(slotPosition(slot) + 8);
+    }
+
+    /**
+     * Packs a result into a record.
+     *
+     * @param hash      The hash of the layout.
+     * @param result    The result.
+     * @return          Returns the record, including its length and CRC.
+     */
+    private static byte[] encode(long hash, Result result) {
+        List<Vector2D.Direction> solution = result.getSolution();
+        int moves = solution == null ? 0 : solution.size();
+        int length = RECORD_FIXED_BYTES + (moves + 3) / 4;
+        ByteBuffer buffer = ByteBuffer.allocate(4 + length + 4);
+        buffer.putInt(length);
+        buffer.putLong(hash);
+        buffer.put((byte) ((solution != null ? FLAG_SOLVED : 0)
+                            | (result.isCutOff() ? FLAG_CUT_OFF : 0)));
+        buffer.putLong(result.getSolveMillis());
+        buffer.putInt(result.getStateCount());
+        buffer.putInt(moves);
+        byte packed = 0;
+        for (int i = 0; i < moves; i++) {
+            packed |= solution.get(i).ordinal() << (2 * (i % 4));
+            if (i % 4 == 3 || i == moves - 1) {
+                buffer.put(packed);
+                packed = 0;
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, 4 + length);
+        buffer.putInt((int) crc.getValue());
+        return buffer.array();
+    }
+
+    /**
+     * Reads a record, checking its CRC.
+     *
+     * @param offset    The offset of the record in the log.
+     * @return          Returns the whole record, or null if it is torn or fails its check.
+     */
+    private byte[] readRecordBytes(long offset) throws IOException {
+        ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+        if (offset + 4 > logLength || !readFully(logChannel, lengthBuffer, offset)) {
+            return null;
+        }
+        int length = lengthBuffer.getInt(0);
+        if (length < RECORD_FIXED_BYTES || offset + 8L + length > logLength) {
+            return null;
+        }
+        ByteBuffer record = ByteBuffer.allocate(4 + length + 4);
+        if (!readFully(logChannel, record, offset)) {
+            return null;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 0, 4 + length);
+        if (record.getInt(4 + length) != (int) crc.getValue()) {
+            return null;
+        }
+        return record.array();
+    }
+
+    /**
+     * Reads a result from the log.
+     *
+     * @param offset    The offset of the record in the log.
+     * @param hash      The hash of the layout the record should be for.
+     * @return          Returns the result, or null if the record is torn, fails its check, or is
+     *                  for a different layout.
+     */
+    private Result readRecord(long offset, long hash) throws IOException {
+        byte[] bytes = readRecordBytes(offset);
+        if (bytes == null) {
+            return null;
+        }
+        ByteBuffer record = ByteBuffer.wrap(bytes);
+        int length = record.getInt();
+        if (record.getLong() != hash) {
+            return null;
+        }
+        int flags = record.get();
+        long solveMillis = record.getLong();
+        int stateCount = record.getInt();
+        int moves = record.getInt();
+        if (moves < 0 || RECORD_FIXED_BYTES + (moves + 3) / 4 != length) {
+            return null;
+        }
+
+        List<Vector2D.Direction> solution = null;
+        if ((flags & FLAG_SOLVED) != 0) {
+            solution = new ArrayList<>(moves);
+            int packed = 0;
+            for (int i = 0; i < moves; i++) {
+                if (i % 4 == 0) {
+                    packed = record.get();
+                }
+                solution.add(DIRECTIONS[(packed >> (2 * (i % 4))) & 3]);
+            }
+        }
+        return new Result(solution, (flags & FLAG_CUT_OFF) != 0, solveMillis, stateCount);
+    }
+
+    /**
+     * Writes the header of a log.
+     *
+     * @param channel       The log.
+     * @param generation    The generation of the log.
+     */
+    private static void writeLogHeader(FileChannel channel, long generation) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(LOG_HEADER_BYTES);
+        header.putInt(LOG_MAGIC);
+        header.putInt(VERSION);
+        header.putLong(generation);
+        header.flip();
+        channel.write(header, 0);
+    }
+
+    /**
+     * Fills a buffer from a file.
+     *
+     * @param channel   The file.
+     * @param buffer    The buffer to fill.
+     * @param position  The position in the file to read from.
+     * @return          Returns whether the buffer was filled, i.e. the file did not end first.
+     */
+    private static boolean readFully(FileChannel channel, ByteBuffer buffer, long position)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                return false;
+            }
+            position += read;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,433 @@
+package com.jhsullivan.pushpull.solver;
+
+
+import com.jhsullivan.pushpull.game_logic.Level;
+import com.jhsullivan.pushpull.game_logic.LevelLoadException;
+import com.jhsullivan.pushpull.game_logic.Vector2D;
+import java.util.Arrays;
+
+/**
+ * Works out in the background whether the position a level is in can still be solved, so that
+ * the game can tell the player soon after a move that leaves the level unsolvable.
+ * <p>
+ * Each call to {@link #check(Level)} only takes a checkpoint of the level, which is cheap, and
+ * hands it to a single worker thread of low priority, cancelling whatever check was running.
+ * The worker searches the states reachable from the checkpoint, most promising first by the
+ * {@link Heuristic}, leaving out the states the heuristic shows to be unsolvable (e.g. with a
+ * block on a dead cell).  Finding a solution shows the position is solvable, and running out of
+ * states to search shows it is not; a search which reaches its limits is inconclusive.
+ * <p>
+ * Work is kept between checks of the same layout:  every state on a solution found is known to
+ * be solvable, and every state of a search which ran out of states is known to be unsolvable.
+ * A later search stops as soon as it reaches a state known to be solvable, and skips the states
+ * known to be unsolvable, so checking the position after each move of a level usually costs
+ * little more than the first check.
+ * <p>
+ * The worker spends at most a share of the time working (see {@link #setCpuShare(int)}) and
+ * sleeps for the rest, and gives up on a check after a limit on its states or on its working
+ * time, so it cannot drain the battery however long the player takes over a level.
+ */
+public class SolvabilityMonitor {
+
+
+    /**
+     * What a check found out about a position.
+     */
+    public enum Verdict {SOLVABLE, UNSOLVABLE, UNKNOWN}
+
+    /**
+     * Receives the results of checks.
+     */
+    public interface Listener {
+
+        /**
+         * Called on the monitor's worker thread when a check finishes, unless it was cancelled.
+         * The check may still have been overtaken by a newer one since, which can be found out
+         * with {@link SolvabilityMonitor#isLatest(long)}.
+         *
+         * @param checkId   The id of the check, as returned by {@link #check(Level)}.
+         * @param verdict   What the check found.
+         */
+        void onVerdict(long checkId, Verdict verdict);
+    }
+
+    //The most states a check stores, and the most states remembered as solvable or unsolvable
+    //between checks, unless set otherwise.  Each state takes about 20 bytes plus twice the
+    //number of blocks and players.
+    public static final int DEFAULT_STATE_LIMIT = 1 << 15;
+    private static final int KNOWN_LIMIT = 1 << 16;
+
+    //The longest a check may work, and the share of the time it may work, unless set otherwise.
+    public static final long DEFAULT_TIME_LIMIT_MILLIS = 2000;
+    public static final int DEFAULT_CPU_SHARE = 25;
+
+    //The number of states expanded between checks for cancellation and throttling.
+    private static final int SLICE = 64;
+
+    private static final Vector2D.Direction[] DIRECTIONS = Vector2D.Direction.values();
+
+    private final Listener listener;
+    private final Object lock = new Object();
+
+    //The latest check, and the position it is for if the worker has not taken it up yet.
+    private volatile long latestCheck = 0;
+    private String pendingLayout;
+    private int[] pendingCheckpoint;
+    private boolean stopped = false;
+
+    private volatile int stateLimit = DEFAULT_STATE_LIMIT;
+    private volatile long timeLimitNanos = DEFAULT_TIME_LIMIT_MILLIS * 1000000;
+    private volatile int cpuShare = DEFAULT_CPU_SHARE;
+
+    //Only used by the worker:  a private copy of the level being checked, and what is known
+    //about its states.
+    private String layout;
+    private Level level;
+    private StateCodec codec;
+    private Heuristic heuristic;
+    private char[] state;
+    private int[] checkpoint;
+    private StateTable solvable;
+    private StateTable unsolvable;
+    private long sliceStart;
+    private long busyNanos;
+
+
+    /**
+     * Constructor for a SolvabilityMonitor, which starts its worker thread.
+     *
+     * @param listener  The Listener to give the results of checks to.
+     */
+    public SolvabilityMonitor(Listener listener) {
+        this.listener = listener;
+        Thread worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                work();
+            }
+        }, "SolvabilityMonitor");
+        worker.setDaemon(true);
+        worker.setPriority(Thread.MIN_PRIORITY);
+        worker.start();
+    }
+
+    /**
+     * Sets the most states a check may store before giving up.
+     *
+     * @param stateLimit    The most states to store.
+     */
+    public void setStateLimit(int stateLimit) {
+        this.stateLimit = Math.max(1, stateLimit);
+    }
+
+    /**
+     * Sets the longest a check may work before giving up, not counting the time it sleeps.
+     *
+     * @param millis    The time limit, in milliseconds.
+     */
+    public void setTimeLimit(long millis) {
+        this.timeLimitNanos = Math.max(1, millis) * 1000000;
+    }
+
+    /**
+     * Sets the share of the time the worker may spend working while it checks a position.  The
+     * default is 25, i.e. it sleeps three times as long as it works.
+     *
+     * @param percent   The share, from 1 to 100.
+     */
+    public void setCpuShare(int percent) {
+        this.cpuShare = Math.max(1, Math.min(100, percent));
+    }
+
+    /**
+     * Starts checking the current position of a level in the background, cancelling any check
+     * which is still running.  Only takes a checkpoint of the level, so it is cheap enough for
+     * the UI thread.
+     *
+     * @param level     The Level to check, which is not changed.
+     * @return          Returns the id of the check.
+     */
+    public long check(Level level) {
+        synchronized (lock) {
+            pendingLayout = level.getLayout();
+            pendingCheckpoint = level.saveCheckpoint();
+            latestCheck += 1;
+            lock.notifyAll();
+            return latestCheck;
+        }
+    }
+
+    /**
+     * Cancels the running check, if any, without starting another.
+     */
+    public void cancel() {
+        synchronized (lock) {
+            pendingLayout = null;
+            pendingCheckpoint = null;
+            latestCheck += 1;
+        }
+    }
+
+    /**
+     * Cancels the running check and stops the worker thread for good.
+     */
+    public void stop() {
+        synchronized (lock) {
+            stopped = true;
+            latestCheck += 1;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * @param checkId   The id of a check.
+     * @return          Returns whether no check has been started or cancelled since the given
+     *                  check.
+     */
+    public boolean isLatest(long checkId) {
+        return checkId == latestCheck;
+    }
+
+    /**
+     * Takes up the pending checks one at a time until the monitor is stopped.
+     */
+    private void work() {
+        while (true) {
+            String checkLayout;
+            int[] checkCheckpoint;
+            long checkId;
+            synchronized (lock) {
+                while (pendingCheckpoint == null && !stopped) {
+                    try {
+                        lock.wait();
+                    }
+                    catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (stopped) {
+                    return;
+                }
+                checkLayout = pendingLayout;
+                checkCheckpoint = pendingCheckpoint;
+                checkId = latestCheck;
+                pendingLayout = null;
+                pendingCheckpoint = null;
+            }
+
+            Verdict verdict;
+            try {
+                verdict = examine(checkLayout, checkCheckpoint, checkId);
+            }
+            catch (LevelLoadException e) {
+                verdict = Verdict.UNKNOWN;
+            }
+            catch (InterruptedException e) {
+                return;
+            }
+            if (verdict != null && isLatest(checkId)) {
+                listener.onVerdict(checkId, verdict);
+            }
+        }
+    }
+
+    /**
+     * Works out whether a position can be solved.
+     *
+     * @param checkLayout       The layout of the level.
+     * @param checkCheckpoint   A checkpoint of the position.
+     * @param checkId           The id of the check.
+     * @return                  Returns the verdict, or null if the check was cancelled.
+     * @throws LevelLoadException       Throws this exception if the layout cannot be loaded.
+     * @throws InterruptedException     Throws this exception if the worker is interrupted.
+     */
+    Verdict examine(String checkLayout, int[] checkCheckpoint, long checkId)
+            throws LevelLoadException, InterruptedException {
+        if (!checkLayout.equals(layout)) {
+            level = new Level(checkLayout);
+            codec = new StateCodec(level);
+            heuristic = new Heuristic(level, codec);
+            state = new char[codec.getStateLength()];
+            checkpoint = codec.newCheckpoint();
+            solvable = new StateTable(codec.getStateLength());
+            unsolvable = new StateTable(codec.getStateLength());
+            layout = checkLayout;
+        }
+
+        level.restoreCheckpoint(checkCheckpoint);
+        if (level.areTargetsFilled()) {
+            return Verdict.SOLVABLE;
+        }
+        codec.encode(checkCheckpoint, state);
+        long hash = level.getStateHash();
+        if (solvable.indexOf(state, hash) >= 0) {
+            return Verdict.SOLVABLE;
+        }
+        if (unsolvable.indexOf(state, hash) >= 0) {
+            return Verdict.UNSOLVABLE;
+        }
+        if (heuristic.estimate(checkCheckpoint) == Heuristic.UNSOLVABLE) {
+            remember(false, state, hash);
+            return Verdict.UNSOLVABLE;
+        }
+
+        StateTable table = new StateTable(codec.getStateLength());
+        table.add(state, hash, -1, -1);
+        long[] open = new long[64];
+        int openSize = 1;
+        int expanded = 0;
+        busyNanos = 0;
+        sliceStart = System.nanoTime();
+
+        while (openSize > 0) {
+            if (expanded % SLICE == 0) {
+                if (!isLatest(checkId)) {
+                    return null;
+                }
+                if (!throttle()) {
+                    return Verdict.UNKNOWN;
+                }
+            }
+            expanded += 1;
+
+            //the open list is a binary heap of keys packing the estimate above the index
+            long top = open[0];
+            openSize -= 1;
+            siftDown(open, openSize, open[openSize]);
+            int current = (int) top;
+            table.read(current, state);
+            codec.decode(state, checkpoint);
+            level.restoreCheckpoint(checkpoint);
+
+            for (int i = 0; i < DIRECTIONS.length; i++) {
+                if (!level.processInput(DIRECTIONS[i])) {
+                    continue;
+                }
+                int[] packed = level.saveCheckpoint();
+                codec.encode(packed, state);
+                hash = level.getStateHash();
+                boolean filled = level.areTargetsFilled();
+                level.revertState();
+
+                if (filled || solvable.indexOf(state, hash) >= 0) {
+                    remember(true, state, hash);
+                    for (int index = current; index >= 0; index = table.getParent(index)) {
+                        table.read(index, state);
+                        remember(true, state, table.getHash(index));
+                    }
+                    return Verdict.SOLVABLE;
+                }
+                if (unsolvable.indexOf(state, hash) >= 0) {
+                    continue;
+                }
+                int added = table.add(state, hash, current, i);
+                if (added < 0) {
+                    continue;
+                }
+                int estimate = heuristic.estimate(packed);
+                if (estimate == Heuristic.UNSOLVABLE) {
+                    continue;
+                }
+                if (openSize == open.length) {
+                    open = Arrays.copyOf(open, openSize * 2);
+                }
+                siftUp(open, openSize, ((long) estimate << 32) | added);
+                openSize += 1;
+                if (table.size() >= stateLimit) {
+                    return Verdict.UNKNOWN;
+                }
+            }
+        }
+
+        //every state the search reached, and everything reachable from them, is a dead end
+        for (int index = 0; index < table.size(); index++) {
+            table.read(index, state);
+            remember(false, state, table.getHash(index));
+        }
+        return Verdict.UNSOLVABLE;
+    }
+
+    /**
+     * Sleeps for long enough to keep the time spent working since the last call within the cpu
+     * share, and keeps count of the working time.
+     *
+     * @return  Returns whether the check is still within its time limit.
+     * @throws InterruptedException     Throws this exception if the worker is interrupted.
+     */
+    private boolean throttle() throws InterruptedException {
+        long now = System.nanoTime();
+        long worked = now - sliceStart;
+        busyNanos += worked;
+        if (busyNanos > timeLimitNanos) {
+            return false;
+        }
+        int share = cpuShare;
+        if (share < 100) {
+            long rest = worked * (100 - share) / share;
+            Thread.sleep(rest / 1000000, (int) (rest % 1000000));
+        }
+        sliceStart = System.nanoTime();
+        return true;
+    }
+
+    /**
+     * Adds a state to the states known to be solvable or unsolvable, forgetting the ones known
+     * so far first if there are already too many.
+     *
+     * @param isSolvable    Whether the state is solvable.
+     * @param packed        The packed state.
+     * @param hash          The hash of the state.
+     */
+    private void remember(boolean isSolvable, char[] packed, long hash) {
+        StateTable known = isSolvable ? solvable : unsolvable;
+        if (known.size() >= KNOWN_LIMIT) {
+            known = new StateTable(codec.getStateLength());
+            if (isSolvable) {
+                solvable = known;
+            }
+            else {
+                unsolvable = known;
+            }
+        }
+        known.add(packed, hash, -1, -1);
+    }
+
+    /**
+     * Adds a key to a binary heap.
+     *
+     * @param heap  The heap.
+     * @param size  The number of keys in the heap, which must be less than its length.
+     * @param key   The key to add.
+     */
+    private static void siftUp(long[] heap, int size, long key) {
+        int i = size;
+        while (i > 0 && heap[(i - 1) / 2] > key) {
+            heap[i] = heap[(i - 1) / 2];
+            i = (i - 1) / 2;
+        }
+        heap[i] = key;
+    }
+
+    /**
+     * Puts a key in place of the top of a binary heap whose top has been taken.
+     *
+     * @param heap  The heap.
+     * @param size  The number of keys left in the heap.
+     * @param last  The key which was last in the heap.
+     */
+    private static void siftDown(long[] heap, int size, long last) {
+        int i = 0;
+        while (2 * i + 1 < size) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && heap[child + 1] < heap[child]) {
+                child += 1;
+            }
+            if (heap[child] >= last) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = last;
+    }
+}
@@ -0,0 +1,658 @@
+package com.jhsullivan.pushpull.solver;
+
+
+import com.jhsullivan.pushpull.game_logic.CompiledLevel;
+import com.jhsullivan.pushpull.game_logic.Level;
+import com.jhsullivan.pushpull.game_logic.LevelLoadException;
+import com.jhsullivan.pushpull.game_logic.Vector2D;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Finds a shortest solution to a Level, i.e. the fewest inputs that fill every target, by
+ * searching the states of the level, breadth-first unless set otherwise.
+ * <p>
+ * The search runs on a private copy of the level, and moves it with the level's own
+ * {@link Level#processInput} and {@link Level#revertState()}, so the rules are exactly those of
+ * the game.  States are packed by a {@link StateCodec} and stored in a {@link StateTable}, which
+ * is also the queue of the search, since states are added to it in the order in which they are
+ * found.  For larger levels, informed searches guided by a {@link Heuristic} can be chosen
+ * instead; see {@link Strategy}.
+ * <p>
+ * The solver needs nothing from Android, so it can be run on a plain JVM, e.g. by
+ * {@link #main(String[])} to check a whole directory of levels.  For large levels, see the
+ * {@link ParallelSolver}.
+ */
+public class Solver {
+
+
+    /**
+     * The ways in which the Solver can search.
+     * <p>
+     * BREADTH_FIRST needs no estimate, but stores every state closer to the start than the
+     * solution.  A_STAR expands the states in order of their moves so far plus a {@link Heuristic}
+     * estimate of the moves still needed, so it stores far fewer states when the estimate is
+     * good.  IDA_STAR searches depth-first within a growing bound on that sum, storing only the
+     * current line of moves, so it needs very little memory (e.g. for running on a device) at the
+     * cost of expanding some states many times.  All three find a shortest solution.
+     */
+    public enum Strategy {BREADTH_FIRST, A_STAR, IDA_STAR}
+
+    //The most states a search stores before giving up, unless set otherwise.
+    public static final int DEFAULT_STATE_LIMIT = 1 << 22;
+
+    //The size past which main's solution cache is compacted.
+    private static final long CACHE_BYTES = 16L * 1024 * 1024;
+
+    //The longest solution that IDA_STAR looks for.
+    public static final int MAX_DEPTH = 256;
+
+    private static final Vector2D.Direction[] DIRECTIONS = Vector2D.Direction.values();
+
+    //IDA_STAR's result for a line of moves that reached a solution.
+    private static final int FOUND = -1;
+
+    //A* orders its open list by keys packing the estimate of the total moves, then the moves so
+    //far (more first), then the index of the state.
+    private static final int COST_BITS = 15;
+    private static final int MAX_COST = (1 << COST_BITS) - 1;
+
+    private final Level level;
+    private final int[] initial;
+    private final StateCodec codec;
+    private final char[] state;
+    private final int[] checkpoint;
+    private Heuristic heuristic;
+
+    private Strategy strategy = Strategy.BREADTH_FIRST;
+    private int stateLimit = DEFAULT_STATE_LIMIT;
+    private long timeLimitNanos = 0;
+    private long deadline;
+    private int weight = 1;
+
+    private StateTable table;
+    private boolean cutOff = false;
+    private long nodesExpanded = 0;
+    private long peakMemory = 0;
+
+    //A*'s moves so far for each stored state, and its open list as a binary heap of keys.
+    private int[] costs;
+    private long[] open;
+    private int openSize;
+
+    //IDA_STAR's current line of moves, with the hash of the state after each.
+    private final byte[] pathDirections = new byte[MAX_DEPTH];
+    private final long[] pathHashes = new long[MAX_DEPTH + 1];
+    private int pathLength;
+
+
+    /**
+     * Constructor for a Solver which solves the specified Level from its current state.  The
+     * Level itself is not changed.
+     *
+     * @param level                 The Level to solve.
+     * @throws LevelLoadException   Throws this exception if the Level's layout cannot be loaded
+     *                              again.
+     */
+    public Solver(Level level) throws LevelLoadException {
+        this.level = new Level(level.getLayout());
+        this.initial = level.saveCheckpoint();
+        this.level.restoreCheckpoint(initial);
+        this.codec = new StateCodec(this.level);
+        this.state = new char[codec.getStateLength()];
+        this.checkpoint = codec.newCheckpoint();
+        this.table = new StateTable(codec.getStateLength());
+    }
+
+    /**
+     * Constructor for a Solver which solves the level with the specified layout from its
+     * starting state.
+     *
+     * @param layout                The layout of the level to solve.
+     * @throws LevelLoadException   Throws this exception if the layout is not properly formatted.
+     */
+    public Solver(String layout) throws LevelLoadException {
+        this(new Level(layout));
+    }
+
+    /**
+     * Sets the way in which to search.  The default is BREADTH_FIRST.
+     *
+     * @param strategy  The strategy to use.
+     */
+    public void setStrategy(Strategy strategy) {
+        this.strategy = strategy;
+    }
+
+    /**
+     * Sets the most states a search may store before giving up, or for IDA_STAR, which stores
+     * no states, the most states it may expand.  Each stored state takes about 20 bytes, plus
+     * twice the number of blocks and players.
+     *
+     * @param stateLimit    The most states to store.
+     */
+    public void setStateLimit(int stateLimit) {
+        this.stateLimit = Math.max(1, stateLimit);
+    }
+
+    /**
+     * Sets the longest a search may run before giving up, e.g. so that it can answer within a
+     * fixed time on a phone.  By default there is no time limit.
+     *
+     * @param millis    The time limit, in milliseconds, or 0 for none.
+     */
+    public void setTimeLimit(long millis) {
+        this.timeLimitNanos = Math.max(0, millis) * 1000000;
+    }
+
+    /**
+     * Sets how many times the heuristic's estimate counts against the moves so far in A*, i.e.
+     * weighted A*.  With a weight above 1, the estimate is also the total distance of the blocks
+     * from their targets (see {@link Heuristic#estimateTotal(int[])}) rather than the largest,
+     * so A* heads for the targets far more directly, and solves levels which are too large to
+     * solve optimally, but its solutions may be much longer than a shortest one.  The default is
+     * 1, which finds a shortest solution.
+     *
+     * @param weight    The weight of the estimate.
+     */
+    public void setWeight(int weight) {
+        this.weight = Math.max(1, weight);
+    }
+
+    /**
+     * Searches for a shortest solution, using the current strategy.
+     *
+     * @return  Returns the inputs of a shortest solution, which is empty if the level starts
+     *          solved, or null if there is no solution (or none was found before the state limit
+     *          or time limit was reached; see {@link #isCutOff()}).
+     */
+    public List<Vector2D.Direction> solve() {
+        table = new StateTable(codec.getStateLength());
+        deadline = timeLimitNanos > 0 ? System.nanoTime() + timeLimitNanos : Long.MAX_VALUE;
+        cutOff = false;
+        nodesExpanded = 0;
+        peakMemory = 0;
+
+        level.restoreCheckpoint(initial);
+        if (level.areTargetsFilled()) {
+            return new ArrayList<>();
+        }
+        if (strategy != Strategy.BREADTH_FIRST && heuristic == null) {
+            heuristic = new Heuristic(level, codec);
+        }
+
+        switch (strategy) {
+            case A_STAR:
+                return solveAStar();
+            case IDA_STAR:
+                return solveIdaStar();
+            default:
+                return solveBreadthFirst();
+        }
+    }
+
+    /**
+     * @return  Returns whether the last search gave up because it reached the state limit, the
+     *          time limit, or for IDA_STAR, the maximum depth, rather than because every
+     *          reachable state had been searched.
+     */
+    public boolean isCutOff() {
+        return cutOff;
+    }
+
+    /**
+     * @return  Returns the number of states stored by the last search.
+     */
+    public int getStateCount() {
+        return table.size();
+    }
+
+    /**
+     * @return  Returns the number of states whose moves were tried by the last search, counting
+     *          a state again each time it was expanded again.
+     */
+    public long getNodesExpanded() {
+        return nodesExpanded;
+    }
+
+    /**
+     * @return  Returns an estimate of the most bytes the last search's own data took up at once,
+     *          i.e. not counting the copy of the level or the heuristic's distance maps.
+     */
+    public long getPeakMemory() {
+        return peakMemory;
+    }
+
+    /**
+     * Searches breadth-first, using the table of states as the queue.
+     *
+     * @return  Returns a shortest solution, or null if none was found.
+     */
+    private List<Vector2D.Direction> solveBreadthFirst() {
+        addState(level.saveCheckpoint(), -1, -1);
+        try {
+            for (int current = 0; current < table.size(); current++) {
+                if (isOutOfTime()) {
+                    return null;
+                }
+                restoreState(current);
+                nodesExpanded += 1;
+                for (int i = 0; i < DIRECTIONS.length; i++) {
+                    if (!level.processInput(DIRECTIONS[i])) {
+                        continue;
+                    }
+                    int added = addState(level.saveCheckpoint(), current, i);
+                    boolean solved = level.areTargetsFilled();
+                    level.revertState();
+                    if (added >= 0 && solved) {
+                        return getPath(added);
+                    }
+                    if (table.size() >= stateLimit) {
+                        cutOff = true;
+                        return null;
+                    }
+                }
+            }
+            return null;
+        }
+        finally {
+            peakMemory = (long) table.size() * stateBytes();
+        }
+    }
+
+    /**
+     * Searches with A*, always expanding the open state with the lowest estimate of total moves.
+     * Since the heuristic is consistent, a state's moves so far are the fewest possible once it
+     * is expanded, but a shorter way may be found to a state that is still open, in which case
+     * it is added to the open list again and the old entry is skipped.  With a weight above 1
+     * (see {@link #setWeight(int)}), a state may also be expanded again once a shorter way to it
+     * is found.
+     *
+     * @return  Returns a shortest solution (or with a weight, a solution), or null if none was
+     *          found.
+     */
+    private List<Vector2D.Direction> solveAStar() {
+        costs = new int[1024];
+        open = new long[1024];
+        openSize = 0;
+
+        int[] start = level.saveCheckpoint();
+        int estimate = estimate(start);
+        addState(start, -1, -1);
+        costs[0] = 0;
+        try {
+            if (estimate != Heuristic.UNSOLVABLE) {
+                push(weight * estimate, 0, 0);
+            }
+            while (openSize > 0) {
+                long key = pop();
+                int current = (int) key;
+                int cost = MAX_COST - (int) ((key >>> 32) & MAX_COST);
+                if (cost != costs[current]) {
+                    continue;
+                }
+                restoreState(current);
+                if (level.areTargetsFilled()) {
+                    return getPath(current);
+                }
+                if (isOutOfTime()) {
+                    return null;
+                }
+                nodesExpanded += 1;
+                if (cost + 1 > MAX_COST) {
+                    cutOff = true;
+                    continue;
+                }
+
+                for (int i = 0; i < DIRECTIONS.length; i++) {
+                    if (!level.processInput(DIRECTIONS[i])) {
+                        continue;
+                    }
+                    int[] packed = level.saveCheckpoint();
+                    int added = addState(packed, current, i);
+                    int child = added >= 0 ? added : -1 - added;
+                    if (added >= 0 || cost + 1 < costs[child]) {
+                        if (added >= 0 && child == costs.length) {
+                            costs = Arrays.copyOf(costs, child * 2);
+                        }
+                        costs[child] = cost + 1;
+                        table.setParent(child, current, i);
+                        estimate = estimate(packed);
+                        if (estimate != Heuristic.UNSOLVABLE) {
+                            push(cost + 1 + weight * estimate, cost + 1, child);
+                        }
+                    }
+                    level.revertState();
+                    if (table.size() >= stateLimit) {
+                        cutOff = true;
+                        return null;
+                    }
+                }
+                peakMemory = Math.max(peakMemory, (long) table.size() * (stateBytes() + 4)
+                        + (long) open.length * 8);
+            }
+            return null;
+        }
+        finally {
+            peakMemory = Math.max(peakMemory, (long) table.size() * (stateBytes() + 4)
+                    + (long) open.length * 8);
+            costs = null;
+            open = null;
+        }
+    }
+
+    /**
+     * @param checkpoint    A checkpoint of the level.
+     * @return              Returns A*'s estimate of the moves still needed from the checkpoint,
+     *                      which is only a lower bound with a weight of 1.
+     */
+    private int estimate(int[] checkpoint) {
+        return weight > 1 ? heuristic.estimateTotal(checkpoint) : heuristic.estimate(checkpoint);
+    }
+
+    /**
+     * Adds a state to A*'s open list.
+     *
+     * @param total     The estimate of the total moves of a solution through the state.
+     * @param cost      The moves so far.
+     * @param index     The index of the state.
+     */
+    private void push(int total, int cost, int index) {
+        if (openSize == open.length) {
+            open = Arrays.copyOf(open, openSize * 2);
+        }
+        long key = ((long) Math.min(total, MAX_COST) << (32 + COST_BITS))
+                | ((long) (MAX_COST - cost) << 32) | (index & 0xffffffffL);
+        int i = openSize;
+        openSize += 1;
+        while (i > 0 && open[(i - 1) / 2] > key) {
+            open[i] = open[(i - 1) / 2];
+            i = (i - 1) / 2;
+        }
+        open[i] = key;
+    }
+
+    /**
+     * @return  Returns and removes the smallest key of A*'s open list.
+     */
+    private long pop() {
+        long top = open[0];
+        openSize -= 1;
+        long last = open[openSize];
+        int i = 0;
+        while (2 * i + 1 < openSize) {
+            int child = 2 * i + 1;
+            if (child + 1 < openSize && open[child + 1] < open[child]) {
+                child += 1;
+            }
+            if (open[child] >= last) {
+                break;
+            }
+            open[i] = open[child];
+            i = child;
+        }
+        open[i] = last;
+        return top;
+    }
+
+    /**
+     * Searches with IDA*, i.e. depth-first within a bound on the moves so far plus the estimate
+     * of the moves still needed, raising the bound to the smallest sum that went over it until a
+     * solution is found.  The level is moved with processInput and revertState, so no states
+     * are stored, and a line of moves is only cut short if it returns to a state already on it.
+     *
+     * @return  Returns a shortest solution, or null if none was found.
+     */
+    private List<Vector2D.Direction> solveIdaStar() {
+        //every move of the current line must stay in the level's undo history
+        long historyBytes = 4L * (2 + 2 * level.getGameObjects().size()) * MAX_DEPTH;
+        level.setHistoryLimit((int) Math.min(Integer.MAX_VALUE, historyBytes));
+        peakMemory = historyBytes + MAX_DEPTH * 9;
+        pathLength = 0;
+        pathHashes[0] = level.getStateHash();
+
+        int bound = heuristic.estimate(level.saveCheckpoint());
+        while (bound != Heuristic.UNSOLVABLE) {
+            if (bound > MAX_DEPTH) {
+                cutOff = true;
+                return null;
+            }
+            int result = searchWithin(0, bound);
+            if (result == FOUND) {
+                List<Vector2D.Direction> path = new ArrayList<>();
+                for (int i = 0; i < pathLength; i++) {
+                    path.add(DIRECTIONS[pathDirections[i]]);
+                }
+                return path;
+            }
+            if (cutOff) {
+                return null;
+            }
+            bound = result;
+        }
+        return null;
+    }
+
+    /**
+     * Searches depth-first from the current state of the level for a solution within the bound,
+     * leaving the level and the current line of moves at the solution if one is found.
+     *
+     * @param cost      The moves so far.
+     * @param bound     The bound on the moves so far plus the estimate of the moves needed.
+     * @return          Returns FOUND if a solution was found, or else the smallest sum that went
+     *                  over the bound, or UNSOLVABLE if none did.
+     */
+    private int searchWithin(int cost, int bound) {
+        int estimate = heuristic.estimate(level.saveCheckpoint());
+        if (estimate == Heuristic.UNSOLVABLE) {
+            return Heuristic.UNSOLVABLE;
+        }
+        if (cost + estimate > bound) {
+            return cost + estimate;
+        }
+        if (level.areTargetsFilled()) {
+            return FOUND;
+        }
+        if (nodesExpanded >= stateLimit || isOutOfTime()) {
+            cutOff = true;
+            return Heuristic.UNSOLVABLE;
+        }
+        nodesExpanded += 1;
+
+        int smallest = Heuristic.UNSOLVABLE;
+        for (int i = 0; i < DIRECTIONS.length && !cutOff; i++) {
+            if (!level.processInput(DIRECTIONS[i])) {
+                continue;
+            }
+            long hash = level.getStateHash();
+            boolean repeated = false;
+            for (int j = 0; j <= pathLength && !repeated; j++) {
+                repeated = pathHashes[j] == hash;
+            }
+            if (!repeated) {
+                pathDirections[pathLength] = (byte) i;
+                pathLength += 1;
+                pathHashes[pathLength] = hash;
+                int result = searchWithin(cost + 1, bound);
+                if (result == FOUND) {
+                    return FOUND;
+                }
+                pathLength -= 1;
+                smallest = Math.min(smallest, result);
+            }
+            level.revertState();
+        }
+        return smallest;
+    }
+
+    /**
+     * Checks the time limit, though only every so often, since reading the clock is slow next
+     * to expanding a state.
+     *
+     * @return  Returns whether the search has run out of time, in which case it is cut off.
+     */
+    private boolean isOutOfTime() {
+        if ((nodesExpanded & 0xff) != 0 || System.nanoTime() <= deadline) {
+            return false;
+        }
+        cutOff = true;
+        return true;
+    }
+
+    /**
+     * Stores a state, unless it has been stored already.
+     *
+     * @param packed        A checkpoint of the state.
+     * @param parent        The index of the state from which the state was reached.
+     * @param direction     The ordinal of the input which reached the state.
+     * @return              Returns the index of the state if it was new, or else -1 minus the
+     *                      index of the stored state.
+     */
+    private int addState(int[] packed, int parent, int direction) {
+        codec.encode(packed, state);
+        return table.add(state, level.getStateHash(), parent, direction);
+    }
+
+    /**
+     * Puts the level into a stored state.
+     *
+     * @param index     The index of the state.
+     */
+    private void restoreState(int index) {
+        table.read(index, state);
+        codec.decode(state, checkpoint);
+        level.restoreCheckpoint(checkpoint);
+    }
+
+    /**
+     * @return  Returns the bytes taken up by each state in the table of states.
+     */
+    private long stateBytes() {
+        return 2L * codec.getStateLength() + StateTable.OVERHEAD_BYTES;
+    }
+
+    /**
+     * @param index     The index of a stored state.
+     * @return          Returns the inputs which lead from the starting state to the stored state.
+     */
+    private List<Vector2D.Direction> getPath(int index) {
+        List<Vector2D.Direction> path = new ArrayList<>();
+        while (table.getParent(index) >= 0) {
+            path.add(DIRECTIONS[table.getDirection(index)]);
+            index = table.getParent(index);
+        }
+        Collections.reverse(path);
+        return path;
+    }
+
+    /**
+     * Reads a level file in the same way as the LevelManager reads the level assets, i.e.
+     * skipping empty lines.
+     *
+     * @param file          The level file.
+     * @return              Returns the layout of the level.
+     * @throws IOException  Throws this exception if the file cannot be read.
+     */
+    public static String readLayout(File file) throws IOException {
+        return CompiledLevel.readLayout(new FileInputStream(file));
+    }
+
+    /**
+     * Lists the level files named on a command line, where a directory stands for all of the
+     * .csv files in it.
+     *
+     * @param args  The command line arguments.
+     * @param from  The index of the first argument which names a file or directory.
+     * @return      Returns the level files, in order.
+     */
+    static List<File> listLevelFiles(String[] args, int from) {
+        List<File> files = new ArrayList<>();
+        for (int i = from; i < args.length; i++) {
+            File file = new File(args[i]);
+            File[] children = file.listFiles();
+            if (children == null) {
+                files.add(file);
+                continue;
+            }
+            Arrays.sort(children);
+            for (File child : children) {
+                if (child.getName().endsWith(".csv")) {
+                    files.add(child);
+                }
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Solves every level file given, printing the length of a shortest solution of each.  A
+     * directory stands for all of the .csv files in it.  Exits with a status of 1 if any level
+     * fails to load or cannot be solved, so it can be used to check levels automatically.
+     * <p>
+     * If the first arguments are "-cache" and a directory, results are kept in a
+     * {@link SolutionCache} there, and levels whose layouts already have a result which was not
+     * cut off are not solved again.
+     *
+     * @param args          The level files and directories to solve, optionally after the
+     *                      cache directory.
+     * @throws IOException  Throws this exception if a file cannot be read.
+     */
+    public static void main(String[] args) throws IOException {
+        SolutionCache cache = null;
+        int from = 0;
+        if (args.length >= 2 && args[0].equals("-cache")) {
+            cache = new SolutionCache(new File(args[1]), CACHE_BYTES);
+            from = 2;
+        }
+
+        boolean failed = false;
+        try {
+            for (File file : listLevelFiles(args, from)) {
+                try {
+                    String layout = readLayout(file);
+                    SolutionCache.Result result = cache == null ? null : cache.get(layout);
+                    String source = "cached, ";
+                    if (result == null || result.isCutOff()) {
+                        Solver solver = new Solver(layout);
+                        long start = System.currentTimeMillis();
+                        List<Vector2D.Direction> solution = solver.solve();
+                        result = new SolutionCache.Result(solution, solver.isCutOff(),
+                                System.currentTimeMillis() - start, solver.getStateCount());
+                        if (cache != null) {
+                            cache.put(layout, result);
+                        }
+                        source = "";
+                    }
+
+                    if (result.getSolution() != null) {
+                        System.out.println(file.getName() + ": " + result.getSolution().size()
+                                + " moves, " + source + result.getStateCount() + " states");
+                    }
+                    else {
+                        failed = true;
+                        System.out.println(file.getName() + ": " + source
+                                + (result.isCutOff() ? "gave up after " : "no solution in ")
+                                + result.getStateCount() + " states");
+                    }
+                }
+                catch (LevelLoadException e) {
+                    failed = true;
+                    System.out.println(file.getName() + ": " + e.getMessage());
+                }
+            }
+        }
+        finally {
+            if (cache != null) {
+                cache.close();
+            }
+        }
+        if (failed) {
+            System.exit(1);
+        }
+    }
+}
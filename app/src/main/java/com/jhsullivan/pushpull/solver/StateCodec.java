@@ -0,0 +1,179 @@
+package com.jhsullivan.pushpull.solver;
+
+
+import com.jhsullivan.pushpull.game_logic.Level;
+import com.jhsullivan.pushpull.game_objects.Block;
+import com.jhsullivan.pushpull.game_objects.BlockCluster;
+import com.jhsullivan.pushpull.game_objects.ClusterBody;
+import com.jhsullivan.pushpull.game_objects.GameObject;
+import com.jhsullivan.pushpull.game_objects.Player;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Packs the states of a Level into short arrays of chars for searching, and unpacks them again.
+ * <p>
+ * A packed state holds the cells of the blocks, sorted, since any two blocks are
+ * interchangeable; then the cell of one block of every cluster, since the rest of the cluster
+ * moves with it, along with the cell and type of every player.  Walls never move, so they are
+ * left out.  Since a level has at most 256 rows and columns, every cell fits in a char.  Two
+ * states of the same level pack to the same chars exactly when they are the same state, up to
+ * swapping blocks.
+ */
+class StateCodec {
+
+
+    //The checkpoint of the level's starting state, which also holds the cells of the walls.
+    private final int[] initial;
+
+    //Where the parts of a state go in a checkpoint of the level:  the cells of the blocks, then
+    //the cells of the players and of the first block of each cluster, along with the types of
+    //the players.  The cells of the other blocks of a cluster are worked out from the first.
+    private final int[] blockIndexes;
+    private final int[] fixedIndexes;
+    private final int[] derivedIndexes;
+    private final int[] derivedSources;
+    private final int[] derivedOffsets;
+
+    //The indexes of the first block of each cluster.
+    private final int[] bodyIndexes;
+
+
+    /**
+     * Constructor for a StateCodec for the states of the specified Level.
+     *
+     * @param level     The Level, in any state.
+     */
+    StateCodec(Level level) {
+        this.initial = level.saveCheckpoint();
+
+        List<GameObject> gameObjects = level.getGameObjects();
+        List<Integer> blocks = new ArrayList<>();
+        List<Integer> fixed = new ArrayList<>();
+        List<Integer> derived = new ArrayList<>();
+        List<Integer> sources = new ArrayList<>();
+        List<Integer> bodies = new ArrayList<>();
+        Map<ClusterBody, Integer> firstMembers = new HashMap<>();
+        for (int i = 0; i < gameObjects.size(); i++) {
+            GameObject gameObject = gameObjects.get(i);
+            if (gameObject instanceof Block) {
+                blocks.add(i);
+            }
+            else if (gameObject instanceof Player) {
+                fixed.add(i);
+            }
+            else if (gameObject instanceof BlockCluster) {
+                ClusterBody body = ((BlockCluster) gameObject).getBody();
+                Integer first = firstMembers.get(body);
+                if (first == null) {
+                    firstMembers.put(body, i);
+                    fixed.add(i);
+                    bodies.add(i);
+                }
+                else {
+                    derived.add(i);
+                    sources.add(first);
+                }
+            }
+        }
+        for (int i = gameObjects.size(); i < initial.length; i++) {
+            fixed.add(i);
+        }
+
+        this.blockIndexes = toArray(blocks);
+        this.fixedIndexes = toArray(fixed);
+        this.derivedIndexes = toArray(derived);
+        this.derivedSources = toArray(sources);
+        this.bodyIndexes = toArray(bodies);
+        this.derivedOffsets = new int[derivedIndexes.length];
+        for (int i = 0; i < derivedIndexes.length; i++) {
+            derivedOffsets[i] = initial[derivedIndexes[i]] - initial[derivedSources[i]];
+        }
+    }
+
+    /**
+     * @return  Returns the number of chars in a packed state.
+     */
+    int getStateLength() {
+        return blockIndexes.length + fixedIndexes.length;
+    }
+
+    /**
+     * @return  Returns the indexes in a checkpoint of the cells of the blocks.
+     */
+    int[] getBlockIndexes() {
+        return blockIndexes;
+    }
+
+    /**
+     * @return  Returns the indexes in a checkpoint of the cells of the first block of each
+     *          cluster, which stand for the clusters as a whole.
+     */
+    int[] getBodyIndexes() {
+        return bodyIndexes;
+    }
+
+    /**
+     * @return  Returns a new checkpoint for unpacking states into, i.e. a copy of the checkpoint
+     *          the codec was made from.
+     */
+    int[] newCheckpoint() {
+        return initial.clone();
+    }
+
+    /**
+     * Packs a state.
+     *
+     * @param checkpoint    A checkpoint of the level, from {@link Level#saveCheckpoint()}.
+     * @param state         The array into which to pack the state.
+     */
+    void encode(int[] checkpoint, char[] state) {
+        for (int i = 0; i < blockIndexes.length; i++) {
+            char cell = (char) checkpoint[blockIndexes[i]];
+            int j = i;
+            while (j > 0 && state[j - 1] > cell) {
+                state[j] = state[j - 1];
+                j -= 1;
+            }
+            state[j] = cell;
+        }
+        int offset = blockIndexes.length;
+        for (int i = 0; i < fixedIndexes.length; i++) {
+            state[offset + i] = (char) checkpoint[fixedIndexes[i]];
+        }
+    }
+
+    /**
+     * Unpacks a state into a checkpoint, which can then be restored with
+     * {@link Level#restoreCheckpoint(int[])}.
+     *
+     * @param state         The packed state.
+     * @param checkpoint    A checkpoint from {@link #newCheckpoint()}, into which to unpack it.
+     */
+    void decode(char[] state, int[] checkpoint) {
+        for (int i = 0; i < blockIndexes.length; i++) {
+            checkpoint[blockIndexes[i]] = state[i];
+        }
+        int offset = blockIndexes.length;
+        for (int i = 0; i < fixedIndexes.length; i++) {
+            checkpoint[fixedIndexes[i]] = state[offset + i];
+        }
+        for (int i = 0; i < derivedIndexes.length; i++) {
+            checkpoint[derivedIndexes[i]] = checkpoint[derivedSources[i]] + derivedOffsets[i];
+        }
+    }
+
+    /**
+     * @param list  A list of ints.
+     * @return      Returns the ints in an array.
+     */
+    private static int[] toArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+}
@@ -0,0 +1,200 @@
+package com.jhsullivan.pushpull.solver;
+
+
+import java.util.Arrays;
+
+/**
+ * Stores the distinct states found by a search, each with the state it was reached from and the
+ * input that reached it.
+ * <p>
+ * The packed states are kept back to back in a single array of chars, in the order in which
+ * they were added, and are looked up through an open-addressing table of indexes into that
+ * array, hashed by the level's Zobrist hash.  Nothing is created per state, so a table holds
+ * millions of states in little more than the size of the packed states themselves.
+ * <p>
+ * A StateTable is not thread-safe.
+ */
+class StateTable {
+
+
+    //The bytes used per state, besides the packed state itself:  the hash, the parent, the
+    //direction, and two slots of the lookup table.
+    static final int OVERHEAD_BYTES = 8 + 4 + 1 + 2 * 4;
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final int stateLength;
+
+    private char[] states;
+    private long[] hashes;
+    private int[] parents;
+    private byte[] directions;
+    private int size = 0;
+    private int[] slots;
+
+
+    /**
+     * Constructor for an empty StateTable.
+     *
+     * @param stateLength   The number of chars in a packed state.
+     */
+    StateTable(int stateLength) {
+        this.stateLength = stateLength;
+        states = new char[INITIAL_CAPACITY * stateLength];
+        hashes = new long[INITIAL_CAPACITY];
+        parents = new int[INITIAL_CAPACITY];
+        directions = new byte[INITIAL_CAPACITY];
+        slots = new int[INITIAL_CAPACITY * 2];
+    }
+
+    /**
+     * Adds a state, unless the table already holds it.
+     *
+     * @param state         The packed state.
+     * @param hash          The hash of the state.
+     * @param parent        The state from which the state was reached, in whatever form the
+     *                      search uses, or -1 for the starting state.
+     * @param direction     The ordinal of the input which reached the state.
+     * @return              Returns the index of the new state, or if the state was already
+     *                      held, -1 minus its index (which is always negative).
+     */
+    int add(char[] state, long hash, int parent, int direction) {
+        int mask = slots.length - 1;
+        int slot = spread(hash) & mask;
+        while (slots[slot] != 0) {
+            int other = slots[slot] - 1;
+            if (hashes[other] == hash && isState(other, state)) {
+                return -1 - other;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        if (size == hashes.length) {
+            grow();
+            return add(state, hash, parent, direction);
+        }
+        slots[slot] = size + 1;
+        System.arraycopy(state, 0, states, size * stateLength, stateLength);
+        hashes[size] = hash;
+        parents[size] = parent;
+        directions[size] = (byte) direction;
+        size += 1;
+        return size - 1;
+    }
+
+    /**
+     * @param state     The packed state.
+     * @param hash      The hash of the state.
+     * @return          Returns the index of the state, or -1 if the table does not hold it.
+     */
+    int indexOf(char[] state, long hash) {
+        int mask = slots.length - 1;
+        int slot = spread(hash) & mask;
+        while (slots[slot] != 0) {
+            int other = slots[slot] - 1;
+            if (hashes[other] == hash && isState(other, state)) {
+                return other;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Copies a stored state.
+     *
+     * @param index     The index of the state.
+     * @param state     The array into which to copy the packed state.
+     */
+    void read(int index, char[] state) {
+        System.arraycopy(states, index * stateLength, state, 0, stateLength);
+    }
+
+    /**
+     * @param index     The index of a state.
+     * @return          Returns the hash of the state.
+     */
+    long getHash(int index) {
+        return hashes[index];
+    }
+
+    /**
+     * @param index     The index of a state.
+     * @return          Returns the state from which the state was reached, or -1 for the
+     *                  starting state.
+     */
+    int getParent(int index) {
+        return parents[index];
+    }
+
+    /**
+     * Changes how a state was reached, i.e. once a shorter way to it has been found.
+     *
+     * @param index         The index of the state.
+     * @param parent        The new state from which the state was reached.
+     * @param direction     The ordinal of the input which reached the state from the parent.
+     */
+    void setParent(int index, int parent, int direction) {
+        parents[index] = parent;
+        directions[index] = (byte) direction;
+    }
+
+    /**
+     * @param index     The index of a state.
+     * @return          Returns the ordinal of the input which reached the state.
+     */
+    int getDirection(int index) {
+        return directions[index];
+    }
+
+    /**
+     * @return  Returns the number of states held.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @param index     The index of a stored state.
+     * @param state     A packed state.
+     * @return          Returns whether the stored state is the same as the packed state.
+     */
+    private boolean isState(int index, char[] state) {
+        int offset = index * stateLength;
+        for (int i = 0; i < stateLength; i++) {
+            if (states[offset + i] != state[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Doubles the storage for states, along with the lookup table.
+     */
+    private void grow() {
+        int capacity = hashes.length * 2;
+        states = Arrays.copyOf(states, capacity * stateLength);
+        hashes = Arrays.copyOf(hashes, capacity);
+        parents = Arrays.copyOf(parents, capacity);
+        directions = Arrays.copyOf(directions, capacity);
+
+        slots = new int[capacity * 2];
+        int mask = slots.length - 1;
+        for (int i = 0; i < size; i++) {
+            int slot = spread(hashes[i]) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = i + 1;
+        }
+    }
+
+    /**
+     * @param hash  A 64-bit hash.
+     * @return      Returns the hash folded into an int.
+     */
+    private static int spread(long hash) {
+        return (int) (hash ^ (hash >>> 32));
+    }
+}
@@ -29,7 +29,8 @@ public class LevelView extends View {
     /**
      * A View which draws all of the visible objects in a given level, as well as a background
      * image.  Automatically resizes and moves its drawing area to occupy the center of the
-     * screen in such a way that it remains a fully visible square.  This class communicates
+     * screen in such a way that it remains a fully visible square, large enough for the longer
+     * side of the level.  This class communicates
      * with the Level class to get the information about object positions/types.  Levels can
      * be changed dynamically, and the LevelView will reflect those changes.
      */
@@ -135,7 +136,7 @@ public class LevelView extends View {
         super.onSizeChanged(w, h, oldw, oldh);
         size = this.getSize();
         radius = size / radiusFactor;
-        actorUnit = size / gridLength;
+        actorUnit = gridLength == 0 ? 0 : size / gridLength;
         marginX = (this.getWidth() - size) / 2;
         marginY = (this.getHeight() - size) / 2 - (textPixels / 2);
 
@@ -156,7 +157,8 @@ public class LevelView extends View {
 
     public void setLevel(Level level) {
         this.level = level;
-        this.gridLength = Level.getGridLength();
+        this.gridLength = Math.max(level.getWidth(), level.getHeight());
+        this.actorUnit = size / gridLength;
         //buildShaders();
         mapDrawingHelpers();
         invalidate();
@@ -202,7 +204,7 @@ public class LevelView extends View {
             count += 1;
         }
 
-        int x = 4 * getActorUnit() + getActorUnit() * 3 / 4 + marginX;
+        int x = (gridLength / 2 - 1) * getActorUnit() + getActorUnit() * 3 / 4 + marginX;
         int y = size + marginY + textPixels;
         canvas.drawText(filled + "/" + count, x, y, textPaint);
     }
@@ -217,8 +219,8 @@ public class LevelView extends View {
         Paint gridPaint = new Paint();
         gridPaint.setARGB(25, 0, 59, 70);
 
-        for (int i = 0; i < 10; i++) {
-            for (int j = 0; j < 10; j++) {
+        for (int i = 0; i < level.getWidth(); i++) {
+            for (int j = 0; j < level.getHeight(); j++) {
                 int x = (i * getActorUnit() + getActorUnit() / 2) + marginX;
                 int y = (j * getActorUnit() + getActorUnit() / 2) + marginY;
 
@@ -14,13 +14,18 @@ import android.view.animation.Animation;
 import android.view.animation.ScaleAnimation;
 import android.widget.ImageButton;
 import android.widget.TextView;
+import android.widget.Toast;
 import com.jhsullivan.pushpull.R;
 import com.jhsullivan.pushpull.game_logic.Level;
 import com.jhsullivan.pushpull.game_logic.LevelLoadException;
 import com.jhsullivan.pushpull.game_logic.LevelManager;
 import com.jhsullivan.pushpull.game_objects.GameObject;
 import com.jhsullivan.pushpull.game_logic.Vector2D;
+import com.jhsullivan.pushpull.solver.HintEngine;
+import com.jhsullivan.pushpull.solver.HintTable;
+import com.jhsullivan.pushpull.solver.SolvabilityMonitor;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Serializable;
 import java.util.Arrays;
 import java.util.Collections;
@@ -41,6 +46,10 @@ import java.util.List;
  *<p>
  * This app saves its instance state to keep track of the current game state, and also tracks
  * the current level and maximum level in a permanent file created via SharedPreferences.
+ *<p>
+ * After each move, a SolvabilityMonitor checks in the background whether the level can still be
+ * solved, and the user is told once if it cannot, so they know to undo or restart.  The hint
+ * button shows the next move of a shortest solution, from a HintEngine.
  *
  *
  */
@@ -68,6 +77,10 @@ public class PlayActivity extends AppCompatActivity {
     public static Resources resourceAccess;
     private boolean canUndo = false;
     private boolean canReset = false;
+    private SolvabilityMonitor solvabilityMonitor;
+    private boolean warnedUnsolvable = false;
+    private HintEngine hintEngine;
+    private boolean hintPending = false;
 
 
     /**
@@ -93,6 +106,18 @@ public class PlayActivity extends AppCompatActivity {
         clickAnimation = new ScaleAnimation(1f, 1.1f,
                 1f, 1.1f, buttonWidth * 2, buttonHeight * 2);
 
+        solvabilityMonitor = new SolvabilityMonitor(new SolvabilityMonitor.Listener() {
+            @Override
+            public void onVerdict(final long checkId, final SolvabilityMonitor.Verdict verdict) {
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        showVerdict(checkId, verdict);
+                    }
+                });
+            }
+        });
+
         try {
             levelManager = new LevelManager(this);
 
@@ -141,6 +166,7 @@ public class PlayActivity extends AppCompatActivity {
     @Override
     protected void onStop() {
         super.onStop();
+        solvabilityMonitor.cancel();
         releaseSound();
     }
 
@@ -152,6 +178,7 @@ public class PlayActivity extends AppCompatActivity {
         super.onDestroy();
         SharedPreferences preferences = this.getPreferences(0);
 
+        solvabilityMonitor.stop();
         releaseSound();
     }
 
@@ -180,16 +207,16 @@ public class PlayActivity extends AppCompatActivity {
         int levelIndex = savedInstanceState.getInt(ActivityUtility.currentLevelID);
         loadLevel(levelIndex);
         soundOn = savedInstanceState.getBoolean(ActivityUtility.soundID);
-        Level level = levelManager.getCurrentLevel();
         Serializable currentSerial = savedInstanceState.getSerializable(ActivityUtility.gameStateID);
         List<GameObject> currentGameState = (List<GameObject>) currentSerial;
-        level.unpackGameObjects(currentGameState);
+        levelManager.restoreGameObjects(currentGameState);
+        solvabilityMonitor.check(levelManager.getCurrentLevel());
     }
 
     /**
-     * Saves the current game state, which includes the position and type of each piece,
-     * the previous position of each piece for the undo button, and the previous type of each
-     * player for the undo button.  Also saves the current level, for reloading.
+     * Saves the current game state, which includes the position and type of each piece.  Also
+     * saves the current level, for reloading.  The undo history is not saved, so it starts over
+     * once the state is restored.
      *
      * @param savedInstanceState  The instance state to save.
      */
@@ -213,6 +240,8 @@ public class PlayActivity extends AppCompatActivity {
             levelManager.reset();
             canUndo = false;
             canReset = false;
+            solvabilityMonitor.cancel();
+            warnedUnsolvable = false;
         }
         catch (LevelLoadException e) {
             ActivityUtility.showAlert("Level Load Error", "There was an error "+
@@ -224,11 +253,13 @@ public class PlayActivity extends AppCompatActivity {
 
     /**
      * Reverts to the state immediately before the last move, called in response to the undo button.
+     * Can be pressed repeatedly to undo further back, as far as the level's history goes.
      */
     public void undo() {
-        canUndo = false;
         levelManager.revertState();
+        canUndo = levelManager.canUndo();
         levelView.setLevel(levelManager.getCurrentLevel());
+        solvabilityMonitor.check(levelManager.getCurrentLevel());
 
     }
 
@@ -276,9 +307,12 @@ public class PlayActivity extends AppCompatActivity {
             editor.apply();
 
             levelManager.setLevel(index);
+            hintEngine = createHintEngine();
             levelView.setLevel(levelManager.getCurrentLevel());
             canReset = false;
             canUndo = false;
+            solvabilityMonitor.cancel();
+            warnedUnsolvable = false;
 
             TextView message = findViewById(R.id.message);
             String levelMessage = levelManager.getCurrentLevel().getMessage();
@@ -291,6 +325,96 @@ public class PlayActivity extends AppCompatActivity {
         }
     }
 
+    /**
+     * Creates the HintEngine for the current level, with the level's hint table if one was
+     * built for it (see {@link HintTable#main(String[])}).
+     *
+     * @return                      Returns the HintEngine.
+     * @throws LevelLoadException   Throws this exception if the level cannot be loaded.
+     */
+    private HintEngine createHintEngine() throws LevelLoadException {
+        String layout = levelManager.getCurrentLevel().getLayout();
+        HintTable table = null;
+        try {
+            InputStream in = getAssets().open("Hints/" + levelManager.getLevelName()
+                                                  + HintTable.EXTENSION);
+            try {
+                table = HintTable.read(in, layout);
+            }
+            finally {
+                in.close();
+            }
+        }
+        catch (IOException e) {
+            //without a table of its own, the level's hints are all searched for
+            table = null;
+        }
+        return new HintEngine(layout, table);
+    }
+
+    /**
+     * Shows the next move of a shortest solution from the current state, called in response to
+     * the hint button.  Most hints are looked up at once; otherwise the hint is searched for on
+     * a background thread, and only shown if nothing has moved in the meantime.
+     */
+    public void showHint() {
+        Level level = levelManager.getCurrentLevel();
+        Vector2D.Direction move = hintEngine.lookUp(level);
+        if (move != null) {
+            showHintMessage(move);
+            return;
+        }
+        if (hintPending) {
+            return;
+        }
+
+        hintPending = true;
+        final HintEngine engine = hintEngine;
+        final int[] checkpoint = level.saveCheckpoint();
+        final long hash = level.getStateHash();
+        Thread search = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Vector2D.Direction found;
+                try {
+                    found = engine.getHint(checkpoint);
+                }
+                catch (LevelLoadException e) {
+                    found = null;
+                }
+                final Vector2D.Direction result = found;
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        hintPending = false;
+                        if (engine == hintEngine
+                                && levelManager.getCurrentLevel().getStateHash() == hash) {
+                            showHintMessage(result);
+                        }
+                    }
+                });
+            }
+        }, "Hint");
+        search.setPriority(Thread.MIN_PRIORITY);
+        search.start();
+    }
+
+    /**
+     * Tells the user which way to move.
+     *
+     * @param move  The move to make, or null if no hint could be found.
+     */
+    private void showHintMessage(Vector2D.Direction move) {
+        String text;
+        if (move == null) {
+            text = "No hint could be found from here.  Try undoing or restarting.";
+        }
+        else {
+            text = "Hint:  swipe " + move.toString().toLowerCase() + ".";
+        }
+        Toast.makeText(context, text, Toast.LENGTH_SHORT).show();
+    }
+
     /**
      * Activates the win event, in response to the player covering all of the targets with blocks.
      * Shows a victory message and advances to the next level after the user clicks it.
@@ -357,6 +481,18 @@ public class PlayActivity extends AppCompatActivity {
             }
         });
 
+        final ImageButton hintButton = findViewById(R.id.hint);
+        hintButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+                if (soundOn) {
+                    actionSoundPlayer.start();
+                }
+                hintButton.startAnimation(clickAnimation);
+                showHint();
+            }
+        });
+
         final ImageButton levelSelect = findViewById(R.id.levelSelect);
         levelSelect.setOnClickListener(new View.OnClickListener() {
             @Override
@@ -392,6 +528,9 @@ public class PlayActivity extends AppCompatActivity {
         ImageButton resetButton = findViewById(R.id.reset);
         resetButton.setOnClickListener(null);
 
+        ImageButton hintButton = findViewById(R.id.hint);
+        hintButton.setOnClickListener(null);
+
         ImageButton levelSelect = findViewById(R.id.levelSelect);
         levelSelect.setOnClickListener(null);
     }
@@ -447,21 +586,50 @@ public class PlayActivity extends AppCompatActivity {
 
     /**
      * Applies input in a given direction to the level and checks for victory.  Called by
-     * the InputController class.
+     * the InputController class.  If something moved and the level is not won, starts checking
+     * in the background whether it can still be solved, which cancels the previous check.
      *
      * @param direction  The direction in which to apply movement.
      */
     public void handleInput(Vector2D.Direction direction) {
-        if (levelManager.getCurrentLevel().processInput(direction)) {
+        boolean moved = levelManager.processInput(direction);
+        if (moved) {
             canUndo = true;
             canReset = true;
         }
         if (levelManager.checkVictory()) {
+            solvabilityMonitor.cancel();
             activateWinEvent();
         }
+        else if (moved) {
+            solvabilityMonitor.check(levelManager.getCurrentLevel());
+        }
         levelView.invalidate();
     }
 
+    /**
+     * Responds to the result of a background check of whether the level can still be solved,
+     * telling the user the first time the level is found to be unsolvable.  Results of checks
+     * which have been overtaken by later moves are ignored.
+     *
+     * @param checkId   The id of the check.
+     * @param verdict   Whether the level can still be solved.
+     */
+    private void showVerdict(long checkId, SolvabilityMonitor.Verdict verdict) {
+        if (!solvabilityMonitor.isLatest(checkId)) {
+            return;
+        }
+
+        if (verdict == SolvabilityMonitor.Verdict.SOLVABLE) {
+            warnedUnsolvable = false;
+        }
+        else if (verdict == SolvabilityMonitor.Verdict.UNSOLVABLE && !warnedUnsolvable) {
+            warnedUnsolvable = true;
+            Toast.makeText(context, "This level can no longer be solved.  Undo or restart " +
+                    "to try again.", Toast.LENGTH_LONG).show();
+        }
+    }
+
     /**
      * Changes to the next win message.  Win messages are cycled through so that each message
      * is shown once, and then the collection is shuffled and it starts over.
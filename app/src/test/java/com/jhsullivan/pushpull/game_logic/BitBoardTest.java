@@ -0,0 +1,133 @@
+package com.jhsullivan.pushpull.game_logic;
+
+import org.junit.Test;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * This class tests the BitBoard, by checking its shifts and its tracking of the words in use
+ * against plain sets of cells.
+ */
+public class BitBoardTest {
+
+
+    /**
+     * Tests that shifting a BitBoard never wraps bits from one row into another, and that bits
+     * on the leading edge are reported as unable to shift.  Expected result: a bit in the last
+     * column cannot shift right, and a bit in the middle moves exactly one cell.
+     */
+    @Test
+    public void testShiftDoesNotWrap() {
+        BitBoard board = new BitBoard(10, 10);
+        board.set(19);
+        assertFalse(board.canShift(Vector2D.Direction.RIGHT));
+        board.shift(Vector2D.Direction.RIGHT);
+        assertTrue(board.isEmpty());
+
+        board.set(63);
+        board.shift(Vector2D.Direction.RIGHT);
+        assertTrue(board.get(64));
+        assertEquals(1, board.count());
+
+        board.shift(Vector2D.Direction.DOWN);
+        assertTrue(board.get(74));
+        board.shift(Vector2D.Direction.UP);
+        board.shift(Vector2D.Direction.LEFT);
+        assertTrue(board.get(63));
+        assertEquals(1, board.count());
+    }
+
+
+    /**
+     * Applies random operations to BitBoards of several sizes, including the largest allowed
+     * board, and to a plain set of cells in parallel.  Expected result:  the BitBoards always
+     * hold the same cells as the plain sets, so keeping track of the words in use never loses
+     * or keeps a bit that it should not.
+     */
+    @Test
+    public void testBitBoardMatchesBitSet() {
+        Random rng = new Random(3);
+        int max = Level.MAX_GRID_LENGTH;
+        int[][] sizes = {{10, 10}, {13, 7}, {64, 3}, {max, max}};
+        for (int[] size : sizes) {
+            int width = size[0];
+            int height = size[1];
+            BitBoard board = new BitBoard(width, height);
+            BitBoard other = new BitBoard(width, height);
+            BitSet expected = new BitSet();
+            BitSet expectedOther = new BitSet();
+
+            for (int i = 0; i < 2000; i++) {
+                int cell = rng.nextInt(width * height);
+                Vector2D.Direction direction = Vector2D.getRandomDirection(rng);
+                switch (rng.nextInt(6)) {
+                    case 0:
+                        board.set(cell);
+                        expected.set(cell);
+                        break;
+                    case 1:
+                        other.set(cell);
+                        expectedOther.set(cell);
+                        break;
+                    case 2:
+                        board.shift(direction);
+                        expected = shifted(expected, direction, width, height);
+                        break;
+                    case 3:
+                        other.or(board);
+                        expectedOther.or(expected);
+                        break;
+                    case 4:
+                        board.andNot(other);
+                        expected.andNot(expectedOther);
+                        break;
+                    case 5:
+                        if (rng.nextInt(20) == 0) {
+                            other.clearAll();
+                            expectedOther.clear();
+                        }
+                        break;
+                }
+                assertEquals(expected.cardinality(), board.count());
+                assertEquals(expected.nextSetBit(cell), board.nextSetBit(cell));
+                assertEquals(expected.intersects(expectedOther), board.intersects(other));
+            }
+            for (int cell = 0; cell < width * height; cell++) {
+                assertEquals(expected.get(cell), board.get(cell));
+            }
+        }
+    }
+
+
+
+    //--------------------------Helper methods---------------------------------------------------
+
+
+
+
+    /**
+     * Shifts a plain set of cells one cell in a direction, dropping cells that leave the board.
+     *
+     * @param cells         The cells to shift.
+     * @param direction     The direction of the shift.
+     * @param width         The number of columns on the board.
+     * @param height        The number of rows on the board.
+     * @return              Returns the shifted cells.
+     */
+    private static BitSet shifted(BitSet cells, Vector2D.Direction direction, int width,
+                                  int height) {
+        BitSet result = new BitSet();
+        Vector2D unit = Vector2D.getDirectionVector(direction);
+        for (int cell = cells.nextSetBit(0); cell != -1; cell = cells.nextSetBit(cell + 1)) {
+            int x = cell % width + unit.getX();
+            int y = cell / width + unit.getY();
+            if (x >= 0 && x < width && y >= 0 && y < height) {
+                result.set(y * width + x);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,127 @@
+package com.jhsullivan.pushpull.game_logic;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * This class tests the CompiledLevel, by checking that levels built from compiled levels are the
+ * same as those loaded from their layouts.
+ */
+public class CompiledLevelTest {
+
+
+    /**
+     * Compiles every shipped level, writes it, reads it back and builds a level from it.
+     * Expected result:  the built level has the same layout, message and state as the level loaded
+     * from the .csv, and stays the same as it while the same random moves are made in both.
+     *
+     * @throws IOException          Throws this exception if a level file cannot be read.
+     * @throws LevelLoadException   Throws this exception if the Level fails to load due to String
+     *                              not being properly formatted.
+     */
+    @Test
+    public void testShippedLevels() throws IOException, LevelLoadException {
+        File directory = new File("src/main/assets/Levels");
+        if (!directory.isDirectory()) {
+            directory = new File("app/src/main/assets/Levels");
+        }
+        File[] files = directory.listFiles();
+        assertNotNull(files);
+        Arrays.sort(files);
+
+        Random rng = new Random(22);
+        for (File file : files) {
+            String layout = CompiledLevel.readLayout(new FileInputStream(file));
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            CompiledLevel.compile(layout).write(out);
+            assertTrue(file.getName(), out.size() < layout.length());
+
+            CompiledLevel compiled =
+                    CompiledLevel.read(new ByteArrayInputStream(out.toByteArray()));
+            Level expected = new Level(layout);
+            Level actual = compiled.createLevel();
+            assertEquals(file.getName(), layout, actual.getLayout());
+            assertEquals(file.getName(), expected.getMessage(), actual.getMessage());
+            assertEquals(file.getName(), expected.getGameObjects().size(),
+                         actual.getGameObjects().size());
+            assertEquals(file.getName(), expected.getTriggers().size(),
+                         actual.getTriggers().size());
+            for (int i = 0; i < 100; i++) {
+                assertEquals(file.getName(), expected.getStateHash(), actual.getStateHash());
+                Vector2D.Direction direction = Vector2D.getRandomDirection(rng);
+                assertEquals(expected.processInput(direction), actual.processInput(direction));
+            }
+        }
+    }
+
+    /**
+     * Compiles layouts with a size header, with every kind of player, transformer and cluster ID,
+     * and with an empty message.  Expected result:  the compiled levels have the same objects,
+     * while their layouts are put back in the fixed form once written and read, and are kept as
+     * they were until then.
+     *
+     * @throws IOException          Throws this exception if a compiled level cannot be read.
+     * @throws LevelLoadException   Throws this exception if the Level fails to load due to String
+     *                              not being properly formatted.
+     */
+    @Test
+    public void testFixedForm() throws IOException, LevelLoadException {
+        String layout = "[4x2] po,qP,rQ,bR\n wx,1x,&o,ox>";
+        CompiledLevel compiled = CompiledLevel.compile(layout);
+        assertEquals("po,qP,rQ,bR\nwx,1x,&o,ox\n>", compiled.toLayout());
+        assertEquals(layout, compiled.createLevel().getLayout());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        compiled.write(out);
+        Level level = CompiledLevel.read(new ByteArrayInputStream(out.toByteArray()))
+                                   .createLevel();
+        assertEquals(7, level.getGameObjects().size());
+        assertEquals(6, level.getTriggers().size());
+        assertEquals("", level.getMessage());
+        assertEquals(new Level(compiled.toLayout()).getStateHash(), level.getStateHash());
+    }
+
+    /**
+     * Reads data which is not a compiled level, and a compiled level whose kept characters do not
+     * match its cell codes.  Expected result:  an IOException for the first, and a
+     * LevelLoadException once the second is built.
+     *
+     * @throws IOException          Throws this exception if a compiled level cannot be read.
+     * @throws LevelLoadException   Throws this exception if the Level fails to load due to String
+     *                              not being properly formatted.
+     */
+    @Test
+    public void testRejectsBadData() throws IOException, LevelLoadException {
+        try {
+            CompiledLevel.read(new ByteArrayInputStream("xx,xx\nxx,xx".getBytes()));
+            fail("Read a layout as a compiled level.");
+        }
+        catch (IOException e) {
+            //expected
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CompiledLevel.compile("px,xx\nxx,bo").write(out);
+        byte[] bytes = out.toByteArray();
+        int idIndex = bytes.length - 1;
+        assertEquals('p', bytes[idIndex]);
+        bytes[idIndex] = 'P';
+        CompiledLevel compiled = CompiledLevel.read(new ByteArrayInputStream(bytes));
+        try {
+            compiled.createLevel();
+            fail("Built a level with a transformer in place of a player.");
+        }
+        catch (LevelLoadException e) {
+            //expected
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.jhsullivan.pushpull.game_logic;
+
+import com.jhsullivan.pushpull.game_objects.GameObject;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * This class tests DeadCells, the analysis of which cells of a level can never hold a block or
+ * cluster that is later brought onto a target.
+ */
+public class DeadCellsTest {
+
+
+    /**
+     * Analyses a level with a single push player.  Expected result:  a block against the edge of
+     * the grid can never be pushed away from it, so the whole top row and left column are dead,
+     * while the cells from which the block can be pushed around to the target are not.
+     *
+     * @throws LevelLoadException  Throws this exception if the Level fails to load due to String
+     *                             not being properly formatted.
+     */
+    @Test
+    public void testPushOnly() throws LevelLoadException {
+        //                   0  1  2  3
+        String testLayout = "bx,xx,xx,xx\n" + //0
+                            "xx,px,xx,xx\n" + //1
+                            "xx,xx,xx,xo";    //2
+        DeadCells deadCells = new Level(testLayout).getDeadCells();
+        assertTrue(deadCells.isDeadForBlock(0));
+        assertTrue(deadCells.isDeadForBlock(3));
+        assertTrue(deadCells.isDeadForBlock(4));
+        assertTrue(deadCells.isDeadForBlock(8));
+        assertFalse(deadCells.isDeadForBlock(5));
+        assertFalse(deadCells.isDeadForBlock(10));
+        assertFalse(deadCells.isDeadForBlock(11));
+    }
+
+    /**
+     * Analyses a level with a target in the middle, with a pull player, a grab-all player, and a
+     * push player next to a pull transformer.  Expected result:  the block in the corner can be
+     * brought out to the target every time.
+     *
+     * @throws LevelLoadException  Throws this exception if the Level fails to load due to String
+     *                             not being properly formatted.
+     */
+    @Test
+    public void testOtherPlayerTypes() throws LevelLoadException {
+        String[] players = {"qx,xo,xx", "rx,xo,xx", "px,xo,xQ"};
+        for (String row : players) {
+            String testLayout = "bx,xx,xx,xx\n" +
+                                "xx," + row + "\n" +
+                                "xx,xx,xx,xx";
+            Level level = new Level(testLayout);
+            assertFalse(row, level.getDeadCells().isDeadForBlock(0));
+            assertFalse(row, level.getDeadCells().isDead(level.getObjectAt(0, 0)));
+        }
+    }
+
+    /**
+     * Analyses a level with a cluster of two blocks along the top edge, once with a push player
+     * and once with a grab-all player.  Expected result:  the cluster is dead with the push
+     * player only.
+     *
+     * @throws LevelLoadException  Throws this exception if the Level fails to load due to String
+     *                             not being properly formatted.
+     */
+    @Test
+    public void testCluster() throws LevelLoadException {
+        String pushLayout = "1x,1x,xx,xx\n" +
+                            "xx,px,xx,xx\n" +
+                            "xx,xx,xx,xo";
+        Level level = new Level(pushLayout);
+        GameObject cluster = level.getObjectAt(1, 0);
+        assertTrue(level.getDeadCells().isDead(cluster));
+        assertTrue(level.getDeadCells().isDeadForCluster('1', 0));
+
+        String grabLayout = pushLayout.replace('p', 'r');
+        level = new Level(grabLayout);
+        assertFalse(level.getDeadCells().isDead(level.getObjectAt(1, 0)));
+    }
+
+    /**
+     * Analyses levels without any targets to fill, and loads the same layout repeatedly.
+     * Expected result:  nothing is dead without targets, and every Level of a layout shares a
+     * single analysis, whether worked out while loading or later.
+     *
+     * @throws LevelLoadException  Throws this exception if the Level fails to load due to String
+     *                             not being properly formatted.
+     */
+    @Test
+    public void testCachedByLayout() throws LevelLoadException {
+        String testLayout = "bx,xx,xx\n" +
+                            "xx,px,xx\n" +
+                            "xx,xx,xx";
+        DeadCells deadCells = new Level(testLayout, true).getDeadCells();
+        assertEquals(0, deadCells.getDeadBlockCells().count());
+        assertSame(deadCells, new Level(testLayout).getDeadCells());
+        assertSame(deadCells, DeadCells.of(new Level(testLayout, false)));
+    }
+}
@@ -0,0 +1,122 @@
+package com.jhsullivan.pushpull.game_logic;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * This class tests the LevelPack, by packing the shipped levels and reading them back.
+ */
+public class LevelPackTest {
+
+
+    /**
+     * Packs every shipped level, then opens the pack both memory mapped and read into memory.
+     * Expected result:  either way, the pack has every level under its name and size, and each
+     * level decodes to the same layout as its .csv.
+     *
+     * @throws IOException          Throws this exception if a level file cannot be read.
+     * @throws LevelLoadException   Throws this exception if the Level fails to load due to String
+     *                              not being properly formatted.
+     */
+    @Test
+    public void testShippedLevels() throws IOException, LevelLoadException {
+        File directory = new File("src/main/assets/Levels");
+        if (!directory.isDirectory()) {
+            directory = new File("app/src/main/assets/Levels");
+        }
+        File[] files = directory.listFiles();
+        assertNotNull(files);
+        Arrays.sort(files);
+
+        List<String> names = new ArrayList<>();
+        List<String> layouts = new ArrayList<>();
+        List<CompiledLevel> levels = new ArrayList<>();
+        for (File file : files) {
+            String layout = CompiledLevel.readLayout(new FileInputStream(file));
+            names.add(file.getName().replace(".csv", ""));
+            layouts.add(layout);
+            levels.add(CompiledLevel.compile(layout));
+        }
+
+        File packFile = File.createTempFile("levels", LevelPack.EXTENSION);
+        try {
+            FileOutputStream out = new FileOutputStream(packFile);
+            LevelPack.write(out, names, levels);
+            out.close();
+
+            LevelPack[] packs = {LevelPack.open(packFile),
+                                 LevelPack.read(new FileInputStream(packFile))};
+            for (LevelPack pack : packs) {
+                assertEquals(files.length, pack.getLevelCount());
+                for (int i = files.length - 1; i >= 0; i--) {
+                    Level level = new Level(layouts.get(i));
+                    assertEquals(names.get(i), pack.getName(i));
+                    assertEquals(level.getWidth(), pack.getWidth(i));
+                    assertEquals(level.getHeight(), pack.getHeight(i));
+                    assertEquals(layouts.get(i),
+                                 pack.getCompiledLevel(i).createLevel().getLayout());
+                }
+            }
+        }
+        finally {
+            packFile.delete();
+        }
+    }
+
+    /**
+     * Opens data which is not a pack, a pack whose last level is cut off, and asks for a level
+     * past the end.  Expected result:  an IOException for the first two, but only once the cut
+     * off level is asked for, and an IndexOutOfBoundsException for the last.
+     *
+     * @throws IOException          Throws this exception if the pack cannot be read.
+     * @throws LevelLoadException   Throws this exception if the Level fails to load due to String
+     *                              not being properly formatted.
+     */
+    @Test
+    public void testRejectsBadData() throws IOException, LevelLoadException {
+        try {
+            LevelPack.read(new ByteArrayInputStream("xx,xx\nxx,xx".getBytes()));
+            fail("Read a layout as a level pack.");
+        }
+        catch (IOException e) {
+            //expected
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        LevelPack.write(out, Arrays.asList("first", "second"),
+                        Arrays.asList(CompiledLevel.compile("px,xx\nxx,bo"),
+                                      CompiledLevel.compile("xx,qx\nbo,xx")));
+        byte[] bytes = out.toByteArray();
+        LevelPack pack = new LevelPack(ByteBuffer.wrap(Arrays.copyOf(bytes, bytes.length - 4)));
+        assertEquals(2, pack.getLevelCount());
+        assertEquals("second", pack.getName(1));
+        assertNotNull(pack.getCompiledLevel(0).createLevel());
+        try {
+            pack.getCompiledLevel(1);
+            fail("Decoded a level which was cut off.");
+        }
+        catch (IOException e) {
+            //expected
+        }
+
+        try {
+            pack.getWidth(2);
+            fail("Found a level past the end of the pack.");
+        }
+        catch (IndexOutOfBoundsException e) {
+            //expected
+        }
+    }
+}
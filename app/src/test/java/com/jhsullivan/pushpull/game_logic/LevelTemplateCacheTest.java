@@ -0,0 +1,71 @@
+package com.jhsullivan.pushpull.game_logic;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * This class tests the LevelTemplateCache.
+ */
+public class LevelTemplateCacheTest {
+
+
+    /**
+     * Caches templates of the same size in a cache with room for three of them, looking one up
+     * all along.  Expected result:  the cache stays within its bound by dropping the least
+     * recently used templates, the one looked up is kept, and the hits and misses are counted.
+     *
+     * @throws LevelLoadException  Throws this exception if the Level fails to load due to String
+     *                             not being properly formatted.
+     */
+    @Test
+    public void testEvictsByBytes() throws LevelLoadException {
+        CompiledLevel[] templates = new CompiledLevel[6];
+        for (int i = 0; i < templates.length; i++) {
+            templates[i] = CompiledLevel.compile("px,xx\nxx,bo");
+        }
+        int size = templates[0].estimateBytes();
+        LevelTemplateCache cache = new LevelTemplateCache(3 * size + size / 2);
+
+        assertNull(cache.get("level#0"));
+        cache.put("level#0", templates[0]);
+        for (int i = 1; i < templates.length; i++) {
+            cache.put("level#" + i, templates[i]);
+            assertSame(templates[0], cache.get("level#0"));
+            assertTrue(cache.getByteCount() <= 3 * size + size / 2);
+        }
+        assertEquals(3, cache.size());
+        assertEquals(3 * size, cache.getByteCount());
+        assertNull(cache.get("level#3"));
+        assertSame(templates[4], cache.get("level#4"));
+        assertSame(templates[5], cache.get("level#5"));
+
+        cache.put("level#5", templates[1]);
+        assertEquals(3 * size, cache.getByteCount());
+        assertSame(templates[1], cache.get("level#5"));
+        assertEquals(8, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    /**
+     * Caches a template larger than the whole cache, then empties the cache.  Expected result:
+     * the large template is not kept, and nothing is left after emptying the cache.
+     *
+     * @throws LevelLoadException  Throws this exception if the Level fails to load due to String
+     *                             not being properly formatted.
+     */
+    @Test
+    public void testSkipsLargeTemplates() throws LevelLoadException {
+        CompiledLevel small = CompiledLevel.compile("[2x1]px,bo");
+        CompiledLevel large = CompiledLevel.compile("[40x40]px,bo");
+        LevelTemplateCache cache = new LevelTemplateCache(large.estimateBytes() - 1);
+        cache.put("small", small);
+        cache.put("large", large);
+        assertNull(cache.get("large"));
+        assertSame(small, cache.get("small"));
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getByteCount());
+    }
+}
@@ -1,20 +1,28 @@
 package com.jhsullivan.pushpull.game_logic;
 
+import com.jhsullivan.pushpull.game_objects.Block;
+import com.jhsullivan.pushpull.game_objects.BlockCluster;
 import com.jhsullivan.pushpull.game_objects.GameObject;
+import com.jhsullivan.pushpull.game_objects.Player;
 import com.jhsullivan.pushpull.game_objects.Wall;
 
 import org.junit.Test;
 
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 import java.util.stream.Collectors;
 
 import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
 
 /**
  * This class tests the basic functionality of the Level class.  As of now, the only thing tested
@@ -39,6 +47,20 @@ public class LevelTest {
                                         "xx,xx,xx,xx,xx,xx,xx,xx,xx,xx\n" + //8
                                         "xx,xx,xx,xx,xx,xx,xx,xx,xx,xx";    //9
 
+    //A level with every kind of player, two clusters and transformers, so that every branch of
+    //the move code runs, and a single target which is filled by the first move to the right.
+    //                                              0  1  2  3  4  5  6  7  8  9
+    private static final String MIXED_LAYOUT =     "px,bx,xo,xx,xx,xx,xx,xx,1x,1x\n" + //0
+                                                   "xx,xx,xx,xx,xx,xx,xx,xx,1x,xx\n" + //1
+                                                   "xx,xx,qx,bx,xx,xx,xx,xx,xx,xx\n" + //2
+                                                   "xx,xx,xx,xx,xx,wx,xx,xx,xx,xx\n" + //3
+                                                   "xx,xx,xx,xx,rx,bx,xx,Px,xx,xx\n" + //4
+                                                   "xx,xx,xx,xx,bx,xx,xx,xx,xx,xx\n" + //5
+                                                   "xx,2x,2x,xx,xx,xx,Qx,xx,bx,xx\n" + //6
+                                                   "xx,xx,2x,xx,xx,xx,xx,xx,xx,xx\n" + //7
+                                                   "xx,xx,xx,xx,xx,xx,xx,xx,Rx,xx\n" + //8
+                                                   "xx,xx,xx,xx,xx,xx,xx,xx,xx,xx";    //9
+
 
     /**
      * Tests whether a player can push a block.  Expected result:  both player and block move to
@@ -573,6 +595,480 @@ public class LevelTest {
 
     }
 
+    /**
+     * Plays random moves on random crowded levels, and after each move compares the group of
+     * attached game objects that the level reports for every game object against a plain search
+     * of the grid.  Expected result:  the groups always match, i.e. the level keeps its record of
+     * attached game objects up to date as things move, merge and split.
+     *
+     * @throws LevelLoadException  Throws this exception if the Level fails to load due to String
+     *                             not being properly formatted.
+     */
+    @Test
+    public void testContiguousGroupsStayCurrent() throws LevelLoadException {
+        Random rng = new Random(23);
+        for (int n = 0; n < 20; n++) {
+            Level testLevel = new Level(randomLayout(rng, "pqrrrbbbbw1"));
+            Player probe = new Player(Player.Type.GRABALL);
+            for (int i = 0; i < 30; i++) {
+                testLevel.processInput(Vector2D.getRandomDirection(rng));
+                for (GameObject obj : testLevel.getGameObjects()) {
+                    if (obj instanceof Wall) {
+                        continue;
+                    }
+                    Set<GameObject> expected = new HashSet<>();
+                    List<GameObject> frontier = new ArrayList<>();
+                    expected.add(obj);
+                    frontier.add(obj);
+                    while (!frontier.isEmpty()) {
+                        GameObject next = frontier.remove(frontier.size() - 1);
+                        for (GameObject adj : testLevel.getAdjacentObjects(next)) {
+                            if (!(adj instanceof Wall) && expected.add(adj)) {
+                                frontier.add(adj);
+                            }
+                        }
+                    }
+                    Collection<GameObject> attached = probe.getContiguousObjects(obj, testLevel);
+                    assertEquals(expected.size(), attached.size());
+                    assertEquals(expected, new HashSet<>(attached));
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Tests that a cluster moves as one rigid body, with only its leading edge blocked by what
+     * is in front of it.  The cluster is a ring with a block sitting loose in its hole.
+     * Expected result:  the first push moves the whole ring one space, so that the block ends
+     * up against the left side of the hole, and the second push fails because that side is
+     * blocked.  Every part of the ring is found at its own location afterward.
+     *
+     * @throws LevelLoadException  Throws this exception if the Level fails to load due to String
+     *                             not being properly formatted.
+     */
+    @Test
+    public void testClusterMovesAsRigidBody() throws LevelLoadException {
+        //                   0  1  2  3  4  5  6  7  8  9
+        String testLayout = "xx,xx,xx,xx,xx,xx,xx,xx,xx,xx\n" + //0
+                            "xx,xx,xx,xx,xx,xx,xx,xx,xx,xx\n" + //1
+                            "xx,xx,xx,xx,xx,xx,xx,xx,xx,xx\n" + //2
+                            "xx,xx,xx,1x,1x,1x,1x,xx,xx,xx\n" + //3
+                            "xx,xx,px,1x,xx,bx,1x,xx,xx,xx\n" + //4
+                            "xx,xx,xx,1x,1x,1x,1x,xx,xx,xx\n" + //5
+                            "xx,xx,xx,xx,xx,xx,xx,xx,xx,xx\n" + //6
+                            "xx,xx,xx,xx,xx,xx,xx,xx,xx,xx\n" + //7
+                            "xx,xx,xx,xx,xx,xx,xx,xx,xx,xx\n" + //8
+                            "xx,xx,xx,xx,xx,xx,xx,xx,xx,xx";    //9
+
+        Level testLevel = new Level(testLayout);
+        Map<GameObject, Vector2D> expected = new HashMap<>();
+        for (GameObject obj : testLevel.getGameObjects()) {
+            Vector2D location = obj.getLocation();
+            if (!(obj instanceof Block)) {
+                location = location.getPointInDirection(Vector2D.Direction.RIGHT);
+            }
+            expected.put(obj, location);
+        }
+
+        assertTrue(testLevel.processInput(Vector2D.Direction.RIGHT));
+        testGameObjectEndPoints(testLevel, expected);
+
+        assertFalse(testLevel.processInput(Vector2D.Direction.RIGHT));
+        testGameObjectEndPoints(testLevel, expected);
+        for (GameObject obj : testLevel.getGameObjects()) {
+            assertSame(obj, testLevel.getObjectAt(obj.getLocation()));
+        }
+    }
+
+
+    /**
+     * Tests that every game object is given a dense id when it is spawned, both when the level
+     * loads and when its game objects are unpacked again.  Expected result:  the ids are exactly
+     * 0 to n - 1, in the order of the game objects.
+     *
+     * @throws LevelLoadException  Throws this exception if the Level fails to load due to String
+     *                             not being properly formatted.
+     */
+    @Test
+    public void testGameObjectIdsAreDense() throws LevelLoadException {
+        Level testLevel = new Level("wx,px,xx,1x,1x,xx,bx,qo,rx,xx\n"
+                                  + "xx,xx,xx,1x,xx,xx,xx,xx,xx,2x");
+        List<GameObject> objects = new ArrayList<>(testLevel.getGameObjects());
+        for (int i = 0; i < objects.size(); i++) {
+            assertEquals(i, objects.get(i).getId());
+        }
+
+        testLevel.processInput(Vector2D.Direction.RIGHT);
+        Collections.reverse(objects);
+        testLevel.unpackGameObjects(objects);
+        for (int i = 0; i < objects.size(); i++) {
+            assertEquals(i, testLevel.getGameObjects().get(i).getId());
+            assertSame(objects.get(i), testLevel.getGameObjects().get(i));
+        }
+    }
+
+
+    /**
+     * Tests that levels which are not 10x10 load with the right size, whether the size comes
+     * from the rows of the layout or from a header, and that players move all the way to the far
+     * edges of a large board.  Expected result:  the sizes match the layouts, and a block pushed
+     * along the bottom row of the largest board stops at the last column.
+     *
+     * @throws LevelLoadException  Throws this exception if the Level fails to load due to String
+     *                             not being properly formatted.
+     */
+    @Test
+    public void testVariableSizeBoards() throws LevelLoadException {
+        String wideLayout = "xx,xx,xx,xx,xx,xx,xx,xx,xx,xx,xx,xx\n" +
+                            "px,bx,xx,xx,xx,xx,xx,xx,xx,xx,xx,xo\n" +
+                            "xx,xx,xx,xx,xx,xx,xx,xx,xx,xx,xx,xx";
+        Level wideLevel = new Level(wideLayout);
+        assertEquals(12, wideLevel.getWidth());
+        assertEquals(3, wideLevel.getHeight());
+        for (int i = 0; i < 20; i++) {
+            wideLevel.processInput(Vector2D.Direction.RIGHT);
+        }
+        assertTrue(wideLevel.isComplete());
+        assertTrue(wideLevel.getObjectAt(11, 1) instanceof Block);
+
+        int length = Level.MAX_GRID_LENGTH;
+        StringBuilder layoutBuilder = new StringBuilder();
+        layoutBuilder.append("[").append(length).append("x").append(length).append("]");
+        for (int i = 0; i < length * length; i++) {
+            if (i == length * (length - 1)) {
+                layoutBuilder.append("px");
+            }
+            else if (i == length * (length - 1) + 1) {
+                layoutBuilder.append("bx");
+            }
+            else {
+                layoutBuilder.append("xx");
+            }
+        }
+        Level largeLevel = new Level(layoutBuilder.toString());
+        assertEquals(length, largeLevel.getWidth());
+        assertEquals(length, largeLevel.getHeight());
+        for (int i = 0; i < length; i++) {
+            largeLevel.processInput(Vector2D.Direction.RIGHT);
+        }
+        assertTrue(largeLevel.getObjectAt(length - 1, length - 1) instanceof Block);
+        assertTrue(largeLevel.getObjectAt(length - 2, length - 1) instanceof Player);
+        assertFalse(largeLevel.processInput(Vector2D.Direction.DOWN));
+    }
+
+
+    /**
+     * Tests that layouts of the wrong shape are rejected.  Expected result:  a LevelLoadException
+     * for rows of different widths, for a single line that is not square, and for a header that
+     * is too large.
+     */
+    @Test
+    public void testMalformedSizesAreRejected() {
+        String[] layouts = {"xx,xx,xx\nxx,xx\n",
+                            "xx,xx,xx",
+                            "[300x2]"};
+        for (String layout : layouts) {
+            try {
+                new Level(layout);
+                fail("Loaded malformed layout " + layout);
+            }
+            catch (LevelLoadException e) {
+                //expected
+            }
+        }
+    }
+
+    /**
+     * Tests that every character a layout may use spawns what it should, and that unknown
+     * characters and overlaps are rejected.  Expected result:  the level has each kind of object
+     * and trigger along with its message, and a LevelLoadException for a character that means
+     * nothing, for one outside of ASCII, and for two objects or two triggers in one position.
+     *
+     * @throws LevelLoadException  Throws this exception if the Level fails to load due to String
+     *                             not being properly formatted.
+     */
+    @Test
+    public void testLayoutCharacters() throws LevelLoadException {
+        Level testLevel = new Level("[4x2]po,qP,rQ,bR\nwx,1x,&o,xx>Push, pull > grab.");
+        assertEquals(7, testLevel.getGameObjects().size());
+        assertEquals(5, testLevel.getTriggers().size());
+        assertEquals(2, testLevel.getTargets().size());
+        assertTrue(testLevel.getObjectAt(0, 1) instanceof Wall);
+        assertTrue(testLevel.getObjectAt(2, 1) instanceof BlockCluster);
+        assertEquals("Push, pull > grab.", testLevel.getMessage());
+
+        String[] layouts = {"[2x1]xx,zx",
+                            "[1x1]\u00e9x",
+                            "[1x1]bw",
+                            "[1x1]oP"};
+        for (String layout : layouts) {
+            try {
+                new Level(layout);
+                fail("Loaded malformed layout " + layout);
+            }
+            catch (LevelLoadException e) {
+                //expected
+            }
+        }
+    }
+
+
+
+
+    /**
+     * Tests that the level is only complete once every target is filled at the same time, and
+     * that undoing a move takes a filled target back off the count.  Expected result:  the level
+     * is incomplete until the second block reaches its target while the first is still on its
+     * own.
+     *
+     * @throws LevelLoadException  Throws this exception if the Level fails to load due to String
+     *                             not being properly formatted.
+     */
+    @Test
+    public void testCompletionNeedsEveryTarget() throws LevelLoadException {
+        //                   0  1  2  3  4  5  6  7  8  9
+        String testLayout = "xx,px,bx,xo,wx,xx,xx,xx,xx,xx\n" + //0
+                            "xx,xx,xx,xx,xx,xx,xx,xx,xx,xx\n" + //1
+                            "px,xx,bx,xo,xx,xx,xx,xx,xx,xx\n" + //2
+                            "xx,xx,xx,xx,xx,xx,xx,xx,xx,xx\n" + //3
+                            "xx,xx,xx,xx,xx,xx,xx,xx,xx,xx\n" + //4
+                            "xx,xx,xx,xx,xx,xx,xx,xx,xx,xx\n" + //5
+                            "xx,xx,xx,xx,xx,xx,xx,xx,xx,xx\n" + //6
+                            "xx,xx,xx,xx,xx,xx,xx,xx,xx,xx\n" + //7
+                            "xx,xx,xx,xx,xx,xx,xx,xx,xx,xx\n" + //8
+                            "xx,xx,xx,xx,xx,xx,xx,xx,xx,xx";    //9
+
+        Level testLevel = new Level(testLayout);
+        testLevel.processInput(Vector2D.Direction.RIGHT);
+        assertFalse(testLevel.isComplete());
+
+        testLevel.revertState();
+        assertFalse(testLevel.isComplete());
+        testLevel.processInput(Vector2D.Direction.DOWN);
+        testLevel.processInput(Vector2D.Direction.UP);
+        assertFalse(testLevel.isComplete());
+
+        testLevel.processInput(Vector2D.Direction.RIGHT);
+        assertFalse(testLevel.isComplete());
+        testLevel.processInput(Vector2D.Direction.RIGHT);
+        assertTrue(testLevel.isComplete());
+    }
+
+    /**
+     * Tests that a level is reset in place after random moves on a level with every kind of
+     * player, clusters and transformers, and after it was completed, and then on random levels.
+     * Expected result:  the level is in the same state as a newly loaded one, with the same game
+     * objects, nothing to undo, and not complete.  Once its game objects are replaced, it cannot
+     * be reset in place.
+     *
+     * @throws LevelLoadException  Throws this exception if the Level fails to load due to String
+     *                             not being properly formatted.
+     */
+    @Test
+    public void testResetInPlace() throws LevelLoadException {
+        Level expected = new Level(MIXED_LAYOUT);
+        Level testLevel = new Level(MIXED_LAYOUT);
+        List<GameObject> gameObjects = new ArrayList<>(testLevel.getGameObjects());
+
+        testLevel.processInput(Vector2D.Direction.RIGHT);
+        assertTrue(testLevel.isComplete());
+        Random rng = new Random(24);
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < 50; i++) {
+                testLevel.processInput(Vector2D.getRandomDirection(rng));
+            }
+            assertTrue(testLevel.reset());
+            assertFalse(testLevel.isComplete());
+            assertFalse(testLevel.canUndo());
+            assertEquals(expected.getStateHash(), testLevel.getStateHash());
+            assertArrayEquals(expected.saveCheckpoint(), testLevel.saveCheckpoint());
+            assertEquals(gameObjects, testLevel.getGameObjects());
+        }
+
+        for (int n = 0; n < 20; n++) {
+            String layout = randomLayout(rng, "pqrbbbbw12");
+            expected = new Level(layout);
+            testLevel = new Level(layout);
+            for (int i = 0; i < 50; i++) {
+                testLevel.processInput(Vector2D.getRandomDirection(rng));
+            }
+            assertTrue(testLevel.reset());
+            assertArrayEquals(expected.saveCheckpoint(), testLevel.saveCheckpoint());
+        }
+
+        testLevel.unpackGameObjects(new ArrayList<>(testLevel.getGameObjects()));
+        assertFalse(testLevel.reset());
+    }
+
+
+
+
+    /**
+     * Tests that moves can be undone one at a time, all the way back to the start, on random
+     * levels with every kind of player, clusters and transformers.  Then tests that a history
+     * with a small memory limit keeps only the most recent moves.  Expected result:  each undo
+     * restores exactly the state before the matching move, and the small history runs out after
+     * at most a few undos.
+     *
+     * @throws LevelLoadException  Throws this exception if the Level fails to load due to String
+     *                             not being properly formatted.
+     */
+    @Test
+    public void testMultipleUndo() throws LevelLoadException {
+        Random rng = new Random(41);
+        for (int n = 0; n < 20; n++) {
+            Level testLevel = new Level(randomLayout(rng, "pqrbbbbw12"));
+            List<List<String>> states = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                List<String> before = describe(testLevel);
+                if (testLevel.processInput(Vector2D.getRandomDirection(rng))) {
+                    states.add(before);
+                }
+            }
+            for (int i = states.size() - 1; i >= 0; i--) {
+                assertTrue(testLevel.canUndo());
+                testLevel.revertState();
+                assertEquals(states.get(i), describe(testLevel));
+            }
+            assertFalse(testLevel.canUndo());
+
+            testLevel.setHistoryLimit(64);
+            states.clear();
+            for (int i = 0; i < 40; i++) {
+                List<String> before = describe(testLevel);
+                if (testLevel.processInput(Vector2D.getRandomDirection(rng))) {
+                    states.add(before);
+                }
+            }
+            int undos = 0;
+            while (testLevel.canUndo()) {
+                testLevel.revertState();
+                undos += 1;
+                assertEquals(states.get(states.size() - undos), describe(testLevel));
+            }
+            assertTrue(undos <= 64 / 4 / 3);
+        }
+    }
+
+
+    /**
+     * Makes random moves on random levels, undoing some of them, then seeks back through the
+     * moves.  Expected result:  the state hash kept up to date by the level always equals the
+     * hash worked out from scratch, and equal states have equal hashes.
+     *
+     * @throws LevelLoadException  Throws this exception if the Level fails to load due to String
+     *                             not being properly formatted.
+     */
+    @Test
+    public void testStateHashIsIncremental() throws LevelLoadException {
+        Random rng = new Random(13);
+        for (int n = 0; n < 20; n++) {
+            String layout = randomLayout(rng, "pqrbbbbw12");
+            Level testLevel = new Level(layout);
+            long initial = testLevel.getStateHash();
+            assertEquals(testLevel.computeStateHash(), initial);
+            for (int i = 0; i < 100; i++) {
+                if (rng.nextInt(4) == 0) {
+                    testLevel.revertState();
+                }
+                else {
+                    testLevel.processInput(Vector2D.getRandomDirection(rng));
+                }
+                assertEquals(testLevel.computeStateHash(), testLevel.getStateHash());
+            }
+
+            testLevel = new Level(layout);
+            MoveTimeline timeline = new MoveTimeline(testLevel, 8, Level.DEFAULT_HISTORY_BYTES);
+            List<Long> hashes = new ArrayList<>();
+            hashes.add(initial);
+            for (int i = 0; i < 100; i++) {
+                if (timeline.processInput(Vector2D.getRandomDirection(rng))) {
+                    hashes.add(testLevel.getStateHash());
+                }
+            }
+            for (int i = 0; i < 30; i++) {
+                int target = rng.nextInt(hashes.size());
+                timeline.seek(target);
+                assertEquals(testLevel.computeStateHash(), testLevel.getStateHash());
+                assertEquals(hashes.get(target).longValue(), testLevel.getStateHash());
+            }
+        }
+    }
+
+    /**
+     * @param level     The level to describe.
+     * @return          Returns the location of every game object, and the type of every player,
+     *                  in the order of the level's game objects.
+     */
+    static List<String> describe(Level level) {
+        List<String> state = new ArrayList<>();
+        for (GameObject obj : level.getGameObjects()) {
+            String type = obj instanceof Player ? ((Player) obj).getType().toString() : "";
+            state.add(obj.getLocation() + type);
+            assertSame(obj, level.getObjectAt(obj.getLocation()));
+        }
+        return state;
+    }
+
+    /**
+     * @param rng       The source of randomness.
+     * @param objects   The objects to pick from, so that repeating one makes it more likely.
+     * @return          Returns the layout of a random 10x10 level, where half of the positions
+     *                  hold a random object, and some hold a target or a transformer.
+     */
+    static String randomLayout(Random rng, String objects) {
+        StringBuilder layout = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            char object = objects.charAt(rng.nextInt(objects.length()));
+            char trigger = "xxxxxoPQR".charAt(rng.nextInt(9));
+            layout.append(rng.nextInt(2) == 0 ? 'x' : object).append(trigger);
+        }
+        return layout.toString();
+    }
+
+
+    /**
+     * Tests that processing input does not allocate once the level's scratch buffers have grown
+     * to size.  Uses a level with every kind of player, clusters and transformers, so that
+     * every branch of the move code runs.  Expected result:  after a few warm-up moves, the
+     * current thread allocates no memory at all while the moves are repeated.
+     *
+     * @throws LevelLoadException  Throws this exception if the Level fails to load due to String
+     *                             not being properly formatted.
+     */
+    @Test
+    public void testProcessInputDoesNotAllocate() throws LevelLoadException {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+
+        Level testLevel = new Level(MIXED_LAYOUT);
+        Vector2D.Direction[] directions = Vector2D.Direction.values();
+        for (int i = 0; i < 200; i++) {
+            testLevel.processInput(directions[i % directions.length]);
+            testLevel.processInput(directions[(i / 3) % directions.length]);
+        }
+
+        long thread = Thread.currentThread().getId();
+        long before = threadBean.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < 200; i++) {
+            testLevel.processInput(directions[i % directions.length]);
+            testLevel.processInput(directions[(i / 3) % directions.length]);
+        }
+        long after = threadBean.getThreadAllocatedBytes(thread);
+
+        //Reading the counter itself may allocate a little, so measure an empty interval.
+        long overhead = threadBean.getThreadAllocatedBytes(thread) - after;
+        assertTrue("processInput allocated " + (after - before) + " bytes",
+                after - before <= overhead);
+    }
+
+
+
+
 //    /**
 //     * Tests whether a player can push a cluster when that cluster can only move if a second player
 //     * moves, and the second player can only move if the cluster moves.  Tests this with a pair
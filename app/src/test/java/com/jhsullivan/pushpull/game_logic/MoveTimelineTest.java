@@ -0,0 +1,145 @@
+package com.jhsullivan.pushpull.game_logic;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * This class tests the MoveTimeline, which records the moves of an attempt at a Level for
+ * undoing, redoing and seeking.  Every test keeps the state of the level after each move, and
+ * checks that going back to a move restores exactly that state.
+ */
+public class MoveTimelineTest {
+
+
+    /**
+     * Plays a long attempt on random levels with every kind of player, clusters and
+     * transformers, then seeks back and forth to random moves.  Expected result:  after every
+     * seek, the level is in exactly the state it was in after that many moves.
+     *
+     * @throws LevelLoadException  Throws this exception if the Level fails to load due to String
+     *                             not being properly formatted.
+     */
+    @Test
+    public void testSeekRestoresEveryMove() throws LevelLoadException {
+        Random rng = new Random(5);
+        for (int n = 0; n < 10; n++) {
+            Level level = new Level(LevelTest.randomLayout(rng, "pqrbbbbw12"));
+            MoveTimeline timeline = new MoveTimeline(level, 8, Level.DEFAULT_HISTORY_BYTES);
+            List<List<String>> states = new ArrayList<>();
+            states.add(LevelTest.describe(level));
+            for (int i = 0; i < 500; i++) {
+                if (timeline.processInput(Vector2D.getRandomDirection(rng))) {
+                    states.add(LevelTest.describe(level));
+                }
+            }
+            assertEquals(states.size() - 1, timeline.getMoveCount());
+
+            for (int i = 0; i < 100; i++) {
+                int target = rng.nextInt(states.size());
+                timeline.seek(target);
+                assertEquals(target, timeline.getPosition());
+                assertEquals(states.get(target), LevelTest.describe(level));
+            }
+        }
+    }
+
+
+    /**
+     * Plays long attempts with a small memory limit, then seeks to random moves and undoes as
+     * far as possible.  Levels on which the players are soon stuck are skipped.  Expected
+     * result:  the timeline stays within its limit by forgetting the oldest moves a checkpoint
+     * interval at a time, seeking to any move it still keeps restores exactly that state, and
+     * seeking or undoing further back stops at the first kept move.
+     *
+     * @throws LevelLoadException  Throws this exception if the Level fails to load due to String
+     *                             not being properly formatted.
+     */
+    @Test
+    public void testByteLimitForgetsOldestMoves() throws LevelLoadException {
+        Random rng = new Random(12);
+        int tested = 0;
+        for (int n = 0; n < 10; n++) {
+            Level level = new Level(LevelTest.randomLayout(rng, "pqrbbbbw12"));
+            MoveTimeline timeline = new MoveTimeline(level, 8, 4096);
+            List<List<String>> states = new ArrayList<>();
+            states.add(LevelTest.describe(level));
+            for (int i = 0; i < 1000; i++) {
+                if (timeline.processInput(Vector2D.getRandomDirection(rng))) {
+                    states.add(LevelTest.describe(level));
+                }
+                assertTrue(timeline.getByteCount() <= 4096);
+            }
+            if (states.size() < 200) {
+                continue;
+            }
+            tested += 1;
+            int first = timeline.getFirstMove();
+            assertTrue(first > 0);
+            assertEquals(0, first % 8);
+            assertEquals(states.size() - 1, timeline.getMoveCount());
+
+            for (int i = 0; i < 50; i++) {
+                int target = first + rng.nextInt(states.size() - first);
+                timeline.seek(target);
+                assertEquals(target, timeline.getPosition());
+                assertEquals(states.get(target), LevelTest.describe(level));
+            }
+            timeline.seek(0);
+            assertEquals(first, timeline.getPosition());
+            assertEquals(states.get(first), LevelTest.describe(level));
+
+            timeline.seek(timeline.getMoveCount());
+            while (timeline.undo()) {
+                assertEquals(states.get(timeline.getPosition()), LevelTest.describe(level));
+            }
+            assertEquals(first, timeline.getPosition());
+        }
+        assertTrue(tested >= 5);
+    }
+
+
+    /**
+     * Undoes and redoes moves, then makes a new move after undoing.  Expected result:  undo and
+     * redo step through the recorded states one at a time, and a new move forgets the moves that
+     * had been undone, so there is nothing left to redo.
+     *
+     * @throws LevelLoadException  Throws this exception if the Level fails to load due to String
+     *                             not being properly formatted.
+     */
+    @Test
+    public void testUndoRedo() throws LevelLoadException {
+        Random rng = new Random(8);
+        Level level = new Level(LevelTest.randomLayout(rng, "pqrbbbbw12"));
+        MoveTimeline timeline = new MoveTimeline(level, 4, Level.DEFAULT_HISTORY_BYTES);
+        List<List<String>> states = new ArrayList<>();
+        states.add(LevelTest.describe(level));
+        while (states.size() < 20) {
+            if (timeline.processInput(Vector2D.getRandomDirection(rng))) {
+                states.add(LevelTest.describe(level));
+            }
+        }
+
+        for (int i = states.size() - 2; i >= 5; i--) {
+            assertTrue(timeline.undo());
+            assertEquals(states.get(i), LevelTest.describe(level));
+        }
+        for (int i = 6; i < 10; i++) {
+            assertTrue(timeline.redo());
+            assertEquals(states.get(i), LevelTest.describe(level));
+        }
+
+        int before = timeline.getPosition();
+        while (!timeline.processInput(Vector2D.getRandomDirection(rng))) {
+            //keep trying until something moves
+        }
+        assertEquals(before + 1, timeline.getMoveCount());
+        assertFalse(timeline.redo());
+        assertTrue(timeline.undo());
+        assertEquals(states.get(before), LevelTest.describe(level));
+    }
+}
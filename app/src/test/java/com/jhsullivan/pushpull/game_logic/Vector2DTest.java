@@ -0,0 +1,82 @@
+package com.jhsullivan.pushpull.game_logic;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * This class tests the shared instances of Vector2D, and checks that looking them up does not
+ * allocate.
+ */
+public class Vector2DTest {
+
+
+    /**
+     * Tests that points on and next to the grid are shared.  Expected result:  the factory and
+     * the neighbor lookups return the same instances, while points far off the grid are still
+     * created normally.
+     */
+    @Test
+    public void testSharedInstances() {
+        assertSame(Vector2D.of(3, 4), Vector2D.of(3, 4));
+        assertSame(Vector2D.of(3, 4), Vector2D.of(2, 4).getPointInDirection(Vector2D.Direction.RIGHT));
+        assertSame(Vector2D.of(-1, 0), Vector2D.zero().getPointInDirection(Vector2D.Direction.LEFT));
+        assertSame(Vector2D.zero(), Vector2D.of(0, 0));
+        assertEquals(new Vector2D(500, 500), Vector2D.of(500, 500));
+        assertEquals(Vector2D.of(10, 4), Vector2D.of(10, 3).getPointInDirection(Vector2D.Direction.DOWN));
+    }
+
+
+    /**
+     * Tests that looking up points on and next to the grid, and their neighbors, allocates
+     * nothing, by measuring the bytes allocated by the current thread (processInput as a whole
+     * is checked in the same way by LevelTest).  Skipped on JVMs which cannot measure them.
+     * Expected result:  no bytes are allocated.
+     */
+    @Test
+    public void testLookupsDoNotAllocate() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+
+        Vector2D.Direction[] directions = Vector2D.Direction.values();
+        int sum = walkGrid(directions);
+
+        long thread = Thread.currentThread().getId();
+        long before = threadBean.getThreadAllocatedBytes(thread);
+        sum += walkGrid(directions);
+        long after = threadBean.getThreadAllocatedBytes(thread);
+
+        //Reading the counter itself may allocate a little, so measure an empty interval.
+        long overhead = threadBean.getThreadAllocatedBytes(thread) - after;
+        assertTrue("Lookups allocated " + (after - before) + " bytes",
+                after - before <= overhead);
+        assertEquals(0, sum);
+    }
+
+    /**
+     * Looks up every point on the default grid and the neighbors of each.
+     *
+     * @param directions    The directions, so that listing them does not allocate.
+     * @return              Returns the sum of the offsets of the neighbors from their points,
+     *                      which is 0, so that the lookups are not optimized away.
+     */
+    private static int walkGrid(Vector2D.Direction[] directions) {
+        int sum = 0;
+        for (int y = 0; y < 10; y++) {
+            for (int x = 0; x < 10; x++) {
+                Vector2D point = Vector2D.of(x, y);
+                for (Vector2D.Direction direction : directions) {
+                    Vector2D neighbor = point.getPointInDirection(direction);
+                    sum += neighbor.getX() - x + neighbor.getY() - y;
+                }
+            }
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,149 @@
+package com.jhsullivan.pushpull.solver;
+
+import com.jhsullivan.pushpull.game_logic.Level;
+import com.jhsullivan.pushpull.game_logic.LevelLoadException;
+import com.jhsullivan.pushpull.game_logic.Vector2D;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * This class tests the HintTable and the HintEngine which uses it.  Hints are checked by
+ * following them, since a level may have several shortest solutions.
+ */
+public class HintTableTest {
+
+
+    //A level where a block has to be pushed around a wall, in six moves at best.
+    //                                           0  1  2  3  4
+    private static final String TEST_LAYOUT = "xx,xx,xx,xx,xx\n" + //0
+                                              "px,bx,xx,xx,xx\n" + //1
+                                              "xx,wx,xx,xx,xx\n" + //2
+                                              "xx,xx,xx,xo,xx";    //3
+
+
+    /**
+     * Builds the table of the test level from all of its states, then wanders the level at
+     * random, following the hints from time to time.  Expected result:  the table holds the
+     * start with six moves left, and from every state it holds, following its hints solves the
+     * level in exactly the moves left.
+     *
+     * @throws LevelLoadException  Throws this exception if the Level fails to load due to String
+     *                             not being properly formatted.
+     */
+    @Test
+    public void testHintsAreShortest() throws LevelLoadException {
+        HintTable table = HintTable.build(TEST_LAYOUT, HintTable.DEFAULT_STATE_LIMIT);
+        Level start = new Level(TEST_LAYOUT);
+        assertEquals(6, table.getDistance(start.getStateHash()));
+
+        Random rng = new Random(3);
+        Level level = new Level(TEST_LAYOUT);
+        for (int i = 0; i < 200 && !level.areTargetsFilled(); i++) {
+            int distance = table.getDistance(level.getStateHash());
+            if (distance > 0) {
+                assertEquals(distance, followHints(table, level.saveCheckpoint()));
+            }
+            level.processInput(Vector2D.getRandomDirection(rng));
+        }
+    }
+
+    /**
+     * Builds the table of the test level with too small a state limit to search all of its
+     * states.  Expected result:  the table falls back to the states of a shortest solution.
+     *
+     * @throws LevelLoadException  Throws this exception if the Level fails to load due to String
+     *                             not being properly formatted.
+     */
+    @Test
+    public void testFallsBackToSolution() throws LevelLoadException {
+        HintTable table = HintTable.build(TEST_LAYOUT, 40);
+        assertEquals(6, table.size());
+        assertEquals(6, followHints(table, new Level(TEST_LAYOUT).saveCheckpoint()));
+    }
+
+    /**
+     * Writes a table and reads it back, both for its own level and for a changed version of it.
+     * Expected result:  the same hints after reading, and the table is refused for the changed
+     * level.
+     *
+     * @throws IOException          Throws this exception if the table cannot be read back.
+     * @throws LevelLoadException   Throws this exception if the Level fails to load due to String
+     *                              not being properly formatted.
+     */
+    @Test
+    public void testReadWrite() throws IOException, LevelLoadException {
+        HintTable table = HintTable.build(TEST_LAYOUT, HintTable.DEFAULT_STATE_LIMIT);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        table.write(out);
+        byte[] bytes = out.toByteArray();
+        assertEquals(16 + 10 * table.size(), bytes.length);
+
+        HintTable copy = HintTable.read(new ByteArrayInputStream(bytes), TEST_LAYOUT);
+        assertEquals(table.size(), copy.size());
+        long hash = new Level(TEST_LAYOUT).getStateHash();
+        assertEquals(table.getMove(hash), copy.getMove(hash));
+        assertEquals(table.getDistance(hash), copy.getDistance(hash));
+
+        try {
+            HintTable.read(new ByteArrayInputStream(bytes), TEST_LAYOUT.replace("xo", "ox"));
+            fail("A table for a different level was read.");
+        }
+        catch (IOException e) {
+            //expected
+        }
+    }
+
+    /**
+     * Asks a HintEngine without a table for hints while following them.  Expected result:  the
+     * first hint needs a search, after which every hint along the way is looked up, and the
+     * moves left count down to the solution.
+     *
+     * @throws LevelLoadException  Throws this exception if the Level fails to load due to String
+     *                             not being properly formatted.
+     */
+    @Test
+    public void testEngineCachesSolutions() throws LevelLoadException {
+        HintEngine engine = new HintEngine(TEST_LAYOUT, null);
+        Level level = new Level(TEST_LAYOUT);
+        assertNull(engine.lookUp(level));
+        assertEquals(-1, engine.getMovesLeft(level));
+
+        for (int movesLeft = 6; movesLeft > 0; movesLeft--) {
+            Vector2D.Direction move = engine.getHint(level.saveCheckpoint());
+            assertNotNull(move);
+            assertEquals(move, engine.lookUp(level));
+            assertEquals(movesLeft, engine.getMovesLeft(level));
+            assertTrue(level.processInput(move));
+        }
+        assertTrue(level.areTargetsFilled());
+        assertEquals(1, engine.getSearchCount());
+        assertNull(engine.getHint(level.saveCheckpoint()));
+    }
+
+    /**
+     * @param table         A hint table.
+     * @param checkpoint    A checkpoint of the test level.
+     * @return              Returns the number of moves it takes to solve the level by following
+     *                      the hints from the checkpoint, or -1 if a hint is missing.
+     */
+    private static int followHints(HintTable table, int[] checkpoint) throws LevelLoadException {
+        Level level = new Level(TEST_LAYOUT);
+        level.restoreCheckpoint(checkpoint);
+        int moves = 0;
+        while (!level.areTargetsFilled()) {
+            Vector2D.Direction move = table.getMove(level.getStateHash());
+            if (move == null || !level.processInput(move)) {
+                return -1;
+            }
+            moves += 1;
+        }
+        return moves;
+    }
+}
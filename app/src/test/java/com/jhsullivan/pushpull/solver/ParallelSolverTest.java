@@ -0,0 +1,102 @@
+package com.jhsullivan.pushpull.solver;
+
+import com.jhsullivan.pushpull.game_logic.Level;
+import com.jhsullivan.pushpull.game_logic.LevelLoadException;
+import com.jhsullivan.pushpull.game_logic.Vector2D;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * This class tests the ParallelSolver against the single-threaded Solver.  Since both search
+ * breadth-first, they must agree on the length of a shortest solution, although they may find
+ * different solutions of that length.
+ */
+public class ParallelSolverTest {
+
+
+    /**
+     * Solves the shipped levels that the Solver can solve quickly, on several threads.  Expected
+     * result:  the same length of solution as the Solver, and every solution completes its level.
+     *
+     * @throws IOException          Throws this exception if a level file cannot be read.
+     * @throws LevelLoadException   Throws this exception if the Level fails to load due to String
+     *                              not being properly formatted.
+     */
+    @Test
+    public void testMatchesSolver() throws IOException, LevelLoadException {
+        File directory = new File("src/main/assets/Levels");
+        if (!directory.isDirectory()) {
+            directory = new File("app/src/main/assets/Levels");
+        }
+        File[] files = directory.listFiles();
+        assertNotNull(files);
+        Arrays.sort(files);
+
+        int compared = 0;
+        for (File file : files) {
+            String layout = Solver.readLayout(file);
+            Solver solver = new Solver(layout);
+            solver.setStateLimit(10000);
+            List<Vector2D.Direction> expected = solver.solve();
+            if (expected == null) {
+                continue;
+            }
+
+            ParallelSolver parallelSolver = new ParallelSolver(layout, 4, 64L * 1024 * 1024);
+            List<Vector2D.Direction> solution = parallelSolver.solve();
+            assertNotNull(file.getName(), solution);
+            assertEquals(file.getName(), expected.size(), solution.size());
+            assertTrue(file.getName(), isSolution(layout, solution));
+            assertTrue(parallelSolver.getStatesPerSecond() > 0);
+            compared += 1;
+        }
+        assertTrue(compared >= 3);
+    }
+
+    /**
+     * Solves an unsolvable level, once with plenty of memory and once with almost none.
+     * Expected result:  no solution either way, but only the second search is cut off.
+     *
+     * @throws LevelLoadException  Throws this exception if the Level fails to load due to String
+     *                             not being properly formatted.
+     */
+    @Test
+    public void testUnsolvableLevel() throws LevelLoadException {
+        //                   0  1  2  3
+        String testLayout = "bx,xx,xx,xx\n" + //0
+                            "xx,px,xx,xx\n" + //1
+                            "xx,xx,xx,xo";    //2
+        ParallelSolver solver = new ParallelSolver(testLayout, 3, 1024 * 1024);
+        assertNull(solver.solve());
+        assertFalse(solver.isCutOff());
+        assertEquals(11, solver.getStateCount());
+
+        solver = new ParallelSolver(testLayout, 3, 100);
+        assertNull(solver.solve());
+        assertTrue(solver.isCutOff());
+    }
+
+    /**
+     * @param layout    The layout of a level.
+     * @param solution  The inputs to play.
+     * @return          Returns whether playing the inputs on the level completes it, with every
+     *                  input moving something.
+     */
+    private static boolean isSolution(String layout, List<Vector2D.Direction> solution)
+            throws LevelLoadException {
+        Level level = new Level(layout);
+        for (Vector2D.Direction direction : solution) {
+            if (!level.processInput(direction)) {
+                return false;
+            }
+        }
+        return level.areTargetsFilled();
+    }
+}
@@ -0,0 +1,161 @@
+package com.jhsullivan.pushpull.solver;
+
+import com.jhsullivan.pushpull.game_logic.Vector2D;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * This class tests the SolutionCache, including how it recovers when its files are left behind
+ * by a process which was killed.
+ */
+public class SolutionCacheTest {
+
+
+    private static final List<Vector2D.Direction> SOLUTION = Arrays.asList(
+            Vector2D.Direction.RIGHT, Vector2D.Direction.RIGHT, Vector2D.Direction.UP,
+            Vector2D.Direction.RIGHT, Vector2D.Direction.DOWN, Vector2D.Direction.DOWN);
+
+    private File directory;
+
+
+    /**
+     * Creates an empty directory for the cache.
+     *
+     * @throws IOException  Throws this exception if the directory cannot be created.
+     */
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("solutions").toFile();
+    }
+
+    /**
+     * Deletes the directory of the cache.
+     */
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    /**
+     * Stores results, including one without a solution, and opens the cache again.  Expected
+     * result:  the same results are read back, a layout which was not stored has none, and
+     * storing a layout again replaces its result.
+     *
+     * @throws IOException  Throws this exception if the cache files cannot be used.
+     */
+    @Test
+    public void testStoresResults() throws IOException {
+        SolutionCache cache = new SolutionCache(directory, 1 << 20);
+        cache.put("layout a", new SolutionCache.Result(SOLUTION, false, 12, 71));
+        cache.put("layout b", new SolutionCache.Result(null, true, 5000, 4194304));
+        cache.close();
+
+        cache = new SolutionCache(directory, 1 << 20);
+        assertEquals(2, cache.size());
+        SolutionCache.Result result = cache.get("layout a");
+        assertEquals(SOLUTION, result.getSolution());
+        assertFalse(result.isCutOff());
+        assertEquals(12, result.getSolveMillis());
+        assertEquals(71, result.getStateCount());
+
+        result = cache.get("layout b");
+        assertNull(result.getSolution());
+        assertTrue(result.isCutOff());
+        assertNull(cache.get("layout c"));
+
+        cache.put("layout b", new SolutionCache.Result(SOLUTION.subList(0, 5), false, 1, 2));
+        assertEquals(5, cache.get("layout b").getSolution().size());
+        assertEquals(2, cache.size());
+        cache.close();
+    }
+
+    /**
+     * Leaves a torn record at the end of the log, as a kill during a write would, and then an
+     * index which does not cover the last record, as a kill between writing the log and the
+     * index would.  Expected result:  the torn record is cut off, and the missing record is
+     * indexed again from the log.
+     *
+     * @throws IOException  Throws this exception if the cache files cannot be used.
+     */
+    @Test
+    public void testRecoversFromKill() throws IOException {
+        SolutionCache cache = new SolutionCache(directory, 1 << 20);
+        cache.put("layout a", new SolutionCache.Result(SOLUTION, false, 12, 71));
+        cache.close();
+        File index = new File(directory, SolutionCache.INDEX_NAME);
+        File oldIndex = new File(directory, "old.idx");
+        Files.copy(index.toPath(), oldIndex.toPath());
+
+        cache = new SolutionCache(directory, 1 << 20);
+        cache.put("layout b", new SolutionCache.Result(SOLUTION, false, 3, 4));
+        long length = cache.getLogLength();
+        cache.close();
+
+        RandomAccessFile log = new RandomAccessFile(new File(directory, SolutionCache.LOG_NAME),
+                                                    "rw");
+        log.seek(length);
+        log.write(new byte[] {0, 0, 0, 40, 1, 2, 3});
+        log.close();
+        Files.move(oldIndex.toPath(), index.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        cache = new SolutionCache(directory, 1 << 20);
+        assertEquals(length, cache.getLogLength());
+        assertEquals(2, cache.size());
+        assertEquals(SOLUTION, cache.get("layout a").getSolution());
+        assertEquals(3, cache.get("layout b").getSolveMillis());
+        cache.close();
+
+        //an index which is not an index at all is rebuilt
+        RandomAccessFile broken = new RandomAccessFile(index, "rw");
+        broken.writeInt(0);
+        broken.close();
+        cache = new SolutionCache(directory, 1 << 20);
+        assertEquals(2, cache.size());
+        assertEquals(4, cache.get("layout b").getStateCount());
+        cache.close();
+    }
+
+    /**
+     * Stores far more results than fit in the size limit, while using the first result all
+     * along.  Expected result:  the log stays within the limit, the first result is kept since
+     * it was always recently used, and the oldest unused results are dropped.
+     *
+     * @throws IOException  Throws this exception if the cache files cannot be used.
+     */
+    @Test
+    public void testEvictsLeastRecentlyUsed() throws IOException {
+        SolutionCache cache = new SolutionCache(directory, 2048);
+        cache.put("layout 0", new SolutionCache.Result(SOLUTION, false, 0, 0));
+        for (int i = 1; i < 500; i++) {
+            cache.put("layout " + i, new SolutionCache.Result(SOLUTION, false, i, i));
+            assertNotNull(cache.get("layout 0"));
+            assertTrue(cache.getLogLength() <= 2048);
+        }
+        assertNull(cache.get("layout 1"));
+        assertNotNull(cache.get("layout 499"));
+        cache.close();
+
+        cache = new SolutionCache(directory, 2048);
+        assertNotNull(cache.get("layout 0"));
+        assertEquals(498, cache.get("layout 498").getSolveMillis());
+        cache.close();
+    }
+}
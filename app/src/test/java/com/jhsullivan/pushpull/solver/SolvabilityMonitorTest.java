@@ -0,0 +1,143 @@
+package com.jhsullivan.pushpull.solver;
+
+import com.jhsullivan.pushpull.game_logic.Level;
+import com.jhsullivan.pushpull.game_logic.LevelLoadException;
+import com.jhsullivan.pushpull.game_logic.Vector2D;
+
+import org.junit.Test;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * This class tests the SolvabilityMonitor, which checks in the background whether the position
+ * of a level can still be solved.
+ */
+public class SolvabilityMonitorTest {
+
+
+    //A level which the push player can solve by pushing the block down, but which is lost once
+    //the block is pushed against the right edge, since nothing can push it back.
+    //                                           0  1  2
+    private static final String TEST_LAYOUT = "xx,px,xx\n" + //0
+                                              "xx,bx,xx\n" + //1
+                                              "xx,xx,xx\n" + //2
+                                              "xx,xo,xx\n" + //3
+                                              "xx,xx,xx";    //4
+
+
+    /**
+     * Checks the level at its start, then after pushing the block against the right edge, then
+     * again after undoing.  Expected result:  solvable, unsolvable, and solvable again, each
+     * reported with the id of its check.
+     *
+     * @throws LevelLoadException   Throws this exception if the Level fails to load due to String
+     *                              not being properly formatted.
+     * @throws InterruptedException Throws this exception if the test is interrupted.
+     */
+    @Test
+    public void testReportsVerdicts() throws LevelLoadException, InterruptedException {
+        final BlockingQueue<Object[]> results = new ArrayBlockingQueue<>(10);
+        SolvabilityMonitor monitor = new SolvabilityMonitor(new SolvabilityMonitor.Listener() {
+            @Override
+            public void onVerdict(long checkId, SolvabilityMonitor.Verdict verdict) {
+                results.add(new Object[] {checkId, verdict});
+            }
+        });
+        monitor.setCpuShare(100);
+
+        Level level = new Level(TEST_LAYOUT);
+        long checkId = monitor.check(level);
+        assertVerdict(results, checkId, SolvabilityMonitor.Verdict.SOLVABLE);
+
+        assertTrue(level.processInput(Vector2D.Direction.LEFT));
+        assertTrue(level.processInput(Vector2D.Direction.DOWN));
+        assertTrue(level.processInput(Vector2D.Direction.RIGHT));
+        checkId = monitor.check(level);
+        assertVerdict(results, checkId, SolvabilityMonitor.Verdict.UNSOLVABLE);
+
+        level.revertState();
+        checkId = monitor.check(level);
+        assertVerdict(results, checkId, SolvabilityMonitor.Verdict.SOLVABLE);
+        monitor.stop();
+    }
+
+    /**
+     * Checks a level whose solution lies beyond the limit on states.  Expected result:  the
+     * check is inconclusive, rather than claiming the level is unsolvable.
+     *
+     * @throws LevelLoadException   Throws this exception if the Level fails to load due to String
+     *                              not being properly formatted.
+     * @throws InterruptedException Throws this exception if the test is interrupted.
+     */
+    @Test
+    public void testGivesUpAtLimit() throws LevelLoadException, InterruptedException {
+        final BlockingQueue<Object[]> results = new ArrayBlockingQueue<>(10);
+        SolvabilityMonitor monitor = new SolvabilityMonitor(new SolvabilityMonitor.Listener() {
+            @Override
+            public void onVerdict(long checkId, SolvabilityMonitor.Verdict verdict) {
+                results.add(new Object[] {checkId, verdict});
+            }
+        });
+        monitor.setStateLimit(5);
+
+        //the player has to walk around the block before it can push it onto the target
+        String testLayout = "xx,xx,xx,xx,xx\n" +
+                            "xx,xx,bx,xx,xx\n" +
+                            "xx,xx,xx,xx,xx\n" +
+                            "xx,xx,xx,xx,xx\n" +
+                            "xx,xx,xo,xx,px";
+        long checkId = monitor.check(new Level(testLayout));
+        assertVerdict(results, checkId, SolvabilityMonitor.Verdict.UNKNOWN);
+        assertFalse(monitor.isLatest(checkId - 1));
+        monitor.stop();
+    }
+
+    /**
+     * Checks a level whose player is walled into a corner, away from a block which could
+     * otherwise reach the target.  Expected result:  the heuristic cannot tell, but the search
+     * runs out of states, so the level is unsolvable.
+     *
+     * @throws LevelLoadException   Throws this exception if the Level fails to load due to String
+     *                              not being properly formatted.
+     * @throws InterruptedException Throws this exception if the test is interrupted.
+     */
+    @Test
+    public void testSearchesEveryState() throws LevelLoadException, InterruptedException {
+        final BlockingQueue<Object[]> results = new ArrayBlockingQueue<>(10);
+        SolvabilityMonitor monitor = new SolvabilityMonitor(new SolvabilityMonitor.Listener() {
+            @Override
+            public void onVerdict(long checkId, SolvabilityMonitor.Verdict verdict) {
+                results.add(new Object[] {checkId, verdict});
+            }
+        });
+
+        String testLayout = "px,xx,wx,xx,xx\n" +
+                            "xx,xx,wx,xx,xx\n" +
+                            "wx,wx,wx,bx,xx\n" +
+                            "xx,xx,xx,xx,xx\n" +
+                            "xx,xx,xx,xo,xx";
+        long checkId = monitor.check(new Level(testLayout));
+        assertVerdict(results, checkId, SolvabilityMonitor.Verdict.UNSOLVABLE);
+        checkId = monitor.check(new Level(testLayout));
+        assertVerdict(results, checkId, SolvabilityMonitor.Verdict.UNSOLVABLE);
+        monitor.stop();
+    }
+
+    /**
+     * @param results   The results reported so far.
+     * @param checkId   The id of the check expected next.
+     * @param verdict   The verdict expected next.
+     */
+    private static void assertVerdict(BlockingQueue<Object[]> results, long checkId,
+                                      SolvabilityMonitor.Verdict verdict)
+            throws InterruptedException {
+        Object[] result = results.poll(10, TimeUnit.SECONDS);
+        assertNotNull(result);
+        assertEquals(checkId, result[0]);
+        assertEquals(verdict, result[1]);
+    }
+}
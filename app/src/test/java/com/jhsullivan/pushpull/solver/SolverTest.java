@@ -0,0 +1,237 @@
+package com.jhsullivan.pushpull.solver;
+
+import com.jhsullivan.pushpull.game_logic.Level;
+import com.jhsullivan.pushpull.game_logic.LevelLoadException;
+import com.jhsullivan.pushpull.game_logic.Vector2D;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * This class tests the Solver.  Every solution found is played on a fresh copy of the level to
+ * check that it really fills every target.
+ */
+public class SolverTest {
+
+
+    /**
+     * Solves a level where a block has to be pushed around a wall.  Expected result:  the
+     * solution is the shortest one, and the level passed in is not changed.
+     *
+     * @throws LevelLoadException  Throws this exception if the Level fails to load due to String
+     *                             not being properly formatted.
+     */
+    @Test
+    public void testFindsShortestSolution() throws LevelLoadException {
+        //                   0  1  2  3  4
+        String testLayout = "xx,xx,xx,xx,xx\n" + //0
+                            "px,bx,xx,xx,xx\n" + //1
+                            "xx,wx,xx,xx,xx\n" + //2
+                            "xx,xx,xx,xo,xx";    //3
+        Level level = new Level(testLayout);
+        int[] before = level.saveCheckpoint();
+
+        Solver solver = new Solver(level);
+        List<Vector2D.Direction> solution = solver.solve();
+        assertNotNull(solution);
+        assertTrue(Arrays.equals(before, level.saveCheckpoint()));
+
+        //push right twice, step up and over the block, then push it down twice
+        assertEquals(6, solution.size());
+        assertTrue(isSolution(testLayout, solution));
+        assertFalse(solver.isCutOff());
+    }
+
+    /**
+     * Solves a level where the only block is stuck in a corner away from the target.  Expected
+     * result:  no solution, found by searching every reachable state.
+     *
+     * @throws LevelLoadException  Throws this exception if the Level fails to load due to String
+     *                             not being properly formatted.
+     */
+    @Test
+    public void testUnsolvableLevel() throws LevelLoadException {
+        //                   0  1  2  3
+        String testLayout = "bx,xx,xx,xx\n" + //0
+                            "xx,px,xx,xx\n" + //1
+                            "xx,xx,xx,xo";    //2
+        Solver solver = new Solver(testLayout);
+        assertNull(solver.solve());
+        assertFalse(solver.isCutOff());
+        assertEquals(11, solver.getStateCount());
+
+        solver.setStateLimit(5);
+        assertNull(solver.solve());
+        assertTrue(solver.isCutOff());
+    }
+
+    /**
+     * Solves the shipped levels as far as a small state limit allows.  Expected result:  every
+     * solution found completes its level, and the easiest levels are solved.
+     *
+     * @throws IOException          Throws this exception if a level file cannot be read.
+     * @throws LevelLoadException   Throws this exception if the Level fails to load due to String
+     *                              not being properly formatted.
+     */
+    @Test
+    public void testShippedLevels() throws IOException, LevelLoadException {
+        File directory = new File("src/main/assets/Levels");
+        if (!directory.isDirectory()) {
+            directory = new File("app/src/main/assets/Levels");
+        }
+        File[] files = directory.listFiles();
+        assertNotNull(files);
+        Arrays.sort(files);
+
+        int solved = 0;
+        for (File file : files) {
+            String layout = Solver.readLayout(file);
+            Solver solver = new Solver(layout);
+            solver.setStateLimit(10000);
+            List<Vector2D.Direction> solution = solver.solve();
+            if (solution != null) {
+                assertTrue(file.getName(), isSolution(layout, solution));
+                solved += 1;
+            }
+            else {
+                assertTrue(file.getName(), solver.isCutOff());
+            }
+        }
+        assertTrue(solved >= 3);
+    }
+
+    /**
+     * Solves small levels with every strategy.  Expected result:  all of the strategies find
+     * solutions of the same, shortest length, and report what they did.
+     *
+     * @throws IOException          Throws this exception if a level file cannot be read.
+     * @throws LevelLoadException   Throws this exception if the Level fails to load due to String
+     *                              not being properly formatted.
+     */
+    @Test
+    public void testStrategiesAgree() throws IOException, LevelLoadException {
+        File directory = new File("src/main/assets/Levels");
+        if (!directory.isDirectory()) {
+            directory = new File("app/src/main/assets/Levels");
+        }
+        String[] layouts = {Solver.readLayout(new File(directory, "Level_01.csv")),
+                            Solver.readLayout(new File(directory, "Level_03.csv")),
+                            "xx,xx,xx,xx,xx\n" +
+                            "px,bx,xx,xx,xx\n" +
+                            "xx,wx,xx,xx,xx\n" +
+                            "xx,xx,xx,xo,xx"};
+        for (String layout : layouts) {
+            Solver solver = new Solver(layout);
+            List<Vector2D.Direction> expected = solver.solve();
+            assertNotNull(expected);
+            assertTrue(solver.getPeakMemory() > 0);
+
+            for (Solver.Strategy strategy : Solver.Strategy.values()) {
+                solver.setStrategy(strategy);
+                List<Vector2D.Direction> solution = solver.solve();
+                assertNotNull(strategy.toString(), solution);
+                assertEquals(strategy.toString(), expected.size(), solution.size());
+                assertTrue(strategy.toString(), isSolution(layout, solution));
+                assertTrue(solver.getNodesExpanded() > 0);
+            }
+        }
+    }
+
+    /**
+     * Solves shipped levels with A* and with weighted A*.  Expected result:  within a small state
+     * limit, weighted A* solves a level which A* gives up on, and where both find a solution, the
+     * weighted one is no shorter.
+     *
+     * @throws IOException          Throws this exception if a level file cannot be read.
+     * @throws LevelLoadException   Throws this exception if the Level fails to load due to String
+     *                              not being properly formatted.
+     */
+    @Test
+    public void testWeightedSearch() throws IOException, LevelLoadException {
+        File directory = new File("src/main/assets/Levels");
+        if (!directory.isDirectory()) {
+            directory = new File("app/src/main/assets/Levels");
+        }
+        String layout = Solver.readLayout(new File(directory, "Level_04.csv"));
+        Solver solver = new Solver(layout);
+        solver.setStrategy(Solver.Strategy.A_STAR);
+        solver.setStateLimit(20000);
+        assertNull(solver.solve());
+        assertTrue(solver.isCutOff());
+        solver.setWeight(10);
+        List<Vector2D.Direction> solution = solver.solve();
+        assertNotNull(solution);
+        assertTrue(isSolution(layout, solution));
+
+        layout = Solver.readLayout(new File(directory, "Level_05.csv"));
+        solver = new Solver(layout);
+        solver.setStrategy(Solver.Strategy.A_STAR);
+        List<Vector2D.Direction> shortest = solver.solve();
+        assertNotNull(shortest);
+        solver.setWeight(10);
+        solution = solver.solve();
+        assertNotNull(solution);
+        assertTrue(isSolution(layout, solution));
+        assertTrue(solution.size() >= shortest.size());
+    }
+
+    /**
+     * Works out the heuristic for random levels with blocks, clusters, walls and every kind of
+     * player.  Expected result:  the estimate never exceeds the length of a shortest solution,
+     * and is 0 exactly when the level is solved.
+     *
+     * @throws LevelLoadException  Throws this exception if the Level fails to load due to String
+     *                             not being properly formatted.
+     */
+    @Test
+    public void testHeuristicIsAdmissible() throws LevelLoadException {
+        Random rng = new Random(29);
+        String objects = "pqrbbww11";
+        int checked = 0;
+        for (int n = 0; n < 200; n++) {
+            StringBuilder layout = new StringBuilder();
+            for (int i = 0; i < 36; i++) {
+                char object = rng.nextInt(3) == 0 ? objects.charAt(rng.nextInt(9)) : 'x';
+                char trigger = rng.nextInt(8) == 0 ? 'o' : 'x';
+                layout.append(object).append(trigger).append(i % 6 == 5 ? "\n" : ",");
+            }
+            Level level = new Level(layout.substring(0, layout.length() - 1));
+            Heuristic heuristic = new Heuristic(level, new StateCodec(level));
+            int estimate = heuristic.estimate(level.saveCheckpoint());
+            assertEquals(level.areTargetsFilled(), estimate == 0);
+
+            Solver solver = new Solver(level);
+            solver.setStateLimit(5000);
+            List<Vector2D.Direction> solution = solver.solve();
+            if (solution != null) {
+                assertTrue(estimate <= solution.size());
+                checked += 1;
+            }
+        }
+        assertTrue(checked > 10);
+    }
+
+    /**
+     * @param layout    The layout of a level.
+     * @param solution  The inputs to play.
+     * @return          Returns whether playing the inputs on the level completes it, with every
+     *                  input moving something.
+     */
+    private static boolean isSolution(String layout, List<Vector2D.Direction> solution)
+            throws LevelLoadException {
+        Level level = new Level(layout);
+        for (Vector2D.Direction direction : solution) {
+            if (!level.processInput(direction)) {
+                return false;
+            }
+        }
+        return level.areTargetsFilled();
+    }
+}